@@ -0,0 +1,60 @@
+package sokochan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a full move, push and undo cycle with the {@link SokochanGrid} view kept in sync.
+ * <p>
+ * The cycle should allocate nothing: {@link Benchmarks} runs with the GC profiler, whose {@code gc.alloc.rate.norm}
+ * result is the number of bytes allocated per cycle and should stay at zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+    // The keeper starts next to a crate, with room to walk around it
+    private static final String[] MAP = {
+            "MapSetName: Allocation",
+            "LevelName: Allocation",
+            "WWWWWWWWWW",
+            "W        W",
+            "W        W",
+            "W     DCSW",
+            "W        W",
+            "WWWWWWWWWW"
+    };
+    // A push, moves around the crate and a move against the wall, all undone at the end of the cycle
+    private static final Direction[] CYCLE = {Direction.WEST, Direction.NORTH, Direction.NORTH, Direction.NORTH,
+            Direction.EAST};
+
+    private SokochanEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File file = File.createTempFile("allocation-", ".skb");
+        file.deleteOnExit();
+
+        Files.write(file.toPath(), Arrays.asList(MAP));
+
+        engine = new SokochanEngine(file, true);
+    }
+
+    @Benchmark
+    public int moveCycle() {
+        for (Direction direction : CYCLE)
+            engine.movePlayer(direction);
+
+        for (int i = 0; i < CYCLE.length; i++)
+            engine.undo();
+
+        return engine.getMovesCount();
+    }
+}
@@ -0,0 +1,40 @@
+package sokochan;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, so that runs of different releases can be compared.
+ * The GC profiler is enabled, so the bytes allocated by every operation are part of the results.
+ * <p>
+ * Usage: {@code Benchmarks [results.json [regex]]}, the results go to {@code benchmarks/results.json} by default,
+ * and the regex selects the benchmarks to run, all of them by default.
+ */
+public class Benchmarks {
+    /**
+     * @param args the path of the results, and a regex of the benchmarks to run
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        String results = args.length > 0 ? args[0] : "benchmarks/results.json";
+        String include = args.length > 1 ? args[1] : "sokochan\\..*Benchmark";
+
+        File parent = new File(results).getAbsoluteFile().getParentFile();
+
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new RunnerException("Cannot create " + parent);
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .addProfiler("gc")
+                .resultFormat(ResultFormatType.JSON)
+                .result(results);
+
+        new Runner(options.build()).run();
+    }
+}
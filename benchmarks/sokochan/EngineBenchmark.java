@@ -0,0 +1,127 @@
+package sokochan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the moves of {@link SokochanEngine}: moving, undoing, replaying a sequence of moves and loading a level.
+ * <p>
+ * The player follows a fixed random walk, so pushes and failed moves against walls are mixed as in a real game.
+ * Every benchmark runs with and without the {@link SokochanGrid} view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    // Length of the random walk, a power of two
+    private static final int WALK_LENGTH = 1 << 12;
+
+    @Param({"SampleGame", "Hard", "synthetic-64", "synthetic-256"})
+    public String map;
+
+    @Param({"true", "false"})
+    public boolean gridView;
+
+    private SokochanEngine engine;
+    private Direction[] walk;
+    // The moves of the walk that can be made, from the start of the level
+    private Direction[] legalWalk;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File file = Maps.get(map);
+
+        engine = new SokochanEngine(file, gridView);
+        walk = new Direction[WALK_LENGTH];
+
+        Random random = new Random(42);
+        Direction[] directions = Direction.values();
+
+        for (int i = 0; i < WALK_LENGTH; i++)
+            walk[i] = directions[random.nextInt(directions.length)];
+
+        for (Direction direction : walk)
+            engine.movePlayer(direction);
+
+        legalWalk = new Direction[engine.getMovesCount()];
+
+        for (int i = 0; i < legalWalk.length; i++)
+            legalWalk[i] = MoveHistory.getDirection(engine.getHistory().get(i));
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        engine.loadLevel(engine.getLevelIndex());
+        step = 0;
+    }
+
+    /**
+     * One step of the random walk
+     */
+    @Benchmark
+    public boolean movePlayer() {
+        return engine.movePlayer(walk[step++ & (WALK_LENGTH - 1)]);
+    }
+
+    /**
+     * One step of the random walk, then back, so the position never changes
+     */
+    @Benchmark
+    public int moveAndUndo() {
+        engine.movePlayer(walk[step++ & (WALK_LENGTH - 1)]);
+        engine.undo();
+
+        return engine.getMovesCount();
+    }
+
+    /**
+     * Restarting the level, then the legal moves of the walk one at a time
+     */
+    @Benchmark
+    public int replay() {
+        engine.loadLevel(engine.getLevelIndex());
+
+        for (Direction direction : legalWalk)
+            engine.movePlayer(direction);
+
+        return engine.getMovesCount();
+    }
+
+    /**
+     * Restarting the level, then the legal moves of the walk as a single sequence
+     */
+    @Benchmark
+    public int applyMoves() {
+        engine.loadLevel(engine.getLevelIndex());
+
+        return engine.applyMoves(legalWalk).getAppliedCount();
+    }
+
+    /**
+     * Restarting the current level, as the parsed level is cached only the crates and the keeper are put back
+     */
+    @Benchmark
+    public int loadLevel() {
+        engine.loadLevel(engine.getLevelIndex());
+
+        return engine.getCratesCount();
+    }
+
+    /**
+     * Restarting the current level with an empty {@link LevelCache}, parsing it and building the grid again
+     */
+    @Benchmark
+    public int loadLevelUncached() {
+        engine.getLevelCache().clear();
+        engine.loadLevel(engine.getLevelIndex());
+
+        return engine.getCratesCount();
+    }
+}
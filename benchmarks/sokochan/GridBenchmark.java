@@ -0,0 +1,60 @@
+package sokochan;
+
+import org.openjdk.jmh.annotations.*;
+import sokochan.GridObjects.Crate;
+import sokochan.GridObjects.TileGridObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks walking over every cell of a {@link SokochanGrid}, as the renderer and the save code do
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+    @Param({"SampleGame", "Hard", "synthetic-64", "synthetic-256"})
+    public String map;
+
+    private SokochanGrid grid;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        grid = new SokochanEngine(Maps.get(map)).getSokochanGrid();
+    }
+
+    /**
+     * Counts the crates with the iterator of the grid
+     */
+    @Benchmark
+    public int iterator() {
+        int crates = 0;
+
+        for (TileGridObject tile : grid) {
+            if (tile.getPlacedObject() instanceof Crate)
+                crates++;
+        }
+
+        return crates;
+    }
+
+    /**
+     * Counts the crates by coordinates
+     */
+    @Benchmark
+    public int coordinates() {
+        int crates = 0;
+
+        for (int y = 0; y < grid.Y_SIZE; y++) {
+            for (int x = 0; x < grid.X_SIZE; x++) {
+                if (grid.getGridObject(x, y) instanceof Crate)
+                    crates++;
+            }
+        }
+
+        return crates;
+    }
+}
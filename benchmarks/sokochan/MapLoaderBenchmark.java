@@ -0,0 +1,129 @@
+package sokochan;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading and writing SaveFiles with {@link MapLoader}.
+ * <p>
+ * Loading a map only indexes its levels, {@link #loadAllLevels()} also reads the rows of every level, as all the
+ * levels were read before the index. With the GC profiler, {@code gc.alloc.rate.norm} compares the memory of the two.
+ * A mapped map is not even indexed when loaded, {@link #loadMappedMiddleLevel()} only indexes half of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapLoaderBenchmark {
+    @Param({"SampleGame", "Hard", "synthetic-64", "synthetic-256", "collection-20000"})
+    public String map;
+
+    private File file;
+    private File saveFile;
+    private File binaryFile;
+    private SokochanEngine engine;
+    private int middleLevel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Maps.get(map);
+        engine = new SokochanEngine(file);
+        middleLevel = engine.getLevelsCount() / 2;
+        saveFile = File.createTempFile("save-", ".skb");
+        saveFile.deleteOnExit();
+        binaryFile = File.createTempFile("binary-", ".skbb");
+        binaryFile.deleteOnExit();
+        engine.saveBinaryMap(binaryFile);
+    }
+
+    @Benchmark
+    public MapLoader loadMap() throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = new MapLoader();
+
+        loader.loadMap(file);
+
+        return loader;
+    }
+
+    @Benchmark
+    public int loadAllLevels() throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = loadMap();
+        int rows = 0;
+
+        for (MapLoader.Level level : loader.getLevels())
+            rows += level.getContent().size();
+
+        return rows;
+    }
+
+    /**
+     * Loading a map and playing its last level, the case the index is for
+     */
+    @Benchmark
+    public int loadLastLevel() throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = loadMap();
+        List<MapLoader.Level> levels = loader.getLevels();
+
+        return BoardState.parse(levels.get(levels.size() - 1)).getCratesCount();
+    }
+
+    @Benchmark
+    public MapLoader loadMappedMap() throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = new MapLoader();
+
+        loader.loadMappedMap(file);
+
+        return loader;
+    }
+
+    /**
+     * Mapping a map and playing a level in its middle, only the levels before it are indexed
+     */
+    @Benchmark
+    public int loadMappedMiddleLevel() throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = loadMappedMap();
+
+        return BoardState.parse(loader.getLevels().get(middleLevel)).getCratesCount();
+    }
+
+    /**
+     * Loading a map and parsing all its levels, as the batch jobs do
+     */
+    @Benchmark
+    public int parseAllLevels() throws IOException, MapLoader.MapLoaderException {
+        return parseAll(file);
+    }
+
+    /**
+     * The same as {@link #parseAllLevels()} on the binary map, the cells are parsed without building the rows
+     */
+    @Benchmark
+    public int parseAllBinaryLevels() throws IOException, MapLoader.MapLoaderException {
+        return parseAll(binaryFile);
+    }
+
+    private static int parseAll(File file) throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = new MapLoader();
+        int crates = 0;
+
+        loader.loadMap(file);
+
+        for (MapLoader.Level level : loader.getLevels())
+            crates += BoardState.parse(level).getCratesCount();
+
+        return crates;
+    }
+
+    @Benchmark
+    public long saveMap() throws IOException {
+        new MapLoader().saveMap(saveFile, engine.snapshot());
+
+        return saveFile.length();
+    }
+}
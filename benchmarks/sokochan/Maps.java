@@ -0,0 +1,43 @@
+package sokochan;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The maps the benchmarks run on: the bundled ones, found in {@code src/maps} or in the folder set with the
+ * {@code sokochan.maps} system property, the synthetic ones, named {@code synthetic-<size>}, and the synthetic
+ * collections of small levels, named {@code collection-<count>}.
+ */
+final class Maps {
+    private static final String SYNTHETIC = "synthetic-";
+    private static final String COLLECTION = "collection-";
+    // Width and height of the levels of a collection
+    private static final int COLLECTION_LEVEL_SIZE = 16;
+    // Fixed, so that every run benchmarks the same levels
+    private static final long SEED = 0x50C0C4A4L;
+
+    private Maps() {
+    }
+
+    /**
+     * @param name the name of a bundled map without extension, e.g. {@code Hard}, {@code synthetic-<size>} or
+     *             {@code collection-<count>}
+     * @return the file of the map, synthetic ones are generated in a temporary file
+     * @throws IOException if a synthetic map cannot be written
+     */
+    static File get(String name) throws IOException {
+        if (name.startsWith(SYNTHETIC))
+            return SyntheticLevels.write(Integer.parseInt(name.substring(SYNTHETIC.length())), SEED);
+
+        if (name.startsWith(COLLECTION))
+            return SyntheticLevels.writeCollection(Integer.parseInt(name.substring(COLLECTION.length())),
+                    COLLECTION_LEVEL_SIZE, SEED);
+
+        File file = new File(System.getProperty("sokochan.maps", "src/maps"), name + ".skb");
+
+        if (!file.isFile())
+            throw new IOException("Map not found: " + file.getAbsolutePath());
+
+        return file;
+    }
+}
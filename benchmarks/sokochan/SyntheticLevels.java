@@ -0,0 +1,137 @@
+package sokochan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates large random levels for the benchmarks, bigger than any of the bundled maps.
+ * <p>
+ * Every level is a square room surrounded by walls, with scattered inner walls, crates and as many diamonds.
+ * The same seed always gives the same level, so results of different runs can be compared.
+ */
+final class SyntheticLevels {
+    // Fraction of the inner cells that are walls, crates and diamonds
+    private static final double WALLS = 0.08;
+    private static final double CRATES = 0.05;
+
+    private SyntheticLevels() {
+    }
+
+    /**
+     * Writes a map with a single random level to a temporary file, deleted when the JVM exits
+     *
+     * @param size the width and height of the level, walls included
+     * @param seed the seed of the generator
+     * @return the file of the map
+     * @throws IOException if the file cannot be written
+     */
+    static File write(int size, long seed) throws IOException {
+        File file = File.createTempFile("synthetic-" + size + "-", ".skb");
+        file.deleteOnExit();
+
+        Files.write(file.toPath(), generate(size, seed).getBytes());
+
+        return file;
+    }
+
+    /**
+     * Generates the content of a map with a single random level
+     *
+     * @param size the width and height of the level, walls included
+     * @param seed the seed of the generator
+     * @return the content of the map, in the SaveFile format
+     */
+    static String generate(int size, long seed) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("MapSetName: Synthetic ").append(size).append('\n');
+
+        appendLevel(builder, "Synthetic " + size + "x" + size, size, new Random(seed));
+
+        return builder.toString();
+    }
+
+    /**
+     * Writes a map with many small random levels to a temporary file, deleted when the JVM exits
+     *
+     * @param count the number of levels
+     * @param size  the width and height of every level, walls included
+     * @param seed  the seed of the generator
+     * @return the file of the map
+     * @throws IOException if the file cannot be written
+     */
+    static File writeCollection(int count, int size, long seed) throws IOException {
+        File file = File.createTempFile("collection-" + count + "-", ".skb");
+        file.deleteOnExit();
+
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("MapSetName: Collection ").append(count).append('\n');
+
+        for (int i = 0; i < count; i++) {
+            appendLevel(builder, "Level " + (i + 1), size, random);
+            builder.append('\n');
+        }
+
+        Files.write(file.toPath(), builder.toString().getBytes());
+
+        return file;
+    }
+
+    /**
+     * Generates a random level
+     *
+     * @param builder where the level is appended, in the SaveFile format
+     * @param name    the name of the level
+     * @param size    the width and height of the level, walls included
+     * @param random  the generator
+     */
+    private static void appendLevel(StringBuilder builder, String name, int size, Random random) {
+        char[][] cells = new char[size][size];
+
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean border = x == 0 || y == 0 || x == size - 1 || y == size - 1;
+
+                cells[y][x] = border || random.nextDouble() < WALLS ? Letters.WALL.getCode() : Letters.TILE.getCode();
+            }
+        }
+
+        int crates = Math.max(1, (int) ((size - 2) * (size - 2) * CRATES));
+
+        place(cells, random, Letters.CRATE, crates);
+        place(cells, random, Letters.DIAMOND, crates);
+        place(cells, random, Letters.WAREHOUSE_KEEPER, 1);
+
+        builder.append("LevelName: ").append(name).append('\n');
+
+        for (char[] row : cells)
+            builder.append(row).append('\n');
+    }
+
+    /**
+     * Puts objects on random free cells, away from the walls so that they can be pushed around
+     *
+     * @param cells  the level
+     * @param random the generator
+     * @param letter the object to place
+     * @param count  how many objects
+     */
+    private static void place(char[][] cells, Random random, Letters letter, int count) {
+        int size = cells.length;
+
+        while (count > 0) {
+            int x = 2 + random.nextInt(size - 4);
+            int y = 2 + random.nextInt(size - 4);
+
+            if (cells[y][x] != Letters.TILE.getCode())
+                continue;
+
+            cells[y][x] = letter.getCode();
+            count--;
+        }
+    }
+}
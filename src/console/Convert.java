@@ -0,0 +1,48 @@
+package console;
+
+import sokochan.MapLoader;
+import sokochan.SokochanEngine;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts a SaveFile into a binary map, which loads faster when levels are processed in bulk.
+ * Binary maps are opened like any other map, by the game and by the other console tools.
+ * <p>
+ * A target ending with {@code .gz} is compressed with GZIP: {@code file.skbb.gz} is a compressed binary map, and
+ * {@code file.skb.gz} a compressed SaveFile, keeping the progress of the game.
+ * <p>
+ * Usage: {@code Convert file.skb file.skbb[.gz]}
+ */
+class Convert {
+
+    /**
+     * Starts the converter
+     *
+     * @param args the SaveFile, followed by the binary map to write
+     * @throws MapLoader.MapLoaderException when the map is not valid
+     * @throws IOException                  if failed to read or write a file
+     */
+    public static void main(String args[]) throws MapLoader.MapLoaderException, IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: Convert file.skb file.skbb[.gz]");
+            System.exit(1);
+        }
+
+        File source = new File(args[0]);
+        File target = new File(args[1]);
+
+        long start = System.nanoTime();
+
+        SokochanEngine engine = new SokochanEngine(source, false);
+
+        if (target.getName().toLowerCase().endsWith(".skb" + MapLoader.COMPRESSED_EXTENSION))
+            engine.saveGame(target);
+        else
+            engine.saveBinaryMap(target);
+
+        System.out.printf("%d levels, %d bytes to %d bytes in %d ms%n", engine.getLevelsCount(), source.length(),
+                target.length(), (System.nanoTime() - start) / 1000000);
+    }
+}
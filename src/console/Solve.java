@@ -0,0 +1,116 @@
+package console;
+
+import sokochan.MapLoader;
+import sokochan.SokochanEngine;
+import sokochan.solver.Metric;
+import sokochan.solver.SearchAlgorithm;
+import sokochan.solver.Solution;
+import sokochan.solver.Solver;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Runs the {@link Solver} on every level of one or more map files, printing the result and the throughput of each search.
+ * <p>
+ * Usage: {@code Solve [--metric pushes|moves] [--algorithm astar|idastar] [--limit nodes] [--threads n]
+ * [--table megabytes] file.skb...}
+ * <p>
+ * With more than one thread the search defaults to the parallel IDA*.
+ */
+class Solve {
+
+    /**
+     * Starts the solver
+     *
+     * @param args the options, followed by the map files
+     * @throws MapLoader.MapLoaderException when a map is not valid
+     * @throws IOException                  if failed to load a file
+     */
+    public static void main(String args[]) throws MapLoader.MapLoaderException, IOException {
+        Metric metric = Metric.PUSHES;
+        SearchAlgorithm algorithm = null;
+        long limit = Solver.DEFAULT_NODE_LIMIT;
+        int threads = 1;
+        int table = Solver.DEFAULT_TABLE_SIZE;
+
+        int i = 0;
+
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length)
+                usage("Missing value for " + args[i]);
+
+            String value = args[i + 1];
+
+            switch (args[i]) {
+                case "--metric":
+                    if (value.equalsIgnoreCase("pushes"))
+                        metric = Metric.PUSHES;
+                    else if (value.equalsIgnoreCase("moves"))
+                        metric = Metric.MOVES;
+                    else
+                        usage("Unknown metric " + value);
+                    break;
+                case "--algorithm":
+                    if (value.equalsIgnoreCase("astar"))
+                        algorithm = SearchAlgorithm.A_STAR;
+                    else if (value.equalsIgnoreCase("idastar"))
+                        algorithm = SearchAlgorithm.IDA_STAR;
+                    else
+                        usage("Unknown algorithm " + value);
+                    break;
+                case "--limit":
+                    limit = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--table":
+                    table = Integer.parseInt(value);
+                    break;
+                default:
+                    usage("Unknown option " + args[i]);
+            }
+        }
+
+        if (i == args.length)
+            usage("No map file provided");
+
+        if (algorithm == null)
+            algorithm = threads > 1 ? SearchAlgorithm.IDA_STAR : SearchAlgorithm.A_STAR;
+
+        for (; i < args.length; i++) {
+            SokochanEngine engine = new SokochanEngine(new File(args[i]), false);
+
+            for (int level = 0; level < engine.getLevelsCount(); level++) {
+                // The solver parses the level itself, the engine does not play it
+                MapLoader.Level current = engine.getLevel(level);
+
+                Solver solver = new Solver(current);
+                solver.setMetric(metric);
+                solver.setAlgorithm(algorithm);
+                solver.setNodeLimit(limit);
+                solver.setThreads(threads);
+                solver.setTableSize(table);
+
+                Solution solution = solver.solve();
+
+                System.out.printf("%s #%d \"%s\": %s, %d moves, %d pushes%n    %s%n",
+                        args[i], level + 1, current.getName(), solution.getStatus(),
+                        solution.getMovesCount(), solution.getPushesCount(), solution.getStatistics());
+            }
+        }
+    }
+
+    /**
+     * Prints the usage and quits
+     *
+     * @param error what's wrong with the arguments
+     */
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: Solve [--metric pushes|moves] [--algorithm astar|idastar] [--limit nodes] [--threads n] " +
+                "[--table megabytes] file.skb...");
+        System.exit(1);
+    }
+}
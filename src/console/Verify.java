@@ -0,0 +1,81 @@
+package console;
+
+import sokochan.MapLoader;
+import sokochan.SolutionVerifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Checks a file of LURD solutions against the levels of a map, printing the outcome of every solution and the
+ * throughput of the whole batch. See {@link SolutionVerifier} for the format of the solutions file.
+ * <p>
+ * Usage: {@code Verify [--threads n] [--failed] file.skb solutions.txt}
+ * <p>
+ * With {@code --failed} only the solutions that do not solve their level are printed.
+ */
+class Verify {
+
+    /**
+     * Starts the verifier
+     *
+     * @param args the options, followed by the map file and the solutions file
+     * @throws MapLoader.MapLoaderException when the map is not valid
+     * @throws IOException                  if failed to load a file
+     */
+    public static void main(String args[]) throws MapLoader.MapLoaderException, IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean failedOnly = false;
+
+        int i = 0;
+
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            switch (args[i]) {
+                case "--threads":
+                    if (++i >= args.length)
+                        usage("Missing value for --threads");
+
+                    threads = Integer.parseInt(args[i]);
+                    break;
+                case "--failed":
+                    failedOnly = true;
+                    break;
+                default:
+                    usage("Unknown option " + args[i]);
+            }
+        }
+
+        if (args.length - i != 2)
+            usage("A map file and a solutions file are needed");
+
+        SolutionVerifier verifier = new SolutionVerifier(new File(args[i]));
+        verifier.setThreads(threads);
+
+        List<SolutionVerifier.Submission> submissions = SolutionVerifier.readSolutions(new File(args[i + 1]));
+
+        SolutionVerifier.Report report = verifier.verifyAll(submissions);
+
+        for (SolutionVerifier.Result result : report.getResults()) {
+            if (failedOnly && result.isSolved())
+                continue;
+
+            System.out.printf("line %d, level #%d: %s, %d moves, %d pushes%n",
+                    result.getSubmission().getLine(), result.getSubmission().getLevel() + 1, result.getStatus(),
+                    result.getMovesCount(), result.getPushesCount());
+        }
+
+        System.out.println(report);
+    }
+
+    /**
+     * Prints the usage and quits
+     *
+     * @param error what's wrong with the arguments
+     */
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: Verify [--threads n] [--failed] file.skb solutions.txt");
+        System.exit(1);
+    }
+}
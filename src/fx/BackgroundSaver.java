@@ -0,0 +1,138 @@
+package fx;
+
+import javafx.application.Platform;
+import sokochan.SokochanEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Saves games and their autosaves on a background thread, so that the interface never waits for the disk.
+ * <p>
+ * The game is captured on the FX thread as a {@link SokochanEngine.Snapshot}, then serialised and written by a
+ * single worker, which also writes the journals of the autosaves, see {@link sokochan.SaveJournal}. Writes to a file that
+ * is still waiting to be written are coalesced: only the latest one is made.
+ * The outcome of every write that is made is reported back on the FX thread.
+ */
+final class BackgroundSaver {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Save"));
+    // The writes waiting to be made, by file, in the order they were first requested
+    private final Map<File, Request> pending = new LinkedHashMap<>();
+    private boolean draining;
+
+    /**
+     * Queues a save, replacing a save to the same file that has not been written yet
+     *
+     * @param file     the file where the game will be saved
+     * @param snapshot the game, see {@link SokochanEngine#snapshot()}
+     * @param onSaved  called on the FX thread once the file has been written
+     * @param onFailed called on the FX thread if the file could not be written
+     */
+    void save(File file, SokochanEngine.Snapshot snapshot, Runnable onSaved, Consumer<Exception> onFailed) {
+        write(file, () -> SokochanEngine.saveGame(file, snapshot), onSaved, onFailed);
+    }
+
+    /**
+     * Queues any write to a file, replacing a write to the same file that has not been made yet
+     *
+     * @param file      the file written
+     * @param write     writes the file, on the worker
+     * @param onWritten called on the FX thread once the file has been written, {@code null} if there is nothing to do
+     * @param onFailed  called on the FX thread if the file could not be written
+     */
+    synchronized void write(File file, Write write, Runnable onWritten, Consumer<Exception> onFailed) {
+        pending.put(file, new Request(write, onWritten, onFailed));
+
+        if (!draining) {
+            draining = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Makes the pending writes, until there are none left
+     */
+    private void drain() {
+        Request request;
+
+        while ((request = next()) != null) {
+            try {
+                request.write.run();
+
+                if (request.onWritten != null)
+                    Platform.runLater(request.onWritten);
+            } catch (Exception e) {
+                Consumer<Exception> onFailed = request.onFailed;
+
+                Platform.runLater(() -> onFailed.accept(e));
+            }
+        }
+    }
+
+    /**
+     * @return the oldest pending write, {@code null} if there are none and the worker can stop
+     */
+    private synchronized Request next() {
+        Iterator<Request> iterator = pending.values().iterator();
+
+        if (!iterator.hasNext()) {
+            draining = false;
+            return null;
+        }
+
+        Request request = iterator.next();
+        iterator.remove();
+
+        return request;
+    }
+
+    /**
+     * Makes the pending writes and stops the worker, waiting for them at most a few seconds
+     */
+    void shutdown() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a file
+     */
+    interface Write {
+        /**
+         * @throws IOException if the file cannot be written
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * A write waiting to be made
+     */
+    private static final class Request {
+        private final Write write;
+        private final Runnable onWritten;
+        private final Consumer<Exception> onFailed;
+
+        /**
+         * @param write     writes the file
+         * @param onWritten called on the FX thread once the file has been written, may be {@code null}
+         * @param onFailed  called on the FX thread if the file could not be written
+         */
+        private Request(Write write, Runnable onWritten, Consumer<Exception> onFailed) {
+            this.write = write;
+            this.onWritten = onWritten;
+            this.onFailed = onFailed;
+        }
+    }
+}
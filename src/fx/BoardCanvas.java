@@ -0,0 +1,130 @@
+package fx;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import sokochan.GridObjects.*;
+import sokochan.SokochanGrid;
+
+import java.util.Arrays;
+
+/**
+ * Draws a {@link SokochanGrid} on a single {@link Canvas}, a square of {@code tileSize} pixels per cell.
+ * <p>
+ * The canvas remembers what it painted in every cell, and a draw only repaints the cells that differ. After a move
+ * the engine tells which cells it changed, the cells left and entered by the warehouse keeper and by the crate, and
+ * only those are checked; the whole grid is checked only when the size changes or a level is loaded.
+ * The cells are painted in grid units, scaled by the transform of the canvas: changing the tile size resizes the
+ * canvas and paints it once, no node is ever created.
+ */
+final class BoardCanvas extends Canvas {
+    // What a cell can show, the index of its colour
+    private static final byte TILE = 0;
+    private static final byte WALL = 1;
+    private static final byte DIAMOND = 2;
+    private static final byte CRATE = 3;
+    private static final byte CRATE_ON_DIAMOND = 4;
+    private static final byte WAREHOUSE_KEEPER = 5;
+    private static final Color[] COLORS = {
+            Color.WHITE, Color.BLACK, Color.RED, Color.ORANGE, Color.INDIANRED, Color.GREEN
+    };
+    // Nothing painted in the cell yet
+    private static final byte NONE = -1;
+
+    private int xSize;
+    private int ySize;
+    private int tileSize;
+    // What is painted in every cell
+    private byte[] painted = new byte[0];
+
+    /**
+     * Draws a grid, repainting only the cells that differ from the last draw
+     *
+     * @param grid     the grid
+     * @param tileSize the size of a cell, in pixels
+     * @param cells    the cells that may have changed since the last draw, {@code null} to check every cell, see
+     *                 {@link sokochan.SokochanEngine#pollChangedCells()}
+     * @return {@code true} if the canvas was resized, and its window has to be sized again
+     */
+    boolean draw(SokochanGrid grid, int tileSize, int[] cells) {
+        GraphicsContext context = getGraphicsContext2D();
+        boolean resized = grid.X_SIZE != xSize || grid.Y_SIZE != ySize || tileSize != this.tileSize;
+
+        if (resized) {
+            xSize = grid.X_SIZE;
+            ySize = grid.Y_SIZE;
+            this.tileSize = tileSize;
+
+            setWidth(xSize * tileSize);
+            setHeight(ySize * tileSize);
+            context.setTransform(tileSize, 0, 0, tileSize, 0, 0);
+
+            painted = new byte[xSize * ySize];
+            Arrays.fill(painted, NONE);
+        }
+
+        byte fill = NONE;
+
+        // A new size or an unknown change is the only reason to check the whole grid
+        if (resized || cells == null) {
+            for (int cell = 0; cell < painted.length; cell++)
+                fill = paint(context, grid, cell, fill);
+        } else {
+            for (int cell : cells)
+                fill = paint(context, grid, cell, fill);
+        }
+
+        return resized;
+    }
+
+    /**
+     * Paints a cell, if what it shows is not painted already
+     *
+     * @param context the context of the canvas
+     * @param grid    the grid
+     * @param cell    a cell index
+     * @param fill    the current fill of the context, {@link #NONE} if not known
+     * @return the fill of the context after painting
+     */
+    private byte paint(GraphicsContext context, SokochanGrid grid, int cell, byte fill) {
+        byte content = getContent(grid, cell);
+
+        if (painted[cell] == content)
+            return fill;
+
+        // The fill is only changed when the colour does
+        if (content != fill)
+            context.setFill(COLORS[content]);
+
+        context.fillRect(grid.getX(cell), grid.getY(cell), 1, 1);
+        painted[cell] = content;
+
+        return content;
+    }
+
+    /**
+     * @param grid the grid
+     * @param cell a cell index
+     * @return what the cell shows
+     */
+    private static byte getContent(SokochanGrid grid, int cell) {
+        MovableGridObject object = grid.getGridObject(cell);
+
+        if (object instanceof WarehouseKeeper)
+            return WAREHOUSE_KEEPER;
+
+        if (object instanceof Crate)
+            // Different color if the Crate is on Diamond or not
+            return ((Crate) object).isOnDiamond() ? CRATE_ON_DIAMOND : CRATE;
+
+        TileGridObject tile = grid.getTile(cell);
+
+        if (tile instanceof Wall)
+            return WALL;
+
+        if (tile instanceof Diamond)
+            return DIAMOND;
+
+        return TILE;
+    }
+}
@@ -14,17 +14,15 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
-import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.FileChooser;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import sokochan.Direction;
-import sokochan.GridObjects.*;
 import sokochan.MapLoader;
+import sokochan.SaveJournal;
 import sokochan.SokochanEngine;
-import sokochan.SokochanGrid;
 
 import java.io.File;
 import java.io.IOException;
@@ -47,10 +45,16 @@ public class Main extends Application {
     private MenuBar menu;
     @FXML
     private GridPane gameGrid;
+    // Replaces the main menu in gameGrid once a game starts
+    private BoardCanvas boardCanvas;
     //</editor-fold>
 
     // Game Vars
     private SokochanEngine engine;
+    // Autosaves the moves next to the opened map, null for the default map
+    private SaveJournal journal;
+    // Writes the saves off the FX thread, shared with the application that waits for it on exit
+    private static final BackgroundSaver saver = new BackgroundSaver();
     private int rectangleSize = 20;
 
     /**
@@ -97,6 +101,7 @@ public class Main extends Application {
             else
                 engine = new SokochanEngine(file);
 
+            openJournal(file);
             initGame();
         } catch (IOException e) {
             showErrorDialog("Unable to access the file.", e.getMessage());
@@ -109,6 +114,46 @@ public class Main extends Application {
         }
     }
 
+    /**
+     * Starts autosaving the moves next to a map, resuming the moves autosaved the last time it was played
+     *
+     * @param file the map, {@code null} for the default map, which is not autosaved
+     */
+    private void openJournal(File file) {
+        journal = file != null ? new SaveJournal(file, engine) : null;
+
+        if (journal == null)
+            return;
+
+        try {
+            // Rewrites the journal compacted, in the background
+            if (journal.restore())
+                autosave();
+        } catch (IOException e) {
+            journal = null;
+            showErrorDialog("Unable to restore the autosave.", e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the last moves to the autosave, if any. The moves are gathered now and written in the background.
+     */
+    private void autosave() {
+        if (journal == null)
+            return;
+
+        SaveJournal recorded = journal;
+
+        recorded.record();
+        saver.write(recorded.getFile(), recorded::flush, null, e -> {
+            if (journal != recorded)
+                return;
+
+            journal = null;
+            showErrorDialog("Unable to autosave the game.", e.getMessage());
+        });
+    }
+
     /**
      * Initialises the interface and makes the game ready to be played
      */
@@ -138,49 +183,29 @@ public class Main extends Application {
 
     /**
      * Draws the grid to the main windows. It removes the main menu in the process.
+     * Only the cells changed since the last draw are repainted, see {@link BoardCanvas}.
      */
     private void draw() {
         if (engine == null)
             return;
 
-        SokochanGrid grid = engine.getSokochanGrid();
-
-        gameGrid = (GridPane) scene.lookup("#gameGrid");
-
-        gameGrid.getChildren().clear();
-
-        for (int y = 0; y < grid.Y_SIZE; y++) {
-            for (int x = 0; x < grid.X_SIZE; x++) {
-                MovableGridObject object = grid.getGridObject(x, y);
-                TileGridObject tile = grid.getTile(x, y);
-
-                Rectangle r = new Rectangle(rectangleSize, rectangleSize);
+        // Warns as soon as the level cannot be completed any more
+        primaryStage.setTitle(engine.isDeadlocked() ? "Sokochan Game - Deadlocked, undo to continue" : "Sokochan Game");
 
-                Paint paint = Color.WHITE;
+        if (boardCanvas == null) {
+            boardCanvas = new BoardCanvas();
 
-                if (object instanceof WarehouseKeeper) {
-                    paint = Color.GREEN;
-                } else if (object instanceof Crate) {
-                    // Different color if the Crate is on Diamond or not
-                    if (((Crate) object).isOnDiamond())
-                        paint = Color.INDIANRED;
-                    else
-                        paint = Color.ORANGE;
-                } else if (tile instanceof Wall) {
-                    paint = Color.BLACK;
-                } else if (tile instanceof Diamond) {
-                    paint = Color.RED;
-                }
-
-                r.setFill(paint);
-
-                gameGrid.add(r, x, y);
-            }
+            gameGrid = (GridPane) scene.lookup("#gameGrid");
+            gameGrid.getChildren().setAll(boardCanvas);
         }
 
+        boolean resized = boardCanvas.draw(engine.getSokochanGrid(), rectangleSize, engine.pollChangedCells());
+
         setUndoStatus();
 
-        primaryStage.sizeToScene();
+        // The window only changes size with the level or the tile size
+        if (resized)
+            primaryStage.sizeToScene();
     }
 
     /**
@@ -222,13 +247,14 @@ public class Main extends Application {
             engine.movePlayer(d);
 
             draw();
+            autosave();
 
             if (engine.isComplete()) {
                 Alert alert = new Alert(Alert.AlertType.INFORMATION);
                 alert.setTitle("Victory!");
                 alert.setHeaderText(null);
                 addIcon(alert);
-                if (engine.getLevelIndex() + 1 < engine.getLevelsCount()) {
+                if (engine.hasLevel(engine.getLevelIndex() + 1)) {
 
                     alert.setContentText("You completed the game in " + engine.getMovesCount() + " moves!\nPress okay to load the next level.");
 
@@ -236,6 +262,7 @@ public class Main extends Application {
 
                     engine.loadLevel(engine.getLevelIndex() + 1);
                     draw();
+                    autosave();
                 } else {
                     alert.setContentText("You completed the game in " + engine.getMovesCount() + " moves!\n This was the last level in the map, congrats!");
 
@@ -248,12 +275,13 @@ public class Main extends Application {
     }
 
     /**
-     * Disables or enables the "undo" menu entry
+     * Disables or enables the "undo" and "redo" menu entries
      */
     private void setUndoStatus() {
         ObservableList<MenuItem> items = menu.getMenus().get(1).getItems();
 
         items.get(0).setDisable(engine.getHistoryElementsCount() == 0);
+        items.get(1).setDisable(engine.getRedoBranchesCount() == 0);
     }
 
     //<editor-fold desc="UI Event Handlers" defaultstate="collapsed">
@@ -264,7 +292,8 @@ public class Main extends Application {
     public void loadGameFile() {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open Save File");
-        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Sokoban File", "*.skb"));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Sokoban File", "*.skb", "*.skb.gz"));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Sokoban Collection", "*.xsb", "*.sok", "*.txt"));
 
         try {
             fileChooser.setInitialDirectory(getDefaultLocation());
@@ -285,6 +314,7 @@ public class Main extends Application {
 
         engine.loadLevel(engine.getLevelIndex());
         draw();
+        autosave();
     }
 
     /**
@@ -294,6 +324,7 @@ public class Main extends Application {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Save Game File");
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Sokoban File", "*.skb"));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Compressed Sokoban File", "*.skb.gz"));
 
         try {
             fileChooser.setInitialDirectory(getDefaultLocation());
@@ -301,13 +332,30 @@ public class Main extends Application {
             File file = fileChooser.showSaveDialog(primaryStage);
 
             if (file != null) {
-                try {
-                    engine.saveGame(file);
-                } catch (IOException e) {
-                    showErrorDialog("Unable to access the file.", e.getMessage());
-                } catch (Exception e) {
-                    showExceptionDialog(e);
-                }
+                // The game is captured now and written in the background, the moves made meanwhile stay journaled
+                SokochanEngine saved = engine;
+                SaveJournal savedJournal = new SaveJournal(file, engine);
+
+                saver.save(file, engine.snapshot(), () -> {
+                    if (engine != saved)
+                        return;
+
+                    // The progress is in the save now, the moves from here on are autosaved next to it
+                    if (journal != null) {
+                        SaveJournal deleted = journal;
+
+                        saver.write(deleted.getFile(), deleted::delete, null,
+                                e -> showErrorDialog("Unable to access the file.", e.getMessage()));
+                    }
+
+                    journal = savedJournal;
+                    autosave();
+                }, e -> {
+                    if (e instanceof IOException)
+                        showErrorDialog("Unable to access the file.", e.getMessage());
+                    else
+                        showExceptionDialog(e);
+                });
             }
         }
     }
@@ -328,6 +376,56 @@ public class Main extends Application {
 
         engine.undo();
         draw();
+        autosave();
+    }
+
+    /**
+     * Makes again the last move cancelled by the player
+     */
+    public void redo() {
+        if (engine == null)
+            return;
+
+        engine.redo();
+        draw();
+        autosave();
+    }
+
+    /**
+     * Asks for a move of the history and jumps to it, undoing or redoing all the moves in between
+     */
+    public void goToMove() {
+        if (engine == null)
+            return;
+
+        int length = engine.getHistory().getLineLength();
+
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(engine.getMovesCount()));
+        addIcon(dialog);
+        dialog.setTitle("Go to move");
+        dialog.setHeaderText("Go to a move between 0 and " + length);
+        dialog.setContentText("");
+
+        Optional<String> result = dialog.showAndWait();
+
+        try {
+            result.ifPresent(value -> engine.seek(Integer.valueOf(value.trim())));
+        } catch (NumberFormatException e) {
+            showErrorDialog("Invalid Input", "The move must be a number.");
+        } catch (IndexOutOfBoundsException e) {
+            showErrorDialog("Invalid Input", "The move must be between 0 and " + length + ".");
+        } catch (Exception e) {
+            showExceptionDialog(e);
+        }
+
+        draw();
+        autosave();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        // The saves still being written are finished before exiting
+        saver.shutdown();
     }
 
     /**
@@ -378,6 +476,8 @@ public class Main extends Application {
                         "\nSize %dx%d\n" +
                         "\nCrates:\t%d" +
                         "\nOn end:\t%d" +
+                        "\nStuck:\t%d" +
+                        "\nDeadlocked:\t%s" +
                         "\nMoves:\t%d" +
                         "\nPushes:\t%d",
 
@@ -389,6 +489,8 @@ public class Main extends Application {
 
                 engine.getCratesCount(),
                 engine.getCratesOnDiamondCount(),
+                engine.getCratesOnDeadSquareCount(),
+                engine.isDeadlocked() ? "yes" : "no",
                 engine.getMovesCount(),
                 engine.getPushesCount()
                 )
@@ -0,0 +1,259 @@
+package sokochan;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * The static layer of a level (walls and diamonds) stored as bitsets, so that it can be shared by any number of
+ * {@link BoardState}s without ever being copied.
+ * <p>
+ * Cells are addressed by a single {@code int} index. The level is padded with a border of walls, one cell wide,
+ * so that moving from any cell of the level never needs a bounds check: the cell at {@code (x, y)} of the level
+ * is stored at {@code (y + 1) * stride + x + 1}.
+ */
+public final class Board {
+    /**
+     * The width of the level, as in {@link SokochanGrid#X_SIZE}
+     */
+    public final int X_SIZE;
+
+    /**
+     * The height of the level, as in {@link SokochanGrid#Y_SIZE}
+     */
+    public final int Y_SIZE;
+
+    // Fixed seed, so that the same state always has the same hash
+    private static final SplittableRandom ZOBRIST_RANDOM = new SplittableRandom(0x50C0C4A4L);
+    // Zobrist keys of a crate and of the keeper on every cell, interleaved, shared by all the boards.
+    // Grown when a larger board is made; the keys already drawn never change.
+    private static long[] sharedZobristKeys = new long[0];
+
+    // Width of a padded row
+    private final int stride;
+    // Number of cells including the padding
+    private final int cellsCount;
+    private final long[] walls;
+    private final long[] diamonds;
+    // Cells from which a crate can never be pushed to a diamond
+    private final long[] deadSquares;
+    // Index displacement for every Direction, by ordinal
+    private final int[] offsets;
+    // The shared Zobrist keys, at least as many as the cells of this board
+    private final long[] zobristKeys;
+
+    /**
+     * Creates an empty board, with walls only on the padding border
+     *
+     * @param x width of the level
+     * @param y height of the level
+     */
+    Board(int x, int y) {
+        X_SIZE = x;
+        Y_SIZE = y;
+        stride = x + 2;
+        cellsCount = stride * (y + 2);
+        walls = newBitset(cellsCount);
+        diamonds = newBitset(cellsCount);
+        deadSquares = newBitset(cellsCount);
+        offsets = new int[]{-stride, 1, stride, -1};
+        zobristKeys = getZobristKeys(cellsCount);
+
+        for (int i = 0; i < stride; i++) {
+            setWall(i);
+            setWall(cellsCount - 1 - i);
+        }
+
+        for (int row = 1; row <= y; row++) {
+            setWall(row * stride);
+            setWall(row * stride + stride - 1);
+        }
+    }
+
+    /**
+     * Gives the shared Zobrist keys, drawing the missing ones if a board has never had so many cells
+     *
+     * @param cellsCount the number of cells of the board
+     * @return the keys of a crate and of the keeper on every cell, at {@code 2 * cell} and {@code 2 * cell + 1}
+     */
+    private static synchronized long[] getZobristKeys(int cellsCount) {
+        if (sharedZobristKeys.length < cellsCount * 2) {
+            long[] keys = Arrays.copyOf(sharedZobristKeys, Math.max(cellsCount * 2, sharedZobristKeys.length * 2));
+
+            for (int i = sharedZobristKeys.length; i < keys.length; i++)
+                keys[i] = ZOBRIST_RANDOM.nextLong();
+
+            sharedZobristKeys = keys;
+        }
+
+        return sharedZobristKeys;
+    }
+
+    /**
+     * @param cellsCount the number of cells to store
+     * @return a bitset large enough for the given number of cells
+     */
+    static long[] newBitset(int cellsCount) {
+        return new long[(cellsCount + 63) >>> 6];
+    }
+
+    /**
+     * @param bitset the bitset to read
+     * @param cell   the cell index
+     * @return whether the bit of the cell is set
+     */
+    public static boolean isSet(long[] bitset, int cell) {
+        return (bitset[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Marks a cell as a wall. Only used while the level is being built.
+     *
+     * @param cell the cell index
+     */
+    void setWall(int cell) {
+        walls[cell >>> 6] |= 1L << cell;
+    }
+
+    /**
+     * Marks a cell as a diamond. Only used while the level is being built.
+     *
+     * @param cell the cell index
+     */
+    void setDiamond(int cell) {
+        diamonds[cell >>> 6] |= 1L << cell;
+    }
+
+    /**
+     * Finds the dead squares, once all the walls and diamonds are in place.
+     * Starting from the diamonds, crates are pulled in every direction where there is room for the keeper:
+     * the floor cells that are never reached cannot be pushed to any diamond.
+     */
+    void computeDeadSquares() {
+        long[] alive = newBitset(cellsCount);
+        int[] queue = new int[cellsCount];
+        int head = 0;
+        int tail = 0;
+
+        for (int cell = 0; cell < cellsCount; cell++) {
+            if (isDiamond(cell)) {
+                alive[cell >>> 6] |= 1L << cell;
+                queue[tail++] = cell;
+            }
+        }
+
+        while (head < tail) {
+            int cell = queue[head++];
+
+            for (int offset : offsets) {
+                int crate = cell + offset;
+
+                if (isSet(alive, crate) || isWall(crate) || isWall(crate + offset))
+                    continue;
+
+                alive[crate >>> 6] |= 1L << crate;
+                queue[tail++] = crate;
+            }
+        }
+
+        for (int cell = 0; cell < cellsCount; cell++) {
+            if (!isWall(cell) && !isSet(alive, cell))
+                deadSquares[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    /**
+     * @param cell the cell index
+     * @return {@code true} if the cell is a wall (or outside the level)
+     */
+    public boolean isWall(int cell) {
+        return (walls[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return {@code true} if the cell is a {@link sokochan.GridObjects.Diamond}
+     */
+    public boolean isDiamond(int cell) {
+        return (diamonds[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * A dead square is a floor cell from which a crate cannot reach any diamond, whatever the keeper does.
+     *
+     * @param cell the cell index
+     * @return {@code true} if a crate pushed on the cell can never be placed on a diamond
+     */
+    public boolean isDeadSquare(int cell) {
+        return (deadSquares[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Converts level coordinates to a cell index
+     *
+     * @param x column in the level
+     * @param y row in the level
+     * @return the index of the cell
+     */
+    public int index(int x, int y) {
+        return (y + 1) * stride + x + 1;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the column of the cell in the level
+     */
+    public int getX(int cell) {
+        return cell % stride - 1;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the row of the cell in the level
+     */
+    public int getY(int cell) {
+        return cell / stride - 1;
+    }
+
+    /**
+     * @param direction a direction
+     * @return the value to add to a cell index to move by one in the given direction
+     */
+    public int getOffset(Direction direction) {
+        return offsets[direction.ordinal()];
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the Zobrist key of a crate placed on the cell
+     */
+    public long getCrateKey(int cell) {
+        return zobristKeys[cell << 1];
+    }
+
+    /**
+     * @param cell the cell index
+     * @return the Zobrist key of the keeper placed on the cell
+     */
+    public long getWarehouseKeeperKey(int cell) {
+        return zobristKeys[(cell << 1) + 1];
+    }
+
+    /**
+     * @return the number of cells, padding included. Every cell index is in the range {@code [0, cellsCount)}
+     */
+    public int getCellsCount() {
+        return cellsCount;
+    }
+
+    /**
+     * @return the number of {@link sokochan.GridObjects.Diamond}s on the board
+     */
+    public int getDiamondsCount() {
+        int count = 0;
+
+        for (long word : diamonds)
+            count += Long.bitCount(word);
+
+        return count;
+    }
+}
@@ -0,0 +1,386 @@
+package sokochan;
+
+import sokochan.GridObjects.WarehouseKeeper;
+
+/**
+ * The dynamic part of a game (the position of the {@link sokochan.GridObjects.Crate}s and of the
+ * {@link WarehouseKeeper}), stored as a bitset of crates and a single cell index for the keeper.
+ * The static layer is held by a {@link Board}, that is shared and never modified.
+ * <p>
+ * This is what the {@link SokochanEngine} moves the player on. The {@link SokochanGrid} of objects is just a view of it.
+ */
+public final class BoardState {
+    private final Board board;
+    private final long[] crates;
+    private int warehouseKeeper;
+    private int cratesCount;
+    private int cratesOnDiamondCount;
+    private int cratesOnDeadSquareCount;
+    // Zobrist hash of the crates, updated on every push
+    private long cratesHash;
+    // Top-left-most cell reachable by the keeper, or -1 if a push has invalidated it
+    private int normalizedWarehouseKeeper = -1;
+    // The flood fill of the cells reachable by the keeper, allocated on first use
+    private Reachability reachability;
+    // The cell of the keeper the last fill started from, or -1 if a push has invalidated it
+    private int reachabilityFrom = -1;
+    // Created when the first freeze check is made
+    private FreezeDetector freezeDetector;
+
+    /**
+     * Creates a state with no crates and the keeper in the given cell
+     *
+     * @param board           the board the state is played on
+     * @param warehouseKeeper the cell of the keeper
+     */
+    BoardState(Board board, int warehouseKeeper) {
+        this.board = board;
+        this.crates = Board.newBitset(board.getCellsCount());
+        this.warehouseKeeper = warehouseKeeper;
+    }
+
+    /**
+     * Copies the dynamic part of another state, the {@link Board} is shared
+     *
+     * @param state the state to copy
+     */
+    private BoardState(BoardState state) {
+        this.board = state.board;
+        this.crates = state.crates.clone();
+        this.warehouseKeeper = state.warehouseKeeper;
+        this.cratesCount = state.cratesCount;
+        this.cratesOnDiamondCount = state.cratesOnDiamondCount;
+        this.cratesOnDeadSquareCount = state.cratesOnDeadSquareCount;
+        this.cratesHash = state.cratesHash;
+        this.normalizedWarehouseKeeper = state.normalizedWarehouseKeeper;
+    }
+
+    /**
+     * Gives an independent copy of the state, that can be moved without affecting this one.
+     * Only the crates bitset is copied, the {@link Board} is shared, so a copy costs a few bytes per row of the level.
+     *
+     * @return a copy of the state on the same board
+     */
+    public BoardState copy() {
+        return new BoardState(this);
+    }
+
+    /**
+     * Parses a level into a new {@link Board} and its initial state
+     *
+     * @param level the level to parse
+     * @return the initial state of the level, {@link #getBoard()} gives the parsed board
+     * @throws IllegalArgumentException  if an invalid letter is found
+     * @throws IndexOutOfBoundsException if the rows of the level have different lengths
+     */
+    public static BoardState parse(MapLoader.Level level) {
+        return parse(level.getX(), level.getY(), level.getCells());
+    }
+
+    /**
+     * Builds the initial state of a level from its cells
+     *
+     * @param x     the width of the level
+     * @param y     the height of the level
+     * @param cells the {@link Letters} of the cells, row by row, as ordinals
+     * @return the initial state of the level, {@link #getBoard()} gives the parsed board
+     */
+    static BoardState parse(int x, int y, byte[] cells) {
+        Board board = new Board(x, y);
+        BoardState state = new BoardState(board, -1);
+
+        for (int i = 0; i < cells.length; i++) {
+            int cell = board.index(i % x, i / x);
+
+            switch (Letters.VALUES[cells[i]]) {
+                case WALL:
+                    board.setWall(cell);
+                    break;
+                case CRATE:
+                    state.addCrate(cell);
+                    break;
+                case WAREHOUSE_KEEPER:
+                    state.warehouseKeeper = cell;
+                    break;
+                case DIAMOND:
+                    board.setDiamond(cell);
+                    break;
+                case CRATE_ON_DIAMOND:
+                    board.setDiamond(cell);
+                    state.addCrate(cell);
+                    break;
+                case WAREHOUSE_KEEPER_ON_DIAMOND:
+                    board.setDiamond(cell);
+                    state.warehouseKeeper = cell;
+            }
+        }
+
+        board.computeDeadSquares();
+        state.countCrates();
+
+        return state;
+    }
+
+    /**
+     * Places a crate on a cell, while the level is being built
+     *
+     * @param cell the cell index
+     */
+    void addCrate(int cell) {
+        crates[cell >>> 6] |= 1L << cell;
+        cratesHash ^= board.getCrateKey(cell);
+        cratesCount++;
+    }
+
+    /**
+     * Recounts the crates on diamonds and on dead squares, once the level has been built
+     */
+    void countCrates() {
+        cratesOnDiamondCount = 0;
+        cratesOnDeadSquareCount = 0;
+
+        for (int cell = 0; cell < board.getCellsCount(); cell++) {
+            if (hasCrate(cell) && board.isDiamond(cell))
+                cratesOnDiamondCount++;
+            if (hasCrate(cell) && board.isDeadSquare(cell))
+                cratesOnDeadSquareCount++;
+        }
+    }
+
+    /**
+     * Tells whether moving in a direction would push a crate, if the move can be made at all
+     *
+     * @param direction where the keeper would move
+     * @return {@code true} if there is a crate next to the keeper in that direction
+     */
+    public boolean isPush(Direction direction) {
+        return hasCrate(warehouseKeeper + board.getOffset(direction));
+    }
+
+    /**
+     * Tells whether moving in a direction would push a crate onto a dead square, see {@link Board#isDeadSquare(int)}
+     *
+     * @param direction where the keeper would move
+     * @return {@code true} if a crate would be pushed onto a dead square
+     */
+    public boolean isPushOnDeadSquare(Direction direction) {
+        final int offset = board.getOffset(direction);
+        final int next = warehouseKeeper + offset;
+
+        return hasCrate(next) && board.isDeadSquare(next + offset);
+    }
+
+    /**
+     * Tells whether a crate is frozen, see {@link FreezeDetector}.
+     * Only the crates next to it are examined, so it is cheap enough to be called after every push.
+     *
+     * @param crate the cell of a crate
+     * @return {@code true} if the crate and its frozen neighbours can never be all placed on diamonds
+     */
+    public boolean isFreezeDeadlock(int crate) {
+        if (freezeDetector == null)
+            freezeDetector = new FreezeDetector(board);
+
+        return freezeDetector.isDeadlocked(crates, crate);
+    }
+
+    /**
+     * Checks every crate for a freeze deadlock, see {@link #isFreezeDeadlock(int)}
+     *
+     * @return {@code true} if any crate is in a freeze deadlock
+     */
+    public boolean hasFreezeDeadlock() {
+        for (int i = 0; i < crates.length; i++) {
+            for (long word = crates[i]; word != 0; word &= word - 1) {
+                if (isFreezeDeadlock((i << 6) + Long.numberOfTrailingZeros(word)))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves the keeper, pushing a crate if there is one in the way.
+     * Behaves exactly like {@link WarehouseKeeper#movePushing(Direction)}, and returns the same codes.
+     *
+     * @param direction where moving the keeper
+     * @return one of the {@code MOVE_*} codes of {@link WarehouseKeeper}
+     */
+    public int move(Direction direction) {
+        final int offset = board.getOffset(direction);
+        final int next = warehouseKeeper + offset;
+
+        if (board.isWall(next))
+            return WarehouseKeeper.MOVE_FAILED;
+
+        if (!hasCrate(next)) {
+            warehouseKeeper = next;
+            return WarehouseKeeper.MOVE_NOT_PUSHED;
+        }
+
+        final int beyond = next + offset;
+
+        if (board.isWall(beyond) || hasCrate(beyond))
+            return WarehouseKeeper.MOVE_FAILED;
+
+        moveCrate(next, beyond);
+        warehouseKeeper = next;
+
+        return pushStatus(next, beyond);
+    }
+
+    /**
+     * Reverts a move made with {@link #move(Direction)}
+     *
+     * @param direction   the direction of the move to revert
+     * @param pushedCrate whether the move pushed a crate
+     */
+    public void undo(Direction direction, boolean pushedCrate) {
+        final int offset = board.getOffset(direction);
+        final int previous = warehouseKeeper - offset;
+
+        if (pushedCrate)
+            moveCrate(warehouseKeeper + offset, warehouseKeeper);
+
+        warehouseKeeper = previous;
+    }
+
+    /**
+     * Moves a crate between two cells, keeping the count of crates on diamonds updated
+     *
+     * @param from the cell of the crate
+     * @param to   the free cell where to put it
+     */
+    private void moveCrate(int from, int to) {
+        crates[from >>> 6] &= ~(1L << from);
+        crates[to >>> 6] |= 1L << to;
+        cratesHash ^= board.getCrateKey(from) ^ board.getCrateKey(to);
+        // The area the keeper can walk in has changed
+        normalizedWarehouseKeeper = -1;
+        reachabilityFrom = -1;
+
+        if (board.isDiamond(from))
+            cratesOnDiamondCount--;
+        if (board.isDiamond(to))
+            cratesOnDiamondCount++;
+        if (board.isDeadSquare(from))
+            cratesOnDeadSquareCount--;
+        if (board.isDeadSquare(to))
+            cratesOnDeadSquareCount++;
+    }
+
+    /**
+     * @param from the cell the crate has been pushed from
+     * @param to   the cell the crate has been pushed to
+     * @return the {@link WarehouseKeeper} code for the push
+     */
+    private int pushStatus(int from, int to) {
+        boolean wasOnDiamond = board.isDiamond(from);
+
+        if (wasOnDiamond == board.isDiamond(to))
+            return WarehouseKeeper.MOVE_PUSHED;
+
+        return wasOnDiamond ? WarehouseKeeper.MOVE_PUSHED_OFF_DIAMOND : WarehouseKeeper.MOVE_PUSHED_ON_DIAMOND;
+    }
+
+    /**
+     * Gives a 64 bit Zobrist hash of the state. Two states have the same hash if they have the crates in the same
+     * cells and the keeper can walk from one position to the other without pushing.
+     * <p>
+     * The crates part is updated on every push, the keeper part only needs a flood fill after a push.
+     *
+     * @return the hash of the state
+     */
+    public long getHash() {
+        return cratesHash ^ board.getWarehouseKeeperKey(getNormalizedWarehouseKeeper());
+    }
+
+    /**
+     * @return the Zobrist hash of the crates alone
+     */
+    public long getCratesHash() {
+        return cratesHash;
+    }
+
+    /**
+     * @return the top-left-most cell the keeper can walk to without pushing any crate
+     */
+    public int getNormalizedWarehouseKeeper() {
+        if (normalizedWarehouseKeeper < 0)
+            getReachability();
+
+        return normalizedWarehouseKeeper;
+    }
+
+    /**
+     * Gives the cells the keeper can walk to without pushing. The fill is only repeated if the keeper or a crate
+     * has moved since the last call.
+     *
+     * @return the reachability of the current position, valid until the next move
+     */
+    public Reachability getReachability() {
+        if (reachability == null)
+            reachability = new Reachability(board);
+
+        if (reachabilityFrom != warehouseKeeper) {
+            normalizedWarehouseKeeper = reachability.fill(crates, warehouseKeeper);
+            reachabilityFrom = warehouseKeeper;
+        }
+
+        return reachability;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return {@code true} if a crate is on the cell
+     */
+    public boolean hasCrate(int cell) {
+        return (crates[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the static layer of the level
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * @return a copy of the bitset of the cells with a crate
+     */
+    public long[] getCrates() {
+        return crates.clone();
+    }
+
+    /**
+     * @return the cell where the {@link WarehouseKeeper} is
+     */
+    public int getWarehouseKeeper() {
+        return warehouseKeeper;
+    }
+
+    /**
+     * @return the total number of crates
+     */
+    public int getCratesCount() {
+        return cratesCount;
+    }
+
+    /**
+     * @return the number of crates placed on a diamond
+     */
+    public int getCratesOnDiamondCount() {
+        return cratesOnDiamondCount;
+    }
+
+    /**
+     * @return the number of crates that can no longer be placed on a diamond, see {@link Board#isDeadSquare(int)}
+     */
+    public int getCratesOnDeadSquareCount() {
+        return cratesOnDeadSquareCount;
+    }
+    //</editor-fold>
+}
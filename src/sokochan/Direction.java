@@ -9,19 +9,24 @@ public enum Direction {
     /**
      * (0, -1)
      */
-    NORTH,
+    NORTH(0, -1),
     /**
      * (1, 0)
      */
-    EAST,
+    EAST(1, 0),
     /**
      * (0, 1)
      */
-    SOUTH,
+    SOUTH(0, 1),
     /**
      * (-1, 0)
      */
-    WEST;
+    WEST(-1, 0);
+
+    /**
+     * All the directions, as given by {@code values()}, without copying the array every time
+     */
+    static final Direction[] VALUES = values();
 
     static {
         NORTH.opposite = SOUTH;
@@ -30,12 +35,37 @@ public enum Direction {
         WEST.opposite = EAST;
     }
 
+    private final int deltaX;
+    private final int deltaY;
     private Direction opposite;
 
+    /**
+     * @param deltaX the change of the x coordinate when moving in the direction
+     * @param deltaY the change of the y coordinate when moving in the direction
+     */
+    Direction(int deltaX, int deltaY) {
+        this.deltaX = deltaX;
+        this.deltaY = deltaY;
+    }
+
     /**
      * @return the opposite {@link Direction}
      */
     public Direction getOppositeDirection() {
         return opposite;
     }
+
+    /**
+     * @return the change of the x coordinate when moving in the direction
+     */
+    public int getDeltaX() {
+        return deltaX;
+    }
+
+    /**
+     * @return the change of the y coordinate when moving in the direction
+     */
+    public int getDeltaY() {
+        return deltaY;
+    }
 }
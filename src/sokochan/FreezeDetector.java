@@ -0,0 +1,100 @@
+package sokochan;
+
+import java.util.Arrays;
+
+/**
+ * Detects freeze deadlocks: crates that can no longer be moved along either axis, because they are blocked by
+ * walls or by other frozen crates, and are not all on diamonds.
+ * <p>
+ * The check starts from a single crate, the one just pushed, and only looks at the crates next to it,
+ * so it can run after every push. While a crate is being checked it is treated as a wall by its neighbours,
+ * which breaks the cycles between crates blocking each other.
+ * <p>
+ * A detector keeps a small work array, so each thread needs its own.
+ */
+public final class FreezeDetector {
+    private final Board board;
+    // Crates being checked, treated as walls
+    private int[] checking = new int[16];
+    private int checkingCount;
+    // Whether a frozen crate not on a diamond has been found
+    private boolean frozenOffDiamond;
+
+    /**
+     * @param board the board the crates are on
+     */
+    public FreezeDetector(Board board) {
+        this.board = board;
+    }
+
+    /**
+     * @param crates the bitset of the crates
+     * @param crate  the cell of a crate, usually the one just pushed
+     * @return {@code true} if the crate is frozen, together with its neighbours, and at least one of them is not on a diamond
+     */
+    public boolean isDeadlocked(long[] crates, int crate) {
+        checkingCount = 0;
+        frozenOffDiamond = false;
+
+        return isFrozen(crates, crate) && frozenOffDiamond;
+    }
+
+    /**
+     * @param crates the bitset of the crates
+     * @param crate  the cell of the crate
+     * @return {@code true} if the crate can be moved along neither axis
+     */
+    private boolean isFrozen(long[] crates, int crate) {
+        if (checkingCount == checking.length)
+            checking = Arrays.copyOf(checking, checkingCount * 2);
+
+        checking[checkingCount++] = crate;
+
+        boolean frozen = isBlocked(crates, crate, board.getOffset(Direction.EAST))
+                && isBlocked(crates, crate, board.getOffset(Direction.SOUTH));
+
+        checkingCount--;
+
+        if (frozen && !board.isDiamond(crate))
+            frozenOffDiamond = true;
+
+        return frozen;
+    }
+
+    /**
+     * @param crates the bitset of the crates
+     * @param crate  the cell of the crate
+     * @param offset the offset of a direction of the axis
+     * @return {@code true} if the crate cannot be pushed along the axis
+     */
+    private boolean isBlocked(long[] crates, int crate, int offset) {
+        int before = crate - offset;
+        int after = crate + offset;
+
+        if (isWall(before) || isWall(after))
+            return true;
+
+        // Pushable only onto squares it could not leave
+        if (board.isDeadSquare(before) && board.isDeadSquare(after))
+            return true;
+
+        return (Board.isSet(crates, before) && isFrozen(crates, before))
+                || (Board.isSet(crates, after) && isFrozen(crates, after));
+    }
+
+    /**
+     * @param cell the cell index
+     * @return {@code true} if the cell is a wall or a crate being checked
+     */
+    private boolean isWall(int cell) {
+        if (board.isWall(cell))
+            return true;
+
+        for (int i = 0; i < checkingCount; i++) {
+            if (checking[i] == cell)
+                return true;
+        }
+
+        return false;
+    }
+}
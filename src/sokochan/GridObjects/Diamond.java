@@ -18,4 +18,15 @@ public class Diamond extends Tile {
     public Diamond(SokochanGrid grid, Point position) {
         super(grid, position);
     }
+
+    /**
+     * Creates and places a {@link Diamond} in the {@link SokochanGrid}
+     *
+     * @param grid parent grid
+     * @param x    x coordinate where to put the {@link Diamond}
+     * @param y    y coordinate where to put the {@link Diamond}
+     */
+    public Diamond(SokochanGrid grid, int x, int y) {
+        super(grid, x, y);
+    }
 }
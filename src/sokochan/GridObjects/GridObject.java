@@ -14,8 +14,8 @@ import java.security.InvalidParameterException;
 public abstract class GridObject {
     // A reference to the parent grid must always be provided
     private final SokochanGrid grid;
-    // A Point representing the position. Must be kept consistent
-    private Point position;
+    // The cell index of the position, see SokochanGrid#index, or -1 if out of the grid. Must be kept consistent
+    private int cell;
 
     /**
      * This constructor will place the object on the grid
@@ -24,12 +24,23 @@ public abstract class GridObject {
      * @param Position A valid position where the object should be placed
      */
     GridObject(SokochanGrid grid, Point Position) {
+        this(grid, Position.x, Position.y);
+    }
+
+    /**
+     * This constructor will place the object on the grid
+     *
+     * @param grid A grid reference, should be not null
+     * @param x    A valid x coordinate where the object should be placed
+     * @param y    A valid y coordinate where the object should be placed
+     */
+    GridObject(SokochanGrid grid, int x, int y) {
         if (grid == null) {
             throw new InvalidParameterException("The grid cannot be null");
         }
 
         this.grid = grid;
-        this.position = Position;
+        this.cell = grid.contains(x, y) ? grid.index(x, y) : -1;
         place();
     }
 
@@ -39,12 +50,34 @@ public abstract class GridObject {
     protected abstract void place();
 
     /**
-     * Gives the coordinates of an object
+     * Gives the coordinates of an object. A new {@link Point} is created at every call, the cell index or the
+     * single coordinates are cheaper.
      *
      * @return a {@link Point} representing the coordinates of the object in the grid
      */
     public Point getPosition() {
-        return position;
+        return new Point(getX(), getY());
+    }
+
+    /**
+     * @return the x coordinate of the object in the grid
+     */
+    public int getX() {
+        return grid.getX(cell);
+    }
+
+    /**
+     * @return the y coordinate of the object in the grid
+     */
+    public int getY() {
+        return grid.getY(cell);
+    }
+
+    /**
+     * @return the cell index of the object in the grid, see {@link SokochanGrid#index(int, int)}
+     */
+    public int getCell() {
+        return cell;
     }
 
     /**
@@ -53,7 +86,16 @@ public abstract class GridObject {
      * @param position the new position
      */
     void setPosition(Point position) {
-        this.position = position;
+        setCell(grid.contains(position.x, position.y) ? grid.index(position.x, position.y) : -1);
+    }
+
+    /**
+     * Sets the internal position  of the object. Note: won't automatically update the grid, just the internal value
+     *
+     * @param cell the cell index of the new position
+     */
+    void setCell(int cell) {
+        this.cell = cell;
     }
 
     /**
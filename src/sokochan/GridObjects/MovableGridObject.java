@@ -21,6 +21,17 @@ public abstract class MovableGridObject extends GridObject {
         super(grid, Position);
     }
 
+    /**
+     * This constructor will place the object on the grid
+     *
+     * @param grid A grid reference, should be not null
+     * @param x    A valid x coordinate where the object should be placed
+     * @param y    A valid y coordinate where the object should be placed
+     */
+    MovableGridObject(SokochanGrid grid, int x, int y) {
+        super(grid, x, y);
+    }
+
     /**
      * Moves an object in the {@link SokochanGrid},
      * returning {@code true} or {@code false} according to the success of the movement
@@ -29,15 +40,15 @@ public abstract class MovableGridObject extends GridObject {
      * @return {@code true} if moved | {@code false} if not moved
      */
     public boolean move(Direction direction) {
-        if (!canMove(direction)) {
+        int target = getGrid().getNeighbour(getCell(), direction);
+
+        if (!canMove(target)) {
             return false;
         }
 
         remove();
 
-        Point newPosition = getDisplacement(direction);
-
-        setPosition(newPosition);
+        setCell(target);
 
         place();
 
@@ -45,55 +56,50 @@ public abstract class MovableGridObject extends GridObject {
     }
 
     /**
-     * Removes and object from the {@link SokochanGrid}
-     */
-    private void remove() {
-        getGrid().removeGridObject(getPosition());
-    }
-
-    /**
-     * Gives the position the object will be, if successfully moved in one direction
+     * Moves an object to any walkable cell of the {@link SokochanGrid}, not only to the one next to it.
+     * The target may be occupied by another object that is going to be moved as well, and the object is only lifted
+     * from its old cell if it is still placed there, so a group of objects can be rearranged one at a time, in any order.
      *
-     * @param direction a valid direction where moving the object
-     * @return end position after successfully moving in direction.
+     * @param target the cell index where moving, see {@link SokochanGrid#index(int, int)}
+     * @return {@code true} if moved | {@code false} if not moved
      */
-    private Point getDisplacement(Direction direction) {
-        Point position = new Point(getPosition().x, getPosition().y);
-
-        Point translation = new Point(0, 0);
-
-        switch (direction) {
-            case NORTH:
-                translation.y = -1;
-                break;
-            case EAST:
-                translation.x = 1;
-                break;
-            case SOUTH:
-                translation.y = 1;
-                break;
-            case WEST:
-                translation.x = -1;
-                break;
+    public boolean moveTo(int target) {
+        TileGridObject tile = getGrid().getTile(target);
+
+        if (tile == null || !(tile.isWalkable() || tile.getPlacedObject() != null)) {
+            return false;
         }
 
-        position.translate(translation.x, translation.y);
+        if (getGrid().getGridObject(getCell()) == this)
+            remove();
+
+        // Lifts the object in the way, it will find its cell taken when moved
+        getGrid().removeGridObject(target);
+
+        setCell(target);
+
+        place();
 
-        return position;
+        return true;
     }
 
     /**
-     * Tells whether an object can be moved in a given {@link Direction}
+     * Removes and object from the {@link SokochanGrid}
+     */
+    private void remove() {
+        getGrid().removeGridObject(getCell());
+    }
+
+    /**
+     * Tells whether an object can be moved to a cell next to it
      *
-     * @param direction where moving
+     * @param target the cell index where moving, -1 if out of the grid
      * @return true if can move | false if cannot move
      */
-    private boolean canMove(Direction direction) {
-        try {
-            return getNeighbourTile(direction).isWalkable();
-        } catch (NullPointerException e) {
-            return false;
-        }
+    private boolean canMove(int target) {
+        TileGridObject tile = getGrid().getTile(target);
+
+        return tile != null && tile.isWalkable();
     }
 
     /**
@@ -103,7 +109,7 @@ public abstract class MovableGridObject extends GridObject {
      * @return the neighbour object in a current direction | {@code null} if not found
      */
     MovableGridObject getNeighbour(Direction direction) {
-        return getGrid().getGridObject(getDisplacement(direction));
+        return getGrid().getGridObject(getGrid().getNeighbour(getCell(), direction));
     }
 
     /**
@@ -114,7 +120,7 @@ public abstract class MovableGridObject extends GridObject {
      */
     @SuppressWarnings("WeakerAccess")
     TileGridObject getNeighbourTile(Direction direction) {
-        return getGrid().getTile(getDisplacement(direction));
+        return getGrid().getTile(getGrid().getNeighbour(getCell(), direction));
     }
 
     // not used yet
@@ -132,6 +138,6 @@ public abstract class MovableGridObject extends GridObject {
 
     @Override
     protected void place() {
-        getGrid().getTile(getPosition()).setPlacedObject(this);
+        getGrid().getTile(getCell()).setPlacedObject(this);
     }
 }
@@ -19,6 +19,17 @@ public class Tile extends TileGridObject {
         super(grid, position, true);
     }
 
+    /**
+     * Creates and places a {@link Tile} in the {@link SokochanGrid}
+     *
+     * @param grid parent grid
+     * @param x    x coordinate where to put the {@link Tile}
+     * @param y    y coordinate where to put the {@link Tile}
+     */
+    public Tile(SokochanGrid grid, int x, int y) {
+        super(grid, x, y, true);
+    }
+
     @Override
     public boolean isWalkable() {
         return getPlacedObject() == null;
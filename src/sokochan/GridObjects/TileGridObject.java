@@ -27,6 +27,19 @@ public abstract class TileGridObject extends GridObject {
         this.WALKABLE = isWalkable;
     }
 
+    /**
+     * Creates and places a {@link TileGridObject} in the {@link SokochanGrid}
+     *
+     * @param grid       parent grid
+     * @param x          x coordinate where to put the tile
+     * @param y          y coordinate where to put the tile
+     * @param isWalkable whether object can be placed upon that tile
+     */
+    TileGridObject(SokochanGrid grid, int x, int y, boolean isWalkable) {
+        super(grid, x, y);
+        this.WALKABLE = isWalkable;
+    }
+
     /**
      * Checks if a {@link TileGridObject} is walkable.
      * <p>A tile is walkable if:</p>
@@ -69,6 +82,6 @@ public abstract class TileGridObject extends GridObject {
 
     @Override
     protected void place() {
-        this.getGrid().setGridTile(this.getPosition(), this);
+        this.getGrid().setGridTile(this.getCell(), this);
     }
 }
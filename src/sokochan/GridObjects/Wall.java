@@ -18,4 +18,15 @@ public class Wall extends TileGridObject {
     public Wall(SokochanGrid grid, Point position) {
         super(grid, position, false);
     }
+
+    /**
+     * Creates and places a {@link Wall} in the {@link SokochanGrid}
+     *
+     * @param grid parent grid
+     * @param x    x coordinate where to put the {@link Wall}
+     * @param y    y coordinate where to put the {@link Wall}
+     */
+    public Wall(SokochanGrid grid, int x, int y) {
+        super(grid, x, y, false);
+    }
 }
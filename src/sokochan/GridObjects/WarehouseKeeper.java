@@ -44,6 +44,17 @@ public class WarehouseKeeper extends MovableGridObject {
         super(grid, position);
     }
 
+    /**
+     * Creates and places a {@link WarehouseKeeper} in the {@link SokochanGrid}
+     *
+     * @param grid parent grid
+     * @param x    x coordinate where to put the {@link WarehouseKeeper}
+     * @param y    y coordinate where to put the {@link WarehouseKeeper}
+     */
+    public WarehouseKeeper(SokochanGrid grid, int x, int y) {
+        super(grid, x, y);
+    }
+
     /**
      * Attempts to push a {@link Crate} in a given {@link Direction}. Returns a boolean accordingly.
      *
@@ -37,6 +37,18 @@ public enum Letters {
      */
     WAREHOUSE_KEEPER_ON_DIAMOND('r');
 
+    // Cached, as values() makes a new array every time. The binary maps store the ordinals, new letters go last.
+    static final Letters[] VALUES = values();
+    // The letters indexed by their code, in both cases
+    private static final Letters[] BY_CODE = new Letters[128];
+
+    static {
+        for (Letters letter : VALUES) {
+            BY_CODE[letter.code] = letter;
+            BY_CODE[Character.toUpperCase(letter.code)] = letter;
+        }
+    }
+
     private char code;
 
     /**
@@ -53,14 +65,7 @@ public enum Letters {
      * @return the Letter or null if failed to parse
      */
     public static Letters valueOf(char c) {
-        c = Character.toLowerCase(c);
-
-        for (Letters l : values()) {
-            if (c == l.getCode())
-                return l;
-        }
-
-        return null;
+        return c < BY_CODE.length ? BY_CODE[c] : null;
     }
 
     public final char getCode() {
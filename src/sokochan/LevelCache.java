@@ -0,0 +1,234 @@
+package sokochan;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of parsed levels, evicting the least recently used one when full.
+ * <p>
+ * A level is parsed once into its {@link Board}, with the dead squares already found, and its initial
+ * {@link BoardState}, which is never moved: loading the level again, or resetting it, only copies the crates.
+ * A level is keyed by its map, see {@link MapLoader#getIdentity()}, and its index: the engines that open the same
+ * map share its levels, and a map rewritten since it was cached is another map. Only the parsed boards are kept,
+ * never the levels, so the cache does not hold on to a map, nor to the file its rows are read from.
+ * <p>
+ * All the engines share {@link #getShared()} unless given their own cache. The cache can be used by many threads,
+ * a level is parsed outside of the lock, so a slow level does not hold up the others.
+ */
+public final class LevelCache {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final LevelCache SHARED = new LevelCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final Map<Key, Template> templates;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity the maximum number of levels kept
+     * @throws IllegalArgumentException if less than one
+     */
+    public LevelCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("At least one level must be cached");
+
+        this.capacity = capacity;
+        this.templates = new LinkedHashMap<Key, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Template> eldest) {
+                if (size() <= LevelCache.this.capacity)
+                    return false;
+
+                evictions++;
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the cache used by the engines that were not given one
+     */
+    public static LevelCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Gives the parsed level, parsing it if it is not cached
+     *
+     * @param map   the map of the level, see {@link MapLoader#getIdentity()}
+     * @param index the index of the level in the map
+     * @param level the level, parsed if it is not cached
+     * @return the parsed level, shared by all the callers
+     * @throws RuntimeException if the level is not valid, see {@link BoardState#parse(MapLoader.Level)}
+     */
+    Template get(String map, int index, MapLoader.Level level) {
+        Key key = new Key(map, index);
+
+        synchronized (this) {
+            Template template = templates.get(key);
+
+            if (template != null) {
+                hits++;
+
+                return template;
+            }
+
+            misses++;
+        }
+
+        Template template = new Template(BoardState.parse(level));
+
+        synchronized (this) {
+            // Another thread may have parsed it meanwhile, the first one is kept
+            Template cached = templates.putIfAbsent(key, template);
+
+            return cached != null ? cached : template;
+        }
+    }
+
+    /**
+     * Parses a level that is not part of a map, such as the level in progress of a SaveFile, with no caching
+     *
+     * @param level the level
+     * @return the parsed level
+     * @throws RuntimeException if the level is not valid, see {@link BoardState#parse(MapLoader.Level)}
+     */
+    static Template parse(MapLoader.Level level) {
+        return new Template(BoardState.parse(level));
+    }
+
+    /**
+     * Forgets all the levels, the counters are kept
+     */
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the maximum number of levels kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of levels cached now
+     */
+    public synchronized int getSize() {
+        return templates.size();
+    }
+
+    /**
+     * @return the number of times a level was found in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of times a level had to be parsed
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of levels dropped to make room for others
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the fraction of the requests found in the cache, 0 if there were none
+     */
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+    //</editor-fold>
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d/%d levels, %d hits %d misses (%.1f%%), %d evictions",
+                templates.size(), capacity, hits, misses, getHitRate() * 100, evictions);
+    }
+
+    /**
+     * A level of a map
+     */
+    private static final class Key {
+        private final String map;
+        private final int index;
+
+        /**
+         * @param map   the map, see {@link MapLoader#getIdentity()}
+         * @param index the index of the level in the map
+         */
+        private Key(String map, int index) {
+            this.map = map;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+
+            return index == key.index && Objects.equals(map, key.map);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hashCode(map) + index;
+        }
+    }
+
+    /**
+     * A parsed level, never moved
+     */
+    static final class Template {
+        private final BoardState state;
+        private final boolean frozen;
+
+        /**
+         * @param state the initial state of the level, it must not be moved afterwards
+         */
+        private Template(BoardState state) {
+            this.state = state;
+            // Checked on a copy, the check caches its work in the state
+            this.frozen = state.copy().hasFreezeDeadlock();
+        }
+
+        /**
+         * @return a new initial state of the level, that can be moved
+         */
+        BoardState newState() {
+            return state.copy();
+        }
+
+        /**
+         * @return the board of the level, shared by all its states
+         */
+        Board getBoard() {
+            return state.getBoard();
+        }
+
+        /**
+         * @return {@code true} if a crate is frozen away from a diamond from the start
+         */
+        boolean isFrozen() {
+            return frozen;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package sokochan;
+
+import java.util.Arrays;
+
+/**
+ * The LURD notation of the moves of the keeper, as used by most Sokoban programs and solution archives.
+ * Every move is a letter: {@code l}, {@code u}, {@code r}, {@code d} for left, up, right and down, in upper case
+ * if the move pushes a crate.
+ * <p>
+ * When reading, white space is ignored and a letter may be preceded by a number of repetitions, e.g. {@code 3r}
+ * for {@code rrr}. Moves are decoded as in {@link MoveHistory#encode(Direction, boolean)}, at most
+ * {@value #MAX_MOVES} of them, so that a corrupt string cannot exhaust the memory.
+ */
+public final class Lurd {
+    // The most moves a string can be decoded into, 64 MB of moves
+    public static final int MAX_MOVES = 1 << 24;
+
+    private static final char[] MOVES = {'u', 'r', 'd', 'l'};
+    private static final char[] PUSHES = {'U', 'R', 'D', 'L'};
+
+    /**
+     * Static methods only
+     */
+    private Lurd() {
+    }
+
+    /**
+     * @param direction where the keeper moved
+     * @param pushed    whether a crate was pushed
+     * @return the letter of the move
+     */
+    public static char toChar(Direction direction, boolean pushed) {
+        return pushed ? PUSHES[direction.ordinal()] : MOVES[direction.ordinal()];
+    }
+
+    /**
+     * @param move an encoded move, see {@link MoveHistory#encode(Direction, boolean)}
+     * @return the letter of the move
+     */
+    public static char toChar(int move) {
+        return toChar(MoveHistory.getDirection(move), MoveHistory.isPush(move));
+    }
+
+    /**
+     * Gives the moves made in a game, from the start of the level to the current move
+     *
+     * @param history the moves made
+     * @return the LURD string of the moves
+     */
+    public static String encode(MoveHistory history) {
+        char[] letters = new char[history.size()];
+
+        for (int i = 0; i < letters.length; i++)
+            letters[i] = toChar(history.get(i));
+
+        return new String(letters);
+    }
+
+    /**
+     * Reads a LURD string
+     *
+     * @param lurd the moves, white space and repetitions are allowed
+     * @return the moves, encoded as in {@link MoveHistory#encode(Direction, boolean)}
+     * @throws IllegalArgumentException if a character is not part of the notation, a number is not followed by a move,
+     *                                  or there are more than {@value #MAX_MOVES} moves
+     */
+    public static int[] decode(CharSequence lurd) {
+        int[] moves = new int[lurd.length()];
+        int count = 0;
+        int repetitions = 0;
+
+        for (int i = 0; i < lurd.length(); i++) {
+            char c = lurd.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                repetitions = addDigit(repetitions, c, MAX_MOVES);
+                continue;
+            }
+
+            if (Character.isWhitespace(c)) {
+                if (repetitions > 0)
+                    throw new IllegalArgumentException("No move after the repetitions at " + i);
+                continue;
+            }
+
+            int move = decode(c);
+
+            if (move < 0)
+                throw new IllegalArgumentException("Invalid move '" + c + "' at " + i);
+
+            int times = Math.max(repetitions, 1);
+
+            if (times > MAX_MOVES - count)
+                throw new IllegalArgumentException("More than " + MAX_MOVES + " moves at " + i);
+
+            if (count + times > moves.length)
+                moves = Arrays.copyOf(moves, Math.max(moves.length * 2, count + times));
+
+            Arrays.fill(moves, count, count + times, move);
+            count += times;
+            repetitions = 0;
+        }
+
+        if (repetitions > 0)
+            throw new IllegalArgumentException("No move after the repetitions at the end");
+
+        return count == moves.length ? moves : Arrays.copyOf(moves, count);
+    }
+
+    /**
+     * Adds a digit to a number of repetitions
+     *
+     * @param repetitions the number read so far
+     * @param digit       the next digit
+     * @param limit       the largest number allowed
+     * @return the number followed by the digit
+     * @throws IllegalArgumentException if the number is larger than the limit
+     */
+    private static int addDigit(int repetitions, char digit, int limit) {
+        long value = repetitions * 10L + digit - '0';
+
+        if (value > limit)
+            throw new IllegalArgumentException("More than " + limit + " repetitions");
+
+        return (int) value;
+    }
+
+    /**
+     * @param c a letter of the notation
+     * @return the encoded move, see {@link MoveHistory#encode(Direction, boolean)}, -1 if not a move
+     */
+    private static int decode(char c) {
+        for (Direction direction : Direction.VALUES) {
+            if (c == MOVES[direction.ordinal()])
+                return MoveHistory.encode(direction, false);
+            if (c == PUSHES[direction.ordinal()])
+                return MoveHistory.encode(direction, true);
+        }
+
+        return -1;
+    }
+}
@@ -1,28 +1,64 @@
 package sokochan;
 
 import javafx.util.Pair;
-import sokochan.GridObjects.*;
 
 import java.awt.*;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Loads levels from a *.skb file and provides them to the {@link SokochanEngine}
  * Created by Vittorio on 25-Oct-16.
  */
 public final class MapLoader {
-    private final List<Level> levels;
+    // Matches a "Key: value" line
+    private static final Pattern KEY_VALUE = Pattern.compile("^([a-zA-Z0-9]+):\\s?(.*)");
+    // The first bytes of a binary map, see saveBinaryMap(File, SokochanEngine)
+    private static final byte[] BINARY_MAGIC = {'S', 'K', 'B', 'B'};
+    // The first bytes of a SaveFile, the key of its first line
+    private static final byte[] SAVE_FILE_MAGIC = "MapSetName".getBytes(StandardCharsets.US_ASCII);
+    private static final int BINARY_VERSION = 1;
+    // Maps saved with this extension are compressed with GZIP
+    public static final String COMPRESSED_EXTENSION = ".gz";
+    // The characters allowed in the rows of a level, in both cases, indexed by their code
+    private static final boolean[] ROW_CHARACTERS = new boolean[128];
+
+    static {
+        for (Letters letter : Letters.values()) {
+            ROW_CHARACTERS[letter.getCode()] = true;
+            ROW_CHARACTERS[Character.toUpperCase(letter.getCode())] = true;
+        }
+    }
+
+    private List<Level> levels;
+    // Where the rows of the levels are read from, once the map has been scanned
+    private RowSource rowSource;
     private String name;
+    // The map and its version, see getIdentity()
+    private String identity;
     private Level inProgressLevel;
     private int inProgressLevelIndex;
+    // Offset in the SaveFile of the key of the level in progress
+    private long inProgressOffset;
     private boolean mapLoaded;
 
     /**
@@ -39,49 +75,85 @@ public final class MapLoader {
      * @throws IOException        if the file is not found
      */
     void loadMap() throws MapLoaderException, IOException {
+        identity = "resource:maps/SampleGame.skb";
+
         InputStream systemResourceAsStream = ClassLoader.getSystemResourceAsStream("maps/SampleGame.skb");
 
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(systemResourceAsStream));
+        // A resource cannot be read at an offset, the levels are read from a copy in memory
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = systemResourceAsStream.read(buffer)) != -1)
+            bytes.write(buffer, 0, read);
 
-        loadMap(bufferedReader.lines());
+        systemResourceAsStream.close();
 
-        bufferedReader.close();
+        byte[] content = bytes.toByteArray();
+
+        loadMap(new ByteArrayInputStream(content),
+                (offset, length) -> Arrays.copyOfRange(content, (int) offset, (int) offset + length));
     }
 
     /**
-     * Loads a SaveFile into the {@link MapLoader}
+     * Loads a SaveFile into the {@link MapLoader}.
+     * The file is scanned once, the rows of a level are read again from the file when they are first needed.
+     *
+     * A binary map is recognised by its first bytes, and loaded as in {@link #loadBinaryMap(ByteBuffer)}.
+     * A compressed map is recognised by its first bytes too, and loaded as in {@link #loadCompressedMap(File)}.
+     * A standard collection is recognised by its extension, or by its content for a text file, and loaded as in
+     * {@link #loadXsbMap(File)}.
      *
      * @param file path to the SaveFile
      * @throws IOException        if the file is not found
      * @throws MapLoaderException if the SaveFile is invalid
      */
     void loadMap(File file) throws IOException, MapLoaderException {
-        Path file1 = file.toPath();
+        identity = identify(file);
 
-        Stream<String> lines = Files.lines(file1);
+        if (isXsbMap(file)) {
+            loadXsbMap(file);
+            return;
+        }
+
+        if (isBinaryMap(file)) {
+            loadBinaryMap(map(file));
+            return;
+        }
+
+        if (isCompressedMap(file)) {
+            loadCompressedMap(file);
+            return;
+        }
+
+        RowSource source = new UnchangedSource(file, false);
 
-        loadMap(lines);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            loadMap(in, source);
+        }
     }
 
     /**
-     * Loads a game given a {@link Stream} {@link String}s, for each line.
+     * Loads a game from the bytes of a SaveFile. Every line is checked, but only the position and the size of the
+     * rows of each level are kept: the rows are read from the {@link RowSource} when the level is first played.
      *
-     * @param lines A Stream containing a line in each string
+     * @param in     the SaveFile
+     * @param source where the rows are read from, at the same offsets of {@code in}
      * @throws MapLoaderException if the SaveFile is invalid
+     * @throws IOException        if the SaveFile cannot be read
      */
-    private void loadMap(Stream<String> lines) throws MapLoaderException {
+    private void loadMap(InputStream in, RowSource source) throws MapLoaderException, IOException {
         mapLoaded = false;
+        rowSource = source;
 
-        Iterator<String> i = lines.iterator();
-
-        boolean isInProgressLevel = false;
+        LineReader line = new LineReader(in, 0);
 
-        if (!i.hasNext()) {
+        if (!line.next()) {
             throw new MapLoaderException("The file seems to be empty");
         }
 
         //region Set Name
-        Pair<String, String> namePair = parseKeyValue(i.next());
+        Pair<String, String> namePair = line.isKeyValue() ? parseKeyValue(line.toString()) : null;
 
         if (namePair == null || !namePair.getKey().equals("MapSetName") || namePair.getKey().isEmpty()) {
             throw new MapLoaderException("Name should be specified in the first line of the file");
@@ -90,294 +162,1735 @@ public final class MapLoader {
         setName(namePair.getValue());
         //endregion
 
-        // I think I have no clue of what is happening here anymore
-        // Just the result of poor planning, I guess. I hope you like spaghetti.
-        // It works, so I shouldn't edit this too much.
-        while (i.hasNext()) {
-            String s = i.next().trim();
+        while (line.next())
+            scanLine(line, levels);
 
-            Pair<String, String> pair = parseKeyValue(s);
+        mapLoaded = true;
+    }
 
-            if (pair != null) { // it a like with something like "abc: abcd"
-                switch (pair.getKey()) {
-                    case "LevelName":
-                        levels.add(new Level(pair.getValue()));
-                        break;
-                    case "CurrentLevel":
-                        try {
-                            inProgressLevelIndex = Integer.valueOf(pair.getValue());
-                            isInProgressLevel = true;
-                            inProgressLevel = new Level(levels.get(inProgressLevelIndex).getName());
-                        } catch (NumberFormatException e) {
-                            throw new MapLoaderException("Invalid in progress index provided");
-                        }
-                        break;
-                    default:
-                        throw new MapLoaderException("Invalid key: value found.");
-                }
-            } else if (!s.isEmpty()) { // It's some other kind of line
-                validateMapLine(s);
+    /**
+     * Loads a SaveFile into the {@link MapLoader}, mapping it in memory. Levels are indexed as they are requested,
+     * so opening a collection takes the same time whatever its size, and reaching a level only scans the ones before
+     * it. Rows are checked when they are indexed: a malformed level makes {@link #getLevels()} throw an
+     * {@link IllegalStateException}, instead of this method throwing a {@link MapLoaderException}.
+     *
+     * @param file path to the SaveFile
+     * @throws IOException        if the file is not found, or larger than 2 GB
+     * @throws MapLoaderException if the name of the map or the level in progress are invalid
+     */
+    void loadMappedMap(File file) throws IOException, MapLoaderException {
+        identity = identify(file);
 
-                Level level;
+        // Standard collections are translated as a whole, there is nothing to map
+        if (isXsbMap(file)) {
+            loadXsbMap(file);
+            return;
+        }
 
-                if (isInProgressLevel) {
-                    level = inProgressLevel;
-                } else {
-                    int lastIndex = levels.size() - 1;
-                    if (lastIndex > -1)
-                        level = levels.get(lastIndex);
-                    else {
-                        level = null;
-                    }
-                }
+        // Compressed maps cannot be read at an offset, there is nothing to map either
+        if (isCompressedMap(file)) {
+            loadCompressedMap(file);
+            return;
+        }
 
-                if (level != null)
-                    level.content.add(s);
-                else
-                    throw new MapLoaderException("No level declared!");
-            }
+        ByteBuffer buffer = map(file);
+
+        if (isBinaryMap(buffer)) {
+            loadBinaryMap(buffer);
+            return;
+        }
+
+        mapLoaded = false;
+        rowSource = mappedSource(buffer);
+
+        LineReader line = new LineReader(new ByteBufferInputStream(buffer, 0, buffer.limit()), 0);
+
+        if (!line.next()) {
+            throw new MapLoaderException("The file seems to be empty");
+        }
+
+        Pair<String, String> namePair = line.isKeyValue() ? parseKeyValue(line.toString()) : null;
+
+        if (namePair == null || !namePair.getKey().equals("MapSetName") || namePair.getKey().isEmpty()) {
+            throw new MapLoaderException("Name should be specified in the first line of the file");
+        }
+
+        setName(namePair.getValue());
+
+        // A saved game ends with the level in progress, found by reading the file backwards up to its key
+        int inProgressOffset = findInProgressLevel(buffer);
+        int end = inProgressOffset < 0 ? buffer.limit() : inProgressOffset;
+
+        levels = new LazyLevels(buffer, (int) line.next, end);
+
+        if (inProgressOffset >= 0) {
+            LineReader tail = new LineReader(new ByteBufferInputStream(buffer, inProgressOffset, buffer.limit()),
+                    inProgressOffset);
+
+            while (tail.next())
+                scanLine(tail, levels);
         }
 
         mapLoaded = true;
     }
 
     /**
-     * Parses something like "MapSetName: Name" into a {@link Pair} containing the two values
+     * Loads a map compressed with GZIP or zlib, as written when the name of the map ends with
+     * {@value #COMPRESSED_EXTENSION}. A SaveFile is inflated while it is scanned, and inflated again up to the rows
+     * of a level when the level is first played, so the whole SaveFile is never held in memory.
+     * A binary map is inflated in memory, it is already packed.
      *
-     * @param string the string to parse
-     * @return (Key, Value)
+     * @param file the compressed map
+     * @throws IOException        if the file cannot be read, or is not a valid compressed stream
+     * @throws MapLoaderException if the map is invalid
      */
-    private Pair<String, String> parseKeyValue(String string) {
-        Pattern p = Pattern.compile("^([a-zA-Z0-9]+):\\s?(.*)");
-        Matcher m = p.matcher(string);
+    private void loadCompressedMap(File file) throws IOException, MapLoaderException {
+        try (InputStream in = new BufferedInputStream(openCompressed(file))) {
+            byte[] magic = new byte[BINARY_MAGIC.length];
 
-        if (!m.matches()) {
-            return null;
+            in.mark(magic.length);
+            int read = readFully(in, magic);
+            in.reset();
+
+            if (read == magic.length && Arrays.equals(magic, BINARY_MAGIC)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+
+                while ((read = in.read(buffer)) != -1)
+                    bytes.write(buffer, 0, read);
+
+                loadBinaryMap(ByteBuffer.wrap(bytes.toByteArray()));
+                return;
+            }
+
+            loadMap(in, new UnchangedSource(file, true));
         }
+    }
 
-        return new Pair<>(m.group(1), m.group(2));
+    /**
+     * @param file a map
+     * @return {@code true} if the file starts as a GZIP or zlib stream
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isCompressedMap(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return getCompression(in.read(), in.read()) != 0;
+        }
     }
 
     /**
-     * Check if the line is valid
-     *
-     * @param line to validate
-     * @throws MapLoaderException if the line is invalid
+     * @param first  the first byte of a file
+     * @param second the second byte of a file
+     * @return {@code 1} for GZIP, {@code 2} for zlib, {@code 0} if the file is not compressed
      */
-    private void validateMapLine(String line) throws MapLoaderException {
-        line = line.toLowerCase();
+    private static int getCompression(int first, int second) {
+        if (first < 0 || second < 0)
+            return 0;
 
-        char[] chars = line.toCharArray();
+        // GZIP_MAGIC is little endian
+        if ((second << 8 | first) == GZIPInputStream.GZIP_MAGIC)
+            return 1;
 
-        for (char c : chars) {
-            if (Letters.valueOf(c) == null)
-                throw new MapLoaderException("Invalid character '" + c + "' provided");
-        }
+        // Deflate method, and the header is a multiple of 31. A SaveFile starts with 'M', which never matches
+        if ((first & 0x0F) == 8 && (first << 8 | second) % 31 == 0)
+            return 2;
 
-        if (chars[0] != Letters.WALL.getCode() || chars[chars.length - 1] != Letters.WALL.getCode())
-            throw new MapLoaderException("Walls should be on the edge of the map");
+        return 0;
     }
 
     /**
-     * Saves the current state of the {@link SokochanEngine} into a SaveFile
+     * Opens a compressed map, inflating it while it is read
      *
-     * @param file   the path where to save the game
-     * @param engine the {@link SokochanEngine}, to save the state from
-     * @throws IOException if the file is not accessible
+     * @param file the compressed map
+     * @return the inflated bytes
+     * @throws IOException if the file cannot be read, or is not compressed
      */
-    void saveMap(File file, SokochanEngine engine) throws IOException {
-        StringBuilder builder = new StringBuilder();
+    private static InputStream openCompressed(File file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), 65536);
 
-        builder.append("MapSetName: ");
-        builder.append(engine.getMapName());
-        builder.append("\n");
+        try {
+            in.mark(2);
+            int compression = getCompression(in.read(), in.read());
+            in.reset();
 
-        for (Level level : engine.getLevels()) {
-            builder.append("LevelName: ");
-            builder.append(level.getName());
-            builder.append("\n");
-            level.getContent().forEach(s -> {
-                builder.append(s);
-                builder.append("\n");
-            });
-            builder.append("\n");
+            switch (compression) {
+                case 1:
+                    return new GZIPInputStream(in, 65536);
+                case 2:
+                    return new InflaterInputStream(in);
+                default:
+                    throw new IOException("The file is not compressed");
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
         }
-        // The normal levels have been saved now
-
-        // Now append the progress of the current level
-        builder.append("CurrentLevel: ");
-        builder.append(engine.getLevelIndex());
-        builder.append("\n");
+    }
 
-        // Foreach tile in the grid
-        engine.getSokochanGrid().forEach(tileGridObject -> {
-            MovableGridObject content = tileGridObject.getPlacedObject();
-
-            if (tileGridObject instanceof Wall)
-                builder.append(Letters.WALL.getCode());
-            else if (tileGridObject instanceof Diamond) {
-                if (content == null)
-                    builder.append(Letters.DIAMOND.getCode());
-                else if (content instanceof Crate)
-                    builder.append(Letters.CRATE_ON_DIAMOND.getCode());
-                else if (content instanceof WarehouseKeeper)
-                    builder.append(Letters.WAREHOUSE_KEEPER_ON_DIAMOND.getCode());
-            } else {
-                if (content == null)
-                    builder.append(Letters.TILE.getCode());
-                else if (content instanceof Crate)
-                    builder.append(Letters.CRATE.getCode());
-                else if (content instanceof WarehouseKeeper)
-                    builder.append(Letters.WAREHOUSE_KEEPER.getCode());
-            }
+    /**
+     * Opens a file to write a map, compressing it with GZIP if the name of the map ends with
+     * {@value #COMPRESSED_EXTENSION}
+     *
+     * @param path the file to write
+     * @param map  the map being written, it may be written aside first
+     * @return the stream, buffered
+     * @throws IOException if the file cannot be written
+     */
+    private static OutputStream createMap(Path path, File map) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
 
-            // If it's the last in the row, send a new line
-            if (tileGridObject.getPosition().getX() == engine.getSokochanGrid().X_SIZE - 1)
-                builder.append('\n');
-        });
+        if (map.getName().toLowerCase().endsWith(COMPRESSED_EXTENSION))
+            return new GZIPOutputStream(out, 65536);
 
-        // At last write the file
-        Files.write(file.toPath(), builder.toString().getBytes());
+        return new BufferedOutputStream(out);
     }
 
     /**
-     * @return all levels in a map
+     * Reads until the array is full, or the stream ends
+     *
+     * @return the number of bytes read
      */
-    //<editor-fold desc="Getters and Setters" defaultstate="collapsed">
-    List<Level> getLevels() {
-        return levels;
+    private static int readFully(InputStream in, byte[] bytes) throws IOException {
+        int read = 0;
+
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+
+            if (n < 0)
+                break;
+
+            read += n;
+        }
+
+        return read;
     }
 
     /**
-     * @return the name of the map as specified in the save file
+     * Skips exactly {@code count} bytes, inflating them if the stream is compressed
+     *
+     * @throws EOFException if the stream ends before
      */
-    String getName() {
-        return name;
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+
+            if (skipped <= 0) {
+                if (in.read() < 0)
+                    throw new EOFException("The compressed SaveFile ends before the level");
+
+                skipped = 1;
+            }
+
+            count -= skipped;
+        }
     }
 
     /**
-     * @param name sets the name of the map
+     * Imports a collection in the standard XSB or SOK format, see {@link XsbParser}. The levels are translated in
+     * parallel and kept in memory, the name of the map is the name of the file.
+     *
+     * @param file the collection
+     * @throws IOException        if the file cannot be read
+     * @throws MapLoaderException if a level is invalid, or there are no levels
      */
-    void setName(String name) {
-        this.name = name;
+    private void loadXsbMap(File file) throws IOException, MapLoaderException {
+        mapLoaded = false;
+
+        List<XsbParser.Block> blocks;
+
+        try {
+            blocks = XsbParser.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new MapLoaderException(e.getMessage());
+        }
+
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+
+        setName(dot > 0 ? name.substring(0, dot) : name);
+
+        List<Level> levels = new ArrayList<>(blocks.size());
+
+        for (XsbParser.Block block : blocks) {
+            Level level = new Level(block.getName());
+
+            level.setContent(block.getRows());
+            levels.add(level);
+        }
+
+        this.levels = levels;
+        inProgressLevel = null;
+        mapLoaded = true;
     }
 
     /**
-     * @return gets the level that has been saved while being played, in order to restore it's status when reloaded
+     * @param file a map
+     * @return {@code true} if the extension is the one of a standard collection, or the file is a text file that
+     * does not start as a SaveFile
+     * @throws IOException if the file cannot be read
      */
-    Level getInProgressLevel() {
-        return inProgressLevel;
+    private static boolean isXsbMap(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+
+        if (name.endsWith(".xsb") || name.endsWith(".sok"))
+            return true;
+
+        return name.endsWith(".txt") && !startsWith(file, SAVE_FILE_MAGIC) && !isBinaryMap(file)
+                && !isCompressedMap(file);
     }
 
     /**
-     * @return returns the index of the level that has been saved as 'in progress'
+     * Loads a binary map, as written by {@link #saveBinaryMap(File, SokochanEngine)}. Only the names and the sizes
+     * of the levels are read: the cells are unpacked from the buffer when a level is parsed or played.
+     *
+     * @param buffer the whole binary map
+     * @throws MapLoaderException if the header or the index of the levels are invalid
      */
-    int getInProgressLevelIndex() {
-        return inProgressLevelIndex;
+    private void loadBinaryMap(ByteBuffer buffer) throws MapLoaderException {
+        mapLoaded = false;
+        rowSource = mappedSource(buffer);
+
+        ByteBuffer in = buffer.duplicate();
+
+        try {
+            in.position(BINARY_MAGIC.length);
+
+            if (in.get() != BINARY_VERSION)
+                throw new MapLoaderException("Unsupported binary map version");
+
+            int count = in.getInt();
+
+            if (count < 0)
+                throw new MapLoaderException("Invalid number of levels");
+
+            setName(readString(in));
+
+            int index = in.position();
+            List<Level> levels = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                in.position(in.getInt(index + i * Integer.BYTES));
+
+                Level level = new Level(readString(in));
+                int width = in.getShort() & 0xFFFF;
+                int height = in.getShort() & 0xFFFF;
+
+                if (width == 0 || height == 0 || (long) width * height > Integer.MAX_VALUE / 3
+                        || packedSize(width * height) > in.remaining())
+                    throw new MapLoaderException("Invalid size of level " + i);
+
+                level.setCells(in.position(), width, height);
+                levels.add(level);
+            }
+
+            this.levels = levels;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new MapLoaderException("The binary map is truncated or corrupted");
+        }
+
+        inProgressLevel = null;
+        mapLoaded = true;
     }
 
     /**
-     * @return whether the map has been loaded
+     * Writes the levels of the {@link SokochanEngine} into a binary map, which loads much faster than a SaveFile.
+     * A binary map holds the levels only, not the progress of the game. It is compressed with GZIP if the name of
+     * the file ends with {@value #COMPRESSED_EXTENSION}.
+     * <p>
+     * After the header (the magic "SKBB", the version, the number of levels and the name of the map) comes the
+     * offset of every level, so that any level can be reached at once. A level is its name, its width and height as
+     * unsigned shorts, and its cells row by row: the ordinal of their {@link Letters}, 3 bits each.
+     * Strings are UTF-8 prefixed by their length in bytes, numbers are big-endian.
+     *
+     * @param file   the path where to save the map
+     * @param engine the {@link SokochanEngine}, to save the levels from
+     * @throws IOException if the file is not accessible
      */
-    boolean isMapLoaded() {
-        return mapLoaded;
+    void saveBinaryMap(File file, SokochanEngine engine) throws IOException {
+        List<Level> levels = engine.getLevels();
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        int[] offsets = new int[levels.size()];
+
+        for (int i = 0; i < levels.size(); i++) {
+            Level level = levels.get(i);
+
+            if (level.getX() > 0xFFFF || level.getY() > 0xFFFF)
+                throw new IOException("Level " + level.getName() + " is too large for a binary map");
+
+            offsets[i] = out.size();
+
+            writeString(out, level.getName());
+            out.writeShort(level.getX());
+            out.writeShort(level.getY());
+            out.write(pack(level.getCells()));
+        }
+
+        try (DataOutputStream stream = new DataOutputStream(createMap(file.toPath(), file))) {
+            stream.write(BINARY_MAGIC);
+            stream.writeByte(BINARY_VERSION);
+            stream.writeInt(levels.size());
+            writeString(stream, engine.getMapName());
+
+            // The records follow the index
+            int start = stream.size() + offsets.length * Integer.BYTES;
+
+            for (int offset : offsets)
+                stream.writeInt(start + offset);
+
+            records.writeTo(stream);
+        }
     }
-    //</editor-fold>
 
-    //<editor-fold desc="Level" defaultstate="collapsed">
+    /**
+     * @param file a SaveFile or a binary map
+     * @return {@code true} if the file starts as a binary map
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isBinaryMap(File file) throws IOException {
+        return startsWith(file, BINARY_MAGIC);
+    }
 
     /**
-     * An object representing a single level in a Map
+     * @param file  a file
+     * @param magic the bytes expected at its start
+     * @return {@code true} if the file starts with the bytes
+     * @throws IOException if the file cannot be read
      */
-    public class Level implements Iterable {
-        private final String name;
+    private static boolean startsWith(File file, byte[] magic) throws IOException {
+        byte[] head = new byte[magic.length];
 
-        private final List<String> content;
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read = 0;
 
-        /**
-         * Creates a new level given the name. Will instantiate an array of {@link String}s
-         *
-         * @param name of the level
-         */
-        public Level(String name) {
-            this.name = name;
-            content = new ArrayList<>();
-        }
+            while (read < head.length) {
+                int n = in.read(head, read, head.length - read);
 
-        /**
-         * @return the name of the level
-         */
-        public String getName() {
-            return name;
-        }
+                if (n < 0)
+                    return false;
 
-        /**
-         * @return a string representing the a row of the level
-         */
-        public List<String> getContent() {
-            return content;
+                read += n;
+            }
         }
 
-        /**
-         * @return the width of the level
-         */
-        public int getX() {
-            // TODO Maybe check that they are of the same length
-            return content.get(0).length();
-        }
+        return Arrays.equals(head, magic);
+    }
 
-        /**
-         * @return the height of the level
-         */
-        public int getY() {
-            return content.size();
-        }
+    /**
+     * @param buffer a mapped SaveFile or binary map
+     * @return {@code true} if the buffer starts as a binary map
+     */
+    private static boolean isBinaryMap(ByteBuffer buffer) {
+        if (buffer.limit() < BINARY_MAGIC.length)
+            return false;
 
-        @Override
-        public MapIterator iterator() {
-            return new MapIterator();
+        for (int i = 0; i < BINARY_MAGIC.length; i++) {
+            if (buffer.get(i) != BINARY_MAGIC[i])
+                return false;
         }
 
-        class MapIterator implements Iterator<Character> {
-            private final int X;
-            private final int Y;
+        return true;
+    }
 
-            private int x = -1;
-            private int y = 0;
+    /**
+     * Maps a whole file in memory, read only
+     *
+     * @param file the file
+     * @return the mapped bytes
+     * @throws IOException if the file is not found, or larger than 2 GB
+     */
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The file is too large to be mapped");
 
-            /**
-             * Instantiate the sizes variable
-             */
-            private MapIterator() {
-                X = getX();
-                Y = getY();
-            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
 
-            @Override
-            public boolean hasNext() {
-                return y < Y - 1 || x < X - 1;
-            }
+    /**
+     * Identifies a map as it is now, the way {@link #getIdentity()} does for the map that was loaded
+     *
+     * @param file a map
+     * @return the canonical path of the file, with its size and last modification
+     * @throws IOException if the file cannot be accessed
+     */
+    static String identify(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
 
-            /**
-             * @return the position at the current iteration
-             */
-            public Point getPosition() {
-                return new Point(x, y);
-            }
+        return file.getCanonicalPath() + "@" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+    }
 
-            @Override
-            public Character next() {
-                if (x + 1 < X) {
-                    x++;
-                } else {
-                    x = 0;
-                    y++;
-                }
-                return content.get(y).charAt(x);
-            }
-        }
+    /**
+     * @param buffer a mapped file
+     * @return a source reading from the buffer, it can be used by many threads
+     */
+    private static RowSource mappedSource(ByteBuffer buffer) {
+        return (offset, length) -> {
+            byte[] rows = new byte[length];
+
+            // A duplicate for every read, the mapped buffer is shared by all the threads
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position((int) offset);
+            duplicate.get(rows);
+
+            return rows;
+        };
+    }
+
+    /**
+     * @param in the buffer, positioned at the length of the string
+     * @return the string read
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+
+        in.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param out    the stream
+     * @param string the string to write, prefixed by its length
+     * @throws IOException if the string is longer than 65535 bytes, or it cannot be written
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > 0xFFFF)
+            throw new IOException("Name too long for a binary map");
+
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param count a number of cells
+     * @return the bytes taken by the cells, 3 bits each
+     */
+    private static int packedSize(int count) {
+        return (count * 3 + 7) / 8;
+    }
+
+    /**
+     * Packs the cells of a level, 3 bits each, from the lowest bit of the first byte
+     *
+     * @param cells the ordinals of the {@link Letters}
+     * @return the packed cells
+     */
+    private static byte[] pack(byte[] cells) {
+        byte[] packed = new byte[packedSize(cells.length)];
+        int bits = 0;
+        int buffer = 0;
+        int j = 0;
+
+        for (byte cell : cells) {
+            buffer |= cell << bits;
+            bits += 3;
+
+            if (bits >= 8) {
+                packed[j++] = (byte) buffer;
+                buffer >>>= 8;
+                bits -= 8;
+            }
+        }
+
+        if (bits > 0)
+            packed[j] = (byte) buffer;
+
+        return packed;
+    }
+
+    /**
+     * Unpacks the cells of a level, see {@link #pack(byte[])}
+     *
+     * @param packed the packed cells
+     * @param count  the number of cells
+     * @return the ordinals of the {@link Letters}
+     * @throws RuntimeException if a cell is not a valid letter
+     */
+    private static byte[] unpack(byte[] packed, int count) {
+        byte[] cells = new byte[count];
+        int bits = 0;
+        int buffer = 0;
+        int j = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (bits < 3) {
+                buffer |= (packed[j++] & 0xFF) << bits;
+                bits += 8;
+            }
+
+            int cell = buffer & 7;
+
+            if (cell >= Letters.VALUES.length)
+                throw new RuntimeException("Invalid cell " + cell + " in a binary map");
+
+            cells[i] = (byte) cell;
+            buffer >>>= 3;
+            bits -= 3;
+        }
+
+        return cells;
+    }
+
+    /**
+     * Looks for the key of the level in progress, reading the file backwards from its end up to the first key
+     *
+     * @param buffer the mapped file
+     * @return the offset of the line of the key, -1 if the last key is not the one of a level in progress
+     */
+    private static int findInProgressLevel(ByteBuffer buffer) {
+        byte[] key = "CurrentLevel:".getBytes(StandardCharsets.US_ASCII);
+        int end = buffer.limit();
+
+        while (end > 0) {
+            int start = end - 1;
+
+            while (start > 0 && buffer.get(start - 1) != '\n')
+                start--;
+
+            int first = start;
+
+            while (first < end && (buffer.get(first) & 0xFF) <= ' ')
+                first++;
+
+            if (first < end) {
+                // Every line that is not a row has a colon, rows have none
+                boolean isKey = false;
+
+                for (int i = first; i < end && !isKey; i++)
+                    isKey = buffer.get(i) == ':';
+
+                if (isKey) {
+                    for (int i = 0; i < key.length; i++) {
+                        if (first + i >= end || buffer.get(first + i) != key[i])
+                            return -1;
+                    }
+
+                    return start;
+                }
+            }
+
+            end = start - 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reads a line of a SaveFile, after the name of the map, adding a level, a row or setting the level in progress
+     *
+     * @param line   the line
+     * @param levels the levels found so far, where new levels are added
+     * @throws MapLoaderException if the line is invalid
+     */
+    private void scanLine(LineReader line, List<Level> levels) throws MapLoaderException {
+        // I think I have no clue of what is happening here anymore
+        // Just the result of poor planning, I guess. I hope you like spaghetti.
+        // It works, so I shouldn't edit this too much.
+        if (line.isKeyValue()) { // it a like with something like "abc: abcd"
+            Pair<String, String> pair = parseKeyValue(line.toString());
+
+            switch (pair.getKey()) {
+                case "LevelName":
+                    levels.add(new Level(pair.getValue()));
+                    break;
+                case "CurrentLevel":
+                    try {
+                        inProgressLevelIndex = Integer.valueOf(pair.getValue());
+                        inProgressLevel = new Level(levels.get(inProgressLevelIndex).getName());
+                        inProgressOffset = line.getOffset();
+                    } catch (NumberFormatException e) {
+                        throw new MapLoaderException("Invalid in progress index provided");
+                    }
+                    break;
+                default:
+                    throw new MapLoaderException("Invalid key: value found.");
+            }
+        } else if (!line.isEmpty()) { // It's some other kind of line
+            validateMapLine(line);
+
+            Level level;
+
+            // Levels may still be indexed after the level in progress, when the SaveFile is mapped
+            if (inProgressLevel != null && line.getOffset() > inProgressOffset) {
+                level = inProgressLevel;
+            } else {
+                int lastIndex = levels.size() - 1;
+                if (lastIndex > -1)
+                    level = levels.get(lastIndex);
+                else {
+                    level = null;
+                }
+            }
+
+            if (level != null)
+                level.addRow(line.getOffset(), line.getEnd(), line.length());
+            else
+                throw new MapLoaderException("No level declared!");
+        }
+    }
+
+    /**
+     * Parses something like "MapSetName: Name" into a {@link Pair} containing the two values
+     *
+     * @param string the string to parse
+     * @return (Key, Value)
+     */
+    private Pair<String, String> parseKeyValue(String string) {
+        Matcher m = KEY_VALUE.matcher(string);
+
+        if (!m.matches()) {
+            return null;
+        }
+
+        return new Pair<>(m.group(1), m.group(2));
+    }
+
+    /**
+     * Check if the line is valid
+     *
+     * @param line to validate
+     * @throws MapLoaderException if the line is invalid
+     */
+    private void validateMapLine(LineReader line) throws MapLoaderException {
+        for (int i = 0; i < line.length(); i++) {
+            int c = line.charAt(i);
+
+            if (c >= ROW_CHARACTERS.length || !ROW_CHARACTERS[c])
+                throw new MapLoaderException("Invalid character '" + (char) c + "' provided");
+        }
+
+        if (Character.toLowerCase((char) line.charAt(0)) != Letters.WALL.getCode()
+                || Character.toLowerCase((char) line.charAt(line.length() - 1)) != Letters.WALL.getCode())
+            throw new MapLoaderException("Walls should be on the edge of the map");
+    }
+
+    /**
+     * Saves a snapshot of a {@link SokochanEngine} into a SaveFile. The SaveFile is written aside and then moved
+     * over the old one, so that the old one is never left half written. It is compressed with GZIP if the name of
+     * the file ends with {@value #COMPRESSED_EXTENSION}.
+     * <p>
+     * The rows of the levels that have not been read are copied from their map, without being kept in memory. If
+     * the map is the file being replaced, those levels read their rows from the new file from then on.
+     *
+     * @param file     the path where to save the game
+     * @param snapshot the state of the {@link SokochanEngine} to save
+     * @throws IOException if the file is not accessible
+     */
+    void saveMap(File file, SokochanEngine.Snapshot snapshot) throws IOException {
+        // The progress of the current level, written after the normal levels
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("CurrentLevel: ");
+        builder.append(snapshot.getLevelIndex());
+        builder.append("\n");
+
+        BoardState state = snapshot.getBoardState();
+        Board board = state.getBoard();
+
+        // Foreach cell of the board
+        for (int y = 0; y < board.Y_SIZE; y++) {
+            for (int x = 0; x < board.X_SIZE; x++) {
+                int cell = board.index(x, y);
+                boolean crate = state.hasCrate(cell);
+                boolean keeper = cell == state.getWarehouseKeeper();
+
+                if (board.isWall(cell))
+                    builder.append(Letters.WALL.getCode());
+                else if (board.isDiamond(cell)) {
+                    if (crate)
+                        builder.append(Letters.CRATE_ON_DIAMOND.getCode());
+                    else if (keeper)
+                        builder.append(Letters.WAREHOUSE_KEEPER_ON_DIAMOND.getCode());
+                    else
+                        builder.append(Letters.DIAMOND.getCode());
+                } else {
+                    if (crate)
+                        builder.append(Letters.CRATE.getCode());
+                    else if (keeper)
+                        builder.append(Letters.WAREHOUSE_KEEPER.getCode());
+                    else
+                        builder.append(Letters.TILE.getCode());
+                }
+            }
+
+            builder.append('\n');
+        }
+
+        // At last write the file, the rows of the levels are copied one level at a time
+        Path target = file.toPath().toAbsolutePath();
+        Path temporary = target.resolveSibling(file.getName() + ".tmp");
+        List<Level> levels = snapshot.getLevels();
+        // Where the rows of every level are written in the new file
+        long[] offsets = new long[levels.size()];
+        long[] ends = new long[levels.size()];
+        long position = 0;
+
+        try (UnchangedSource.Batch batch = batch(levels); OutputStream out = createMap(temporary, file)) {
+            position += writeText(out, "MapSetName: " + snapshot.getMapName() + "\n");
+
+            for (int i = 0; i < levels.size(); i++) {
+                Level level = levels.get(i);
+
+                position += writeText(out, "LevelName: " + level.getName() + "\n");
+
+                byte[] rows = level.getSaveFileRows(batch);
+                out.write(rows);
+
+                offsets[i] = position;
+                position += rows.length;
+                ends[i] = position;
+
+                position += writeText(out, "\n");
+            }
+
+            writeText(out, builder.toString());
+        }
+
+        // The levels that would be left reading the old file
+        boolean compressed = file.getName().toLowerCase().endsWith(COMPRESSED_EXTENSION);
+        BasicFileAttributes written = Files.readAttributes(temporary, BasicFileAttributes.class);
+        List<Integer> moved = new ArrayList<>();
+
+        for (int i = 0; i < levels.size(); i++) {
+            RowSource source = levels.get(i).getSource();
+
+            if (!levels.get(i).isLoaded() && source instanceof UnchangedSource && ((UnchangedSource) source).reads(target))
+                moved.add(i);
+        }
+
+        // Until it is moved the new file is read aside, from then on at its path
+        RowSource aside = new UnchangedSource(temporary.toFile(), compressed, written);
+        RowSource saved = new UnchangedSource(target.toFile(), compressed, written);
+
+        moveRows(levels, moved, offsets, ends, (offset, length) -> {
+            try {
+                return aside.read(offset, length);
+            } catch (IOException e) {
+                return saved.read(offset, length);
+            }
+        });
+
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        moveRows(levels, moved, offsets, ends, saved);
+    }
+
+    /**
+     * @param levels the levels of a map
+     * @return reads the file the levels that have not been read come from, in a row, {@code null} if there is none
+     */
+    private static UnchangedSource.Batch batch(List<Level> levels) {
+        for (Level level : levels) {
+            if (!level.isLoaded() && level.getSource() instanceof UnchangedSource)
+                return ((UnchangedSource) level.getSource()).batch();
+        }
+
+        return null;
+    }
+
+    /**
+     * Makes some levels read their rows from the file they have been saved into
+     *
+     * @param levels  the levels saved
+     * @param moved   the indexes of the levels to move
+     * @param offsets the offsets of the rows of every level in the new file
+     * @param ends    the offsets of the end of the rows of every level
+     * @param source  reads the new file
+     */
+    private static void moveRows(List<Level> levels, List<Integer> moved, long[] offsets, long[] ends, RowSource source) {
+        for (int i : moved)
+            levels.get(i).moveRows(source, offsets[i], ends[i]);
+    }
+
+    /**
+     * @param out  where to write
+     * @param text the text
+     * @return the number of bytes written
+     * @throws IOException if the text cannot be written
+     */
+    private static int writeText(OutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        out.write(bytes);
+
+        return bytes.length;
+    }
+
+    /**
+     * @param bytes some bytes
+     * @param from  the first byte to look at
+     * @param to    the end of the bytes to look at, excluded
+     * @param value the byte to find
+     * @return {@code true} if the byte is found in the range
+     */
+    private static boolean contains(byte[] bytes, int from, int to, char value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks for a level without counting all the levels: the levels of a memory mapped SaveFile are only indexed up
+     * to it
+     *
+     * @param levels the levels of a map, see {@link #getLevels()}
+     * @param index  a level index
+     * @return {@code true} if the map has the level
+     */
+    static boolean hasLevel(List<Level> levels, int index) {
+        if (index < 0)
+            return false;
+
+        if (levels instanceof LazyLevels)
+            return ((LazyLevels) levels).has(index);
+
+        return index < levels.size();
+    }
+
+    /**
+     * @return all levels in a map
+     */
+    //<editor-fold desc="Getters and Setters" defaultstate="collapsed">
+    List<Level> getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return the name of the map as specified in the save file
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the map the levels were loaded from: the path of the file with its size and last modification, so
+     * that a map rewritten since is another map
+     */
+    String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * @param name sets the name of the map
+     */
+    void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return gets the level that has been saved while being played, in order to restore it's status when reloaded
+     */
+    Level getInProgressLevel() {
+        return inProgressLevel;
+    }
+
+    /**
+     * @return returns the index of the level that has been saved as 'in progress'
+     */
+    int getInProgressLevelIndex() {
+        return inProgressLevelIndex;
+    }
+
+    /**
+     * @return whether the map has been loaded
+     */
+    boolean isMapLoaded() {
+        return mapLoaded;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Level" defaultstate="collapsed">
+
+    /**
+     * An object representing a single level in a Map
+     */
+    public class Level implements Iterable {
+        private final String name;
+
+        // The rows, read on first use
+        private List<String> content;
+        // Where the rows are in the SaveFile, from the first byte of the first row to the end of the last one
+        private long offset;
+        private long end;
+        private int rowsCount;
+        private int width;
+        // Whether the level comes from a binary map, where the cells are packed from offset
+        private boolean packed;
+        // Where the rows are read from once they have been saved over the map, null to read them from the map
+        private RowSource source;
+
+        /**
+         * Creates a new level given the name. The rows are added while the map is scanned.
+         *
+         * @param name of the level
+         */
+        public Level(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records a row of the level, while the map is scanned
+         *
+         * @param offset the offset of the line of the row in the SaveFile
+         * @param end    the offset of the end of the line
+         * @param width  the length of the row, without the surrounding white space
+         */
+        private void addRow(long offset, long end, int width) {
+            if (rowsCount == 0) {
+                this.offset = offset;
+                this.width = width;
+            }
+
+            this.end = end;
+            rowsCount++;
+        }
+
+        /**
+         * Sets the rows of a level that is not read from a file
+         *
+         * @param rows the rows, all of the same length
+         */
+        private void setContent(List<String> rows) {
+            this.content = rows;
+            this.rowsCount = rows.size();
+            this.width = rows.get(0).length();
+        }
+
+        /**
+         * Records where the cells of the level are, in a binary map
+         *
+         * @param offset the offset of the packed cells
+         * @param width  the width of the level
+         * @param height the height of the level
+         */
+        private void setCells(long offset, int width, int height) {
+            this.offset = offset;
+            this.width = width;
+            this.rowsCount = height;
+            this.packed = true;
+        }
+
+        /**
+         * Reads the packed cells of the level from a binary map
+         *
+         * @return the ordinals of the {@link Letters}, row by row
+         */
+        private byte[] readCells() {
+            int count = width * rowsCount;
+
+            try {
+                return unpack(getSource().read(offset, packedSize(count)), count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Gives the cells of the level, row by row. The cells of a binary map that is not being played are unpacked
+         * without building its rows.
+         *
+         * @return the ordinals of the {@link Letters} of the cells
+         * @throws IllegalArgumentException  if an invalid letter is found
+         * @throws IndexOutOfBoundsException if the rows of the level have different lengths
+         */
+        synchronized byte[] getCells() {
+            if (packed && !isLoaded())
+                return readCells();
+
+            List<String> rows = getContent();
+            int X = getX();
+            byte[] cells = new byte[X * rows.size()];
+
+            for (int y = 0; y < rows.size(); y++) {
+                String row = rows.get(y);
+
+                for (int x = 0; x < X; x++) {
+                    char c = row.charAt(x);
+                    Letters letter = Letters.valueOf(c);
+
+                    if (letter == null)
+                        throw new IllegalArgumentException("Invalid letter '" + c + "' at row " + (y + 1)
+                                + ", column " + (x + 1) + " of level " + getName());
+
+                    cells[y * X + x] = (byte) letter.ordinal();
+                }
+            }
+
+            return cells;
+        }
+
+        /**
+         * Reads the rows of the level from the SaveFile
+         *
+         * @return the rows, without white space around them
+         */
+        private List<String> readContent() {
+            List<String> rows = new ArrayList<>(rowsCount);
+
+            if (rowsCount == 0)
+                return rows;
+
+            if (packed) {
+                byte[] cells = readCells();
+                char[] row = new char[width];
+
+                for (int y = 0; y < rowsCount; y++) {
+                    for (int x = 0; x < width; x++)
+                        row[x] = Letters.VALUES[cells[y * width + x]].getCode();
+
+                    rows.add(new String(row));
+                }
+
+                return rows;
+            }
+
+            try {
+                String text = new String(getSource().read(offset, (int) (end - offset)), StandardCharsets.UTF_8);
+
+                // Blank lines and the keys of other levels can be found among the rows
+                for (String line : text.split("\n")) {
+                    line = line.trim();
+
+                    if (!line.isEmpty() && !KEY_VALUE.matcher(line).matches())
+                        rows.add(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return rows;
+        }
+
+        /**
+         * Gives the rows as they are written in a SaveFile. The rows of a level that has not been read are copied
+         * from the map line by line, without being kept: only the white space and the lines of keys found among them
+         * are left out.
+         *
+         * @param batch reads the map of the level, if it is the one the batch reads, see {@link UnchangedSource#batch()}
+         * @return the rows, each followed by a new line
+         * @throws IOException if the rows cannot be read
+         */
+        private synchronized byte[] getSaveFileRows(UnchangedSource.Batch batch) throws IOException {
+            ByteArrayOutputStream rows = new ByteArrayOutputStream();
+            RowSource source = batch != null && batch.getSource() == getSource() ? batch : getSource();
+
+            if (isLoaded()) {
+                for (String row : content) {
+                    rows.write(row.getBytes(StandardCharsets.UTF_8));
+                    rows.write('\n');
+                }
+            } else if (packed) {
+                int count = width * rowsCount;
+                byte[] cells = unpack(source.read(offset, packedSize(count)), count);
+
+                for (int cell = 0; cell < count; cell++) {
+                    rows.write(Letters.VALUES[cells[cell]].getCode());
+
+                    if (cell % width == width - 1)
+                        rows.write('\n');
+                }
+            } else if (rowsCount > 0) {
+                byte[] text = source.read(offset, (int) (end - offset));
+                int start = 0;
+
+                for (int i = 0; i <= text.length; i++) {
+                    if (i < text.length && text[i] != '\n')
+                        continue;
+
+                    int from = start;
+                    int to = i;
+                    start = i + 1;
+
+                    while (from < to && text[from] <= ' ')
+                        from++;
+
+                    while (to > from && text[to - 1] <= ' ')
+                        to--;
+
+                    // A row has no colon, the lines of keys do
+                    if (from < to && !contains(text, from, to, ':')) {
+                        rows.write(text, from, to - from);
+                        rows.write('\n');
+                    }
+                }
+            }
+
+            return rows.toByteArray();
+        }
+
+        /**
+         * Reads the rows from a file they have been saved into, the map it was read from being replaced
+         *
+         * @param source reads the new file
+         * @param offset the offset of the first row in the new file
+         * @param end    the offset of the end of the last row
+         */
+        private synchronized void moveRows(RowSource source, long offset, long end) {
+            this.source = source;
+            this.offset = offset;
+            this.end = end;
+            this.packed = false;
+        }
+
+        /**
+         * @return where the rows are read from
+         */
+        private RowSource getSource() {
+            return source != null ? source : rowSource;
+        }
+
+        /**
+         * @return whether the rows have been read, see {@link #getContent()}
+         */
+        public boolean isLoaded() {
+            return content != null;
+        }
+
+        /**
+         * @return the name of the level
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gives the rows of the level, they are read from the SaveFile on the first call
+         *
+         * @return a string representing the a row of the level
+         * @throws UncheckedIOException if the SaveFile cannot be read anymore
+         */
+        public synchronized List<String> getContent() {
+            if (content == null)
+                content = readContent();
+
+            return content;
+        }
+
+        /**
+         * @return the width of the level
+         */
+        public int getX() {
+            // TODO Maybe check that they are of the same length
+            return isLoaded() ? content.get(0).length() : width;
+        }
+
+        /**
+         * @return the height of the level
+         */
+        public int getY() {
+            return isLoaded() ? content.size() : rowsCount;
+        }
+
+        @Override
+        public MapIterator iterator() {
+            return new MapIterator();
+        }
+
+        class MapIterator implements Iterator<Character> {
+            private final int X;
+            private final int Y;
+
+            private int x = -1;
+            private int y = 0;
+
+            /**
+             * Instantiate the sizes variable
+             */
+            private MapIterator() {
+                X = getX();
+                Y = getY();
+            }
+
+            @Override
+            public boolean hasNext() {
+                return y < Y - 1 || x < X - 1;
+            }
+
+            /**
+             * @return the position at the current iteration
+             */
+            public Point getPosition() {
+                return new Point(x, y);
+            }
+
+            /**
+             * @return the column at the current iteration
+             */
+            int getColumn() {
+                return x;
+            }
+
+            /**
+             * @return the row at the current iteration
+             */
+            int getRow() {
+                return y;
+            }
+
+            @Override
+            public Character next() {
+                if (x + 1 < X) {
+                    x++;
+                } else {
+                    x = 0;
+                    y++;
+                }
+                return getContent().get(y).charAt(x);
+            }
+        }
+    }
+    //</editor-fold>
+
+    /**
+     * Reads the bytes of a SaveFile at a given offset
+     */
+    @FunctionalInterface
+    private interface RowSource {
+        /**
+         * @param offset the offset of the first byte
+         * @param length the number of bytes
+         * @return the bytes
+         * @throws IOException if the SaveFile cannot be read
+         */
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    /**
+     * Reads a SaveFile by its path, guarded. The levels are read long after the file was scanned, and their offsets
+     * are only valid in the file that was scanned: if it has been replaced or rewritten since, e.g. by a save over
+     * it, the read fails instead of giving the rows of another file.
+     * The file is recognised by its size, its last modification and, where the system has one, its key (the inode).
+     */
+    private static final class UnchangedSource implements RowSource {
+        private final File file;
+        // Whether the file is compressed, the offsets are then the ones of the inflated bytes
+        private final boolean compressed;
+        private final BasicFileAttributes scanned;
+
+        /**
+         * @param file       the file, as it is now, before being scanned
+         * @param compressed whether the file is compressed
+         * @throws IOException if the file cannot be accessed
+         */
+        private UnchangedSource(File file, boolean compressed) throws IOException {
+            this(file, compressed, Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+        }
+
+        /**
+         * @param file       the file
+         * @param compressed whether the file is compressed
+         * @param scanned    the attributes of the file that was scanned, e.g. before it was moved to this path
+         */
+        private UnchangedSource(File file, boolean compressed, BasicFileAttributes scanned) {
+            this.file = file;
+            this.compressed = compressed;
+            this.scanned = scanned;
+        }
+
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            byte[] rows = new byte[length];
+
+            if (compressed) {
+                try (InputStream in = openCompressed(file)) {
+                    skipFully(in, offset);
+
+                    if (readFully(in, rows) < length)
+                        throw new EOFException("The compressed SaveFile ends before the level");
+                }
+            } else {
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                    randomAccessFile.seek(offset);
+                    randomAccessFile.readFully(rows);
+                }
+            }
+
+            // Checked after reading, the file may be replaced while it is read
+            checkUnchanged();
+
+            return rows;
+        }
+
+        /**
+         * @throws IOException if the file is not the one that was scanned anymore
+         */
+        private void checkUnchanged() throws IOException {
+            BasicFileAttributes now = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+
+            if (now.size() != scanned.size() || !now.lastModifiedTime().equals(scanned.lastModifiedTime())
+                    || scanned.fileKey() != null && !scanned.fileKey().equals(now.fileKey()))
+                throw new IOException("The map " + file.getName() + " has changed since it was opened");
+        }
+
+        /**
+         * Opens the file once for many reads at growing offsets, e.g. to copy all the levels of the map
+         *
+         * @return the reads, to be closed once done: closing fails if the file has changed meanwhile
+         */
+        private Batch batch() {
+            return new Batch();
+        }
+
+        /**
+         * @param path a file
+         * @return {@code true} if this source reads that file
+         */
+        private boolean reads(Path path) {
+            try {
+                return Files.isSameFile(file.toPath(), path);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Reads of an {@link UnchangedSource} from a single stream, the file is opened again only to go back
+         */
+        private final class Batch implements RowSource, Closeable {
+            private InputStream in;
+            private long position;
+
+            /**
+             * @return the source this batch reads
+             */
+            private UnchangedSource getSource() {
+                return UnchangedSource.this;
+            }
+
+            @Override
+            public byte[] read(long offset, int length) throws IOException {
+                if (in == null || offset < position) {
+                    if (in != null)
+                        in.close();
+
+                    in = compressed ? openCompressed(file) : new BufferedInputStream(Files.newInputStream(file.toPath()), 65536);
+                    position = 0;
+                }
+
+                byte[] rows = new byte[length];
+
+                skipFully(in, offset - position);
+
+                if (readFully(in, rows) < length)
+                    throw new EOFException("The SaveFile ends before the level");
+
+                position = offset + length;
+
+                return rows;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (in != null)
+                    in.close();
+
+                checkUnchanged();
+            }
+        }
+    }
+
+    /**
+     * Reads the lines of a SaveFile as bytes, keeping track of their offsets, without making a {@link String}
+     * of every line
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int bufferLength;
+        private int bufferPosition;
+        private byte[] line = new byte[256];
+        private int lineLength;
+        // Bounds of the line without the surrounding white space
+        private int start;
+        private int stop;
+        // Offsets in the SaveFile of the line and of the next one
+        private long offset;
+        private long next;
+
+        /**
+         * @param in     the SaveFile, or a part of it
+         * @param offset the offset of the first byte of {@code in} in the SaveFile
+         */
+        private LineReader(InputStream in, long offset) {
+            this.in = in;
+            this.next = offset;
+        }
+
+        /**
+         * Reads the next line
+         *
+         * @return {@code false} if the end of the file has been reached
+         * @throws IOException if the SaveFile cannot be read
+         */
+        private boolean next() throws IOException {
+            offset = next;
+            lineLength = 0;
+
+            boolean newLine = false;
+
+            while (!newLine) {
+                if (bufferPosition == bufferLength) {
+                    bufferLength = in.read(buffer);
+                    bufferPosition = 0;
+
+                    if (bufferLength <= 0) {
+                        bufferLength = 0;
+                        break;
+                    }
+                }
+
+                byte b = buffer[bufferPosition++];
+
+                if (b == '\n') {
+                    newLine = true;
+                } else {
+                    if (lineLength == line.length)
+                        line = Arrays.copyOf(line, line.length * 2);
+
+                    line[lineLength++] = b;
+                }
+            }
+
+            if (!newLine && lineLength == 0)
+                return false;
+
+            next = offset + lineLength + (newLine ? 1 : 0);
+
+            start = 0;
+            stop = lineLength;
+
+            while (start < stop && (line[start] & 0xFF) <= ' ')
+                start++;
+            while (stop > start && (line[stop - 1] & 0xFF) <= ' ')
+                stop--;
+
+            return true;
+        }
+
+        /**
+         * @return whether the line starts with a key made of letters and digits, followed by a colon
+         */
+        private boolean isKeyValue() {
+            int i = start;
+
+            while (i < stop && Character.isLetterOrDigit(line[i]) && line[i] > 0)
+                i++;
+
+            return i > start && i < stop && line[i] == ':';
+        }
+
+        /**
+         * @return whether the line is blank
+         */
+        private boolean isEmpty() {
+            return start == stop;
+        }
+
+        /**
+         * @return the length of the line, without the surrounding white space
+         */
+        private int length() {
+            return stop - start;
+        }
+
+        /**
+         * @param index the index in the line, without the surrounding white space
+         * @return the byte at the index, as an unsigned value
+         */
+        private int charAt(int index) {
+            return line[start + index] & 0xFF;
+        }
+
+        /**
+         * @return the offset of the line in the SaveFile
+         */
+        private long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the offset of the end of the line in the SaveFile
+         */
+        private long getEnd() {
+            return offset + lineLength;
+        }
+
+        /**
+         * @return the line, without the surrounding white space
+         */
+        @Override
+        public String toString() {
+            return new String(line, start, stop - start, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * An {@link InputStream} reading a part of a {@link ByteBuffer}, without changing its position
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        /**
+         * @param buffer the buffer, it is not modified
+         * @param start  the index of the first byte to read
+         * @param end    the index after the last byte to read
+         */
+        private ByteBufferInputStream(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer.duplicate();
+            this.buffer.position(start);
+            this.buffer.limit(end);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining())
+                return -1;
+
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+
+            return length;
+        }
+    }
+
+    /**
+     * The levels of a memory mapped SaveFile, see {@link #loadMappedMap(File)}.
+     * Levels are indexed when they are first requested, a level is complete once the next one has been found.
+     * The size does not index the levels: the ones not indexed yet are counted by their keys, with no other check.
+     */
+    private final class LazyLevels extends AbstractList<Level> {
+        // The key of a level, as bytes
+        private final byte[] levelKey = "LevelName:".getBytes(StandardCharsets.US_ASCII);
+        private final ByteBuffer buffer;
+        private final int end;
+        private final LineReader line;
+        private final List<Level> indexed = new ArrayList<>();
+        private boolean finished;
+        // The number of levels, -1 until counted
+        private int count = -1;
+
+        /**
+         * @param buffer the mapped SaveFile
+         * @param start  the offset of the line after the name of the map
+         * @param end    the end of the levels, before the level in progress if any
+         */
+        private LazyLevels(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.end = end;
+            this.line = new LineReader(new ByteBufferInputStream(buffer, start, end), start);
+        }
+
+        @Override
+        public synchronized Level get(int index) {
+            scan(index + 2);
+
+            return indexed.get(index);
+        }
+
+        @Override
+        public synchronized int size() {
+            if (finished)
+                return indexed.size();
+
+            if (count < 0)
+                count = indexed.size() + countLevels((int) line.next);
+
+            return count;
+        }
+
+        /**
+         * @param index a level index
+         * @return {@code true} if there is such a level, indexing the levels up to it
+         */
+        private synchronized boolean has(int index) {
+            scan(index + 1);
+
+            return index < indexed.size();
+        }
+
+        /**
+         * Counts the keys of the levels at the start of the lines, a byte at a time, making no object
+         *
+         * @param start the start of a line
+         * @return the number of keys from there to the end of the levels
+         */
+        private int countLevels(int start) {
+            int levels = 0;
+            boolean lineStart = true;
+
+            for (int i = start; i < end; i++) {
+                byte b = buffer.get(i);
+
+                if (b == '\n') {
+                    lineStart = true;
+                } else if (lineStart && (b & 0xFF) > ' ') {
+                    // Lines are trimmed, as by the LineReader
+                    lineStart = false;
+
+                    if (matches(i)) {
+                        levels++;
+                        i += levelKey.length - 1;
+                    }
+                }
+            }
+
+            return levels;
+        }
+
+        /**
+         * @param offset an offset in the buffer
+         * @return {@code true} if the key of a level starts there
+         */
+        private boolean matches(int offset) {
+            if (end - offset < levelKey.length)
+                return false;
+
+            for (int i = 0; i < levelKey.length; i++) {
+                if (buffer.get(offset + i) != levelKey[i])
+                    return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Indexes the levels up to a given number, or to the end of the file
+         *
+         * @param count the number of levels to find
+         * @throws IllegalStateException if a line is invalid
+         */
+        private void scan(int count) {
+            try {
+                while (!finished && indexed.size() < count) {
+                    if (line.next())
+                        scanLine(line, indexed);
+                    else
+                        finished = true;
+                }
+            } catch (MapLoaderException | IOException e) {
+                finished = true;
+
+                throw new IllegalStateException("Invalid map: " + e.getMessage(), e);
+            }
+        }
     }
-    //</editor-fold>
 
     /**
      * An {@link Exception} that is thrown when a loaded map is malformed
@@ -0,0 +1,394 @@
+package sokochan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The moves made in a game, with unlimited undo and redo.
+ * <p>
+ * Every move takes 3 bits (the {@link Direction} and whether a crate was pushed), packed 21 to a {@code long}.
+ * Making a move that differs from the one that would be redone does not discard the undone moves: a new branch is
+ * started, and the old one can still be chosen with {@link #switchBranch(int)}. The history is therefore a tree of
+ * branches, each one continuing its parent from the move it was started at.
+ */
+public final class MoveHistory {
+    // Bits of a move, and moves in a word
+    private static final int MOVE_BITS = 3;
+    private static final int MOVES_PER_WORD = Long.SIZE / MOVE_BITS;
+    private static final long MOVE_MASK = (1L << MOVE_BITS) - 1;
+    // Returned by undo() and redo() when there is nothing to undo or redo
+    public static final int NONE = -1;
+
+    // The first branch, starting from the initial state of the level
+    private final Branch root;
+    // The branch the last move is on, and the number of moves made from the start of the level
+    private Branch branch;
+    private int position;
+    // The moves undone since the history was created: the first moves are the same as a while ago, up to the
+    // position of then minus the moves undone since
+    private long undoneCount;
+
+    /**
+     * Creates an empty history
+     */
+    public MoveHistory() {
+        root = new Branch(null, 0);
+        branch = root;
+    }
+
+    /**
+     * Encodes a move in 3 bits
+     *
+     * @param direction where the keeper moved
+     * @param pushed    whether a crate was pushed
+     * @return the encoded move
+     */
+    public static int encode(Direction direction, boolean pushed) {
+        return direction.ordinal() << 1 | (pushed ? 1 : 0);
+    }
+
+    /**
+     * @param move an encoded move, see {@link #encode(Direction, boolean)}
+     * @return where the keeper moved
+     */
+    public static Direction getDirection(int move) {
+        return Direction.VALUES[move >>> 1];
+    }
+
+    /**
+     * @param move an encoded move, see {@link #encode(Direction, boolean)}
+     * @return whether a crate was pushed
+     */
+    public static boolean isPush(int move) {
+        return (move & 1) != 0;
+    }
+
+    /**
+     * Records a move. If it is the move that would be redone the current branch is followed, otherwise the moves
+     * that could be redone are kept in their own branch and a new one is started.
+     *
+     * @param move an encoded move, see {@link #encode(Direction, boolean)}
+     */
+    public void push(int move) {
+        // A branch starting here with the same move, the current branch is tried first
+        if (position < branch.end() && branch.get(position) == move) {
+            if (branch.selected != null && branch.selected.start == position)
+                branch.selected = null;
+        } else {
+            Branch next = null;
+
+            for (Branch child : branch.children) {
+                if (child.start == position && child.get(position) == move) {
+                    next = child;
+                    break;
+                }
+            }
+
+            if (next == null) {
+                if (position == branch.end()) {
+                    branch.append(move);
+                } else {
+                    next = new Branch(branch, position);
+                    next.append(move);
+                    branch.children.add(next);
+                }
+            }
+
+            if (next != null) {
+                branch.selected = next;
+                branch = next;
+            }
+        }
+
+        position++;
+    }
+
+    /**
+     * Steps back one move
+     *
+     * @return the move undone, {@link #NONE} if at the start of the level
+     */
+    public int undo() {
+        if (position == 0)
+            return NONE;
+
+        final int move = branch.get(--position);
+        undoneCount++;
+
+        // Leaves a branch once its first move is undone, the parent will redo into it
+        if (position == branch.start && branch.parent != null) {
+            branch.parent.selected = branch;
+            branch = branch.parent;
+        }
+
+        return move;
+    }
+
+    /**
+     * Gives the move {@link #redo()} would make, without making it
+     *
+     * @return the next move of the current line, {@link #NONE} if there is nothing to redo
+     */
+    public int peek() {
+        Branch next = branch.selected != null && branch.selected.start == position ? branch.selected : null;
+
+        if (next == null && position == branch.end())
+            next = branch.getChildAt(position);
+
+        if (next != null)
+            return next.get(position);
+
+        return position == branch.end() ? NONE : branch.get(position);
+    }
+
+    /**
+     * Steps forward one move, on the selected branch
+     *
+     * @return the move to be made again, {@link #NONE} if there is nothing to redo
+     */
+    public int redo() {
+        Branch next = branch.selected != null && branch.selected.start == position ? branch.selected : null;
+
+        if (next == null && position == branch.end())
+            next = branch.getChildAt(position);
+
+        if (next != null)
+            branch = next;
+        else if (position == branch.end())
+            return NONE;
+
+        return branch.get(position++);
+    }
+
+    /**
+     * Moves to any position of the current line, undoing or redoing the moves in between.
+     * Only the history is moved, the caller has to replay the moves on the game.
+     *
+     * @param target the number of moves from the start of the level, from 0 to {@link #getLineLength()}
+     * @throws IndexOutOfBoundsException if the line has not so many moves
+     */
+    public void seek(int target) {
+        if (target < 0 || target > getLineLength())
+            throw new IndexOutOfBoundsException("Move " + target + " of " + getLineLength());
+
+        while (position > target)
+            undo();
+
+        while (position < target)
+            redo();
+    }
+
+    /**
+     * Gives the length of the current line: the moves made, followed by the ones {@link #redo()} would make
+     *
+     * @return the number of moves from the start of the level to the end of the line
+     */
+    public int getLineLength() {
+        Branch b = branch;
+        int p = position;
+
+        while (true) {
+            if (b.selected != null && b.selected.start >= p) {
+                p = b.selected.start;
+                b = b.selected;
+            } else {
+                p = b.end();
+                b = b.getChildAt(p);
+
+                if (b == null)
+                    return p;
+            }
+        }
+    }
+
+    /**
+     * Gives the moves that can be redone from the current position, one per branch.
+     *
+     * @return the number of alternative moves to redo, 0 if there is nothing to redo
+     */
+    public int getRedoBranchesCount() {
+        int count = position < branch.end() ? 1 : 0;
+
+        for (Branch child : branch.children) {
+            if (child.start == position)
+                count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Chooses which of the branches starting at the current position {@link #redo()} follows.
+     * Branches are numbered in the order they were created, starting from the current one.
+     *
+     * @param index the branch, from 0 to {@link #getRedoBranchesCount()} - 1
+     * @throws IndexOutOfBoundsException if there is no such branch
+     */
+    public void switchBranch(int index) {
+        int i = 0;
+
+        if (position < branch.end()) {
+            if (index == 0) {
+                branch.selected = null;
+                return;
+            }
+
+            i++;
+        }
+
+        for (Branch child : branch.children) {
+            if (child.start == position && i++ == index) {
+                branch.selected = child;
+                return;
+            }
+        }
+
+        throw new IndexOutOfBoundsException("No branch " + index + " at move " + position);
+    }
+
+    /**
+     * Gives the moves from the start of the level to the current position, with no branches
+     *
+     * @return a new history, positioned at its end
+     */
+    public MoveHistory copyPath() {
+        MoveHistory copy = new MoveHistory();
+
+        for (int i = 0; i < position; i++)
+            copy.root.append(get(i));
+
+        copy.position = position;
+
+        return copy;
+    }
+
+    /**
+     * Gives a move made before the current position
+     *
+     * @param index the move, from 0 to {@link #size()} - 1
+     * @return the encoded move
+     * @throws IndexOutOfBoundsException if the move was not made
+     */
+    public int get(int index) {
+        if (index < 0 || index >= position)
+            throw new IndexOutOfBoundsException("Move " + index + " of " + position);
+
+        Branch b = branch;
+
+        while (index < b.start)
+            b = b.parent;
+
+        return b.get(index);
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the number of moves that can be undone
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * @return the number of moves undone since the history was created, including the ones undone by
+     * {@link #seek(int)}
+     */
+    public long getUndoneCount() {
+        return undoneCount;
+    }
+
+    /**
+     * @return {@code true} if there is nothing to undo
+     */
+    public boolean isEmpty() {
+        return position == 0;
+    }
+
+    /**
+     * @return the bytes used by the packed moves of all the branches
+     */
+    public long getMemory() {
+        return root.getMemory();
+    }
+    //</editor-fold>
+
+    /**
+     * A sequence of moves continuing the moves of its parent, from the move it was started at
+     */
+    private static final class Branch {
+        private final Branch parent;
+        // The number of moves from the start of the level where the branch starts
+        private final int start;
+        private final List<Branch> children = new ArrayList<>(0);
+        private long[] moves = new long[1];
+        private int length;
+        // The child that redo goes into, when it starts at the position of the history
+        private Branch selected;
+
+        /**
+         * @param parent the branch continued, {@code null} for the first one
+         * @param start  the number of moves from the start of the level where the branch starts
+         */
+        private Branch(Branch parent, int start) {
+            this.parent = parent;
+            this.start = start;
+        }
+
+        /**
+         * @return the number of moves from the start of the level where the branch ends
+         */
+        private int end() {
+            return start + length;
+        }
+
+        /**
+         * @param position the number of moves from the start of the level, from {@link #start} to {@link #end()} - 1
+         * @return the encoded move
+         */
+        private int get(int position) {
+            int i = position - start;
+
+            return (int) (moves[i / MOVES_PER_WORD] >>> (i % MOVES_PER_WORD * MOVE_BITS) & MOVE_MASK);
+        }
+
+        /**
+         * @param move an encoded move, added at the end of the branch
+         */
+        private void append(int move) {
+            int word = length / MOVES_PER_WORD;
+
+            if (word == moves.length)
+                moves = Arrays.copyOf(moves, moves.length * 2);
+
+            moves[word] |= (long) move << (length % MOVES_PER_WORD * MOVE_BITS);
+            length++;
+        }
+
+        /**
+         * @param position the number of moves from the start of the level
+         * @return the first branch starting there, {@code null} if there is none
+         */
+        private Branch getChildAt(int position) {
+            for (Branch child : children) {
+                if (child.start == position)
+                    return child;
+            }
+
+            return null;
+        }
+
+        /**
+         * @return the bytes used by the packed moves of the branch and of its children
+         */
+        private long getMemory() {
+            long memory = (long) moves.length * Long.BYTES;
+
+            for (Branch child : children)
+                memory += child.getMemory();
+
+            return memory;
+        }
+    }
+}
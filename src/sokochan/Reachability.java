@@ -0,0 +1,131 @@
+package sokochan;
+
+import java.util.Arrays;
+
+/**
+ * The cells the warehouse keeper can walk to without pushing any crate, found with a breadth first flood fill.
+ * <p>
+ * The fill reuses its arrays: the queue is allocated once, as large as the board, and cells are marked with the
+ * number of the fill that reached them, so nothing needs to be cleared before a new fill and nothing is allocated.
+ * The smallest reachable cell, i.e. the top-left-most one, identifies the area of the keeper, so it is used as its
+ * normalised position: two states with the same crates and the keeper in the same area are the same push state.
+ * <p>
+ * An instance is not thread safe, every thread needs its own.
+ */
+public final class Reachability {
+    private final Board board;
+    private final int[] offsets = new int[Direction.VALUES.length];
+    // Reached cells, in order of distance
+    private final int[] queue;
+    private final int[] generations;
+    private final int[] distances;
+    private int generation;
+    private int reachedCount;
+    private int normalized = -1;
+
+    /**
+     * @param board the board to fill
+     */
+    public Reachability(Board board) {
+        this.board = board;
+        this.queue = new int[board.getCellsCount()];
+        this.generations = new int[board.getCellsCount()];
+        this.distances = new int[board.getCellsCount()];
+
+        for (Direction direction : Direction.VALUES)
+            offsets[direction.ordinal()] = board.getOffset(direction);
+    }
+
+    /**
+     * Fills the cells reachable without pushing
+     *
+     * @param crates the bitset of the crates
+     * @param from   the cell of the keeper
+     * @return the normalised position of the keeper, the smallest reachable cell index
+     */
+    public int fill(long[] crates, int from) {
+        if (++generation == 0) { // Wrapped around, old marks could be mistaken for new ones
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+        int min = from;
+
+        generations[from] = generation;
+        distances[from] = 0;
+        queue[tail++] = from;
+
+        while (head < tail) {
+            int cell = queue[head++];
+
+            if (cell < min)
+                min = cell;
+
+            for (int offset : offsets) {
+                int next = cell + offset;
+
+                if (generations[next] == generation || board.isWall(next) || Board.isSet(crates, next))
+                    continue;
+
+                generations[next] = generation;
+                distances[next] = distances[cell] + 1;
+                queue[tail++] = next;
+            }
+        }
+
+        reachedCount = tail;
+        normalized = min;
+
+        return min;
+    }
+
+    /**
+     * @param cell the cell index
+     * @return {@code true} if the last fill reached the cell
+     */
+    public boolean isReachable(int cell) {
+        return generations[cell] == generation;
+    }
+
+    /**
+     * @param cell a reachable cell
+     * @return the number of steps needed to walk to the cell
+     */
+    public int getDistance(int cell) {
+        return distances[cell];
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the normalised position of the keeper in the last fill, -1 before the first fill
+     */
+    public int getNormalized() {
+        return normalized;
+    }
+
+    /**
+     * @return the number of cells reached by the last fill
+     */
+    public int getReachedCount() {
+        return reachedCount;
+    }
+
+    /**
+     * @param i the index of the cell, between 0 and {@link #getReachedCount()}
+     * @return a cell reached by the last fill, cells are in order of distance
+     */
+    public int getReachedCell(int i) {
+        return queue[i];
+    }
+
+    /**
+     * @return the board being filled
+     */
+    public Board getBoard() {
+        return board;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,439 @@
+package sokochan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saves the progress of a game by appending the moves to a journal next to the map, instead of rewriting the map.
+ * The map is never touched: reopening it and calling {@link #restore()} replays the journal.
+ * <p>
+ * The journal is a text file, named as the map followed by {@value #EXTENSION}. The first line identifies the map
+ * (its path, size and last modification, see {@link MapLoader#identify(File)}), every other line is a record:
+ * <ul>
+ * <li>{@code L n} the level {@code n} was loaded from the start</li>
+ * <li>{@code M lurd} moves were made, see {@link Lurd}</li>
+ * <li>{@code U n} {@code n} moves were undone</li>
+ * </ul>
+ * The moves before the first {@code L} are made on the state the map opens in, the level in progress of a
+ * SaveFile. Each {@link #save()} appends the records since the previous one, a few bytes after a move. The moves
+ * that were already saved into the map cannot be undone by the journal: it waits for them to be made again, or for
+ * another level to be loaded. A record
+ * is only valid once its line is complete, so a save cut short loses at most the moves it was writing.
+ * <p>
+ * A save can be split in two, so that the game never waits for the disk: {@link #record()} on the thread that plays
+ * the game gathers the records, {@link #flush()} writes them from any other thread.
+ * When the journal grows {@value #COMPACTION_FACTOR} times larger than the moves it leads to, it is rewritten with
+ * the current line of moves only. Branches of the history are not journaled.
+ */
+public final class SaveJournal {
+    public static final String EXTENSION = ".journal";
+    // The journal is compacted once it is this many times the size of its compacted form, and at least MIN_COMPACTION
+    public static final int COMPACTION_FACTOR = 4;
+    private static final int MIN_COMPACTION = 4096;
+    private static final String HEADER = "SokochanJournal 2";
+
+    private final File file;
+    private final File map;
+    private final SokochanEngine engine;
+    // The first line, tying the journal to the map as it is when the journal is first written
+    private String header;
+    // The history of the state the map opens in, before any level is loaded
+    private final MoveHistory openingHistory;
+    // The moves of the opening history that are already in the map
+    private int base;
+
+    // What the journal leads to: the level, the history it was read from and its moves
+    private int levelIndex;
+    private MoveHistory history;
+    private int[] moves = new int[64];
+    private int movesCount;
+    // The size of the history at the last update and the moves undone in it until then, and how many of the moves
+    // were the same as in the history at that time
+    private int updatedSize;
+    private long undoneCount;
+    private int matching;
+    // The records gathered since the last flush, not written yet
+    private final StringBuilder pending = new StringBuilder();
+    // Held while the file is written, the state of the journal is only locked to gather what to write
+    private final Object writing = new Object();
+    // Whether the journal exists and starts with the header
+    private boolean started;
+    private long length;
+    private int recordsCount;
+
+    /**
+     * Ties a journal to a game, as it is in the map: either just opened, or just saved into the map.
+     * The map is identified when the journal is first written, so the journal of a game being saved in the
+     * background can be made before the map is written.
+     *
+     * @param map    the map file the game was loaded from, or saved to
+     * @param engine the game, in the state saved in the map
+     */
+    public SaveJournal(File map, SokochanEngine engine) {
+        this.file = new File(map.getPath() + EXTENSION);
+        this.map = map;
+        this.engine = engine;
+        this.openingHistory = engine.getHistory();
+        this.levelIndex = engine.getLevelIndex();
+        this.history = openingHistory;
+
+        copyMoves(openingHistory, 0);
+        this.base = movesCount;
+        this.updatedSize = movesCount;
+        this.undoneCount = openingHistory.getUndoneCount();
+        this.matching = movesCount;
+    }
+
+    /**
+     * @return the first line of the journal, for the map as it is now
+     * @throws IOException if the map cannot be accessed
+     */
+    private String getMapHeader() throws IOException {
+        return HEADER + " " + MapLoader.identify(map);
+    }
+
+    /**
+     * Replays the journal on the game, if there is one for the map as it is now. The next {@link #flush()} rewrites
+     * it compacted. It must be called before any move is made on the game.
+     *
+     * @return {@code true} if the journal was replayed, {@code false} if there is none or it is for another map
+     * @throws IOException if the journal cannot be read or written
+     */
+    public synchronized boolean restore() throws IOException {
+        String text;
+
+        try {
+            text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        // The last line is only complete if followed by a new line
+        List<String> lines = Arrays.asList(text.substring(0, text.lastIndexOf('\n') + 1).split("\n"));
+
+        if (lines.isEmpty() || !lines.get(0).equals(getMapHeader()))
+            return false;
+
+        for (String line : lines.subList(1, lines.size())) {
+            if (!replay(line))
+                break;
+        }
+
+        // The moves replayed are known to the journal, the file is rewritten by the first flush
+        update();
+
+        return true;
+    }
+
+    /**
+     * Replays a record on the game
+     *
+     * @param line the record
+     * @return {@code false} if the record is not valid, or it does not fit the game
+     */
+    private boolean replay(String line) {
+        if (line.length() < 2 || line.charAt(1) != ' ')
+            return false;
+
+        String value = line.substring(2);
+
+        try {
+            switch (line.charAt(0)) {
+                case 'L':
+                    engine.loadLevel(Integer.parseInt(value));
+                    return true;
+                case 'M':
+                    return engine.applyMoves(value).isFullyApplied();
+                case 'U':
+                    int n = Integer.parseInt(value);
+
+                    if (n > engine.getHistoryElementsCount())
+                        return false;
+
+                    for (; n > 0; n--)
+                        engine.undo();
+
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Appends to the journal the moves made and undone since the last save, and the levels loaded, see
+     * {@link #record()} and {@link #flush()}
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void save() throws IOException {
+        record();
+        flush();
+    }
+
+    /**
+     * Gathers the moves made and undone since the last record, and the levels loaded, without writing them.
+     * It must be called on the thread that plays the game, it never touches the disk.
+     */
+    public synchronized void record() {
+        pending.append(update());
+    }
+
+    /**
+     * Writes the records gathered and not written yet. The first flush, and the ones after the journal has grown
+     * too much, rewrite it, see {@link #compact()}. It can be called on any thread, {@link #record()} is not blocked
+     * while the file is written.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void flush() throws IOException {
+        write(false);
+    }
+
+    /**
+     * Rewrites the journal with the current line of moves only. The new journal is written aside and then moved
+     * over the old one, so a failure leaves the old one in place.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void compact() throws IOException {
+        record();
+        write(true);
+    }
+
+    /**
+     * Brings the moves known to the journal up to date with the game
+     *
+     * @return the records of the changes
+     */
+    private String update() {
+        StringBuilder records = new StringBuilder();
+        MoveHistory current = engine.getHistory();
+
+        // Loading a level starts a new history
+        if (current != history || engine.getLevelIndex() != levelIndex) {
+            records.append("L ").append(engine.getLevelIndex()).append('\n');
+            recordsCount++;
+
+            levelIndex = engine.getLevelIndex();
+            history = current;
+            movesCount = 0;
+            base = 0;
+            updatedSize = 0;
+            undoneCount = current.getUndoneCount();
+            matching = 0;
+        }
+
+        int size = current.size();
+        // The moves before the ones undone since the last update have not changed, the history is not walked
+        long undone = current.getUndoneCount() - undoneCount;
+        int common = (int) Math.max(0, Math.min(Math.min(matching, size), updatedSize - undone));
+
+        // The moves saved in the map cannot be undone, they are compared until they are made again
+        while (common < base && common < size && moves[common] == current.get(common))
+            common++;
+
+        updatedSize = size;
+        undoneCount = current.getUndoneCount();
+
+        if (common < base) {
+            matching = common;
+            return records.toString();
+        }
+
+        if (common < movesCount) {
+            records.append("U ").append(movesCount - common).append('\n');
+            recordsCount++;
+        }
+
+        if (size > common) {
+            records.append("M ");
+
+            for (int i = common; i < size; i++)
+                records.append(Lurd.toChar(current.get(i)));
+
+            records.append('\n');
+            recordsCount++;
+        }
+
+        copyMoves(current, common);
+        matching = movesCount;
+
+        return records.toString();
+    }
+
+    /**
+     * Writes the records gathered, appending them or rewriting the journal
+     *
+     * @param compacting {@code true} to rewrite the journal even if the records could be appended
+     * @throws IOException if the journal cannot be written
+     */
+    private void write(boolean compacting) throws IOException {
+        synchronized (writing) {
+            byte[] bytes;
+            boolean rewriting;
+
+            synchronized (this) {
+                if (started && !compacting && pending.length() == 0)
+                    return;
+
+                bytes = pending.toString().getBytes(StandardCharsets.UTF_8);
+                pending.setLength(0);
+
+                long appended = length + bytes.length;
+                rewriting = !started || compacting
+                        || appended > MIN_COMPACTION && appended > (long) getCompactedLength() * COMPACTION_FACTOR;
+
+                if (rewriting)
+                    bytes = getCompacted();
+            }
+
+            try {
+                if (rewriting)
+                    replace(bytes);
+                else
+                    Files.write(file.toPath(), bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                // The records are lost, the next write rewrites the journal from the moves known to it
+                synchronized (this) {
+                    started = false;
+                }
+
+                throw e;
+            }
+
+            synchronized (this) {
+                started = true;
+                length = rewriting ? bytes.length : length + bytes.length;
+            }
+        }
+    }
+
+    /**
+     * Gives the journal from scratch, with the moves known to it
+     *
+     * @return the bytes of the compacted journal
+     * @throws IOException if the map cannot be identified, for the header
+     */
+    private byte[] getCompacted() throws IOException {
+        if (header == null)
+            header = getMapHeader();
+
+        StringBuilder builder = new StringBuilder(getCompactedLength());
+
+        builder.append(header).append('\n');
+        recordsCount = 0;
+
+        if (history != openingHistory) {
+            builder.append("L ").append(levelIndex).append('\n');
+            recordsCount++;
+        }
+
+        if (movesCount > base) {
+            builder.append("M ");
+
+            for (int i = base; i < movesCount; i++)
+                builder.append(Lurd.toChar(moves[i]));
+
+            builder.append('\n');
+            recordsCount++;
+        }
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replaces the journal, writing the new one aside and then moving it over the old one
+     *
+     * @param bytes the new journal
+     * @throws IOException if the journal cannot be written
+     */
+    private void replace(byte[] bytes) throws IOException {
+        Path target = file.toPath();
+        Path temporary = target.resolveSibling(file.getName() + ".tmp");
+
+        Files.write(temporary, bytes);
+
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the journal, e.g. once the whole game has been saved into a SaveFile
+     *
+     * @throws IOException if the journal cannot be deleted
+     */
+    public void delete() throws IOException {
+        synchronized (writing) {
+            Files.deleteIfExists(file.toPath());
+
+            synchronized (this) {
+                started = false;
+                length = 0;
+                recordsCount = 0;
+                pending.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Copies the moves of the history that are not known yet
+     *
+     * @param current the history
+     * @param from    the number of moves already known
+     */
+    private void copyMoves(MoveHistory current, int from) {
+        movesCount = current.size();
+
+        if (moves.length < movesCount)
+            moves = Arrays.copyOf(moves, Math.max(moves.length * 2, movesCount));
+
+        for (int i = from; i < movesCount; i++)
+            moves[i] = current.get(i);
+    }
+
+    /**
+     * @return the bytes of the journal once compacted, about one per move
+     */
+    private int getCompactedLength() {
+        return (header != null ? header.length() : 0) + movesCount + 32;
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the bytes written to the journal since it was last compacted, header included
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the records in the journal
+     */
+    public synchronized int getRecordsCount() {
+        return recordsCount;
+    }
+    //</editor-fold>
+}
@@ -8,8 +8,9 @@ import sun.plugin.dom.exception.InvalidStateException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * This class organises all the other core classes of the Sokoban engine.
@@ -19,25 +20,40 @@ import java.util.Stack;
  * Created by Vittorio on 05-Oct-16.
  */
 public final class SokochanEngine {
-    @SuppressWarnings("FieldCanBeLocal")
-    // Max number of possible un-dos to be stored
-    private final int MAX_UNDO = 64;
-    // The grid for the game, will be initialised when a level is loaded
+    // Number of moves between two checkpoints of the state, see seek(int)
+    public static final int CHECKPOINT_INTERVAL = 64;
+    // Number of changed cells of the grid remembered between two calls to pollChangedCells(), a few moves
+    private static final int CHANGED_CELLS_LIMIT = 24;
+    // Whether the grid of objects is built as soon as a level is loaded, or only when requested
+    private final boolean gridView;
+    // The compact state of the game, every move is applied to it
+    private BoardState boardState;
+    // The grid for the game, a view of the board state. Will be initialised when a level is loaded or when requested
     private SokochanGrid sokochanGrid;
-    // An instance of the warehouse keeper stored somewhere in the grid when the game is loaded
+    // An instance of the warehouse keeper stored somewhere in the grid when the grid is built
     private WarehouseKeeper warehouseKeeper;
+    // The cells of the grid changed since the last call to pollChangedCells(), a count of -1 if they are not known
+    private final int[] changedCells = new int[CHANGED_CELLS_LIMIT];
+    private int changedCount = -1;
+    // Whether pushes onto dead squares are refused
+    private boolean refusingDeadSquarePushes;
+    // The number of moves after which a freeze deadlock appeared, -1 if there is none
+    private int frozenAtMove;
     // Stats
-    private int cratesCount;
-    //private int cratesInCornerCount;
-    private int cratesOnDiamondCount;
     private int movesCount;
     private int pushesCount;
     // Level Info
     private List<MapLoader.Level> levels;
     private int levelIndex;
     // History
-    private HistoryStack historyStack;
+    private MoveHistory history;
+    // The state every CHECKPOINT_INTERVAL moves of the current line of the history, starting from the initial state
+    private List<Checkpoint> checkpoints;
     private String mapName;
+    // The map the levels were loaded from, the key of their templates in the cache
+    private String mapIdentity;
+    // The parsed levels, loading a level again only copies its initial state
+    private LevelCache levelCache = LevelCache.getShared();
 
     /**
      * Loads the default map, as defined in the {@link MapLoader} class
@@ -46,6 +62,19 @@ public final class SokochanEngine {
      * @throws MapLoader.MapLoaderException if the map is invalid
      */
     public SokochanEngine() throws MapLoader.MapLoaderException, IOException {
+        this(true);
+    }
+
+    /**
+     * Loads the default map, as defined in the {@link MapLoader} class
+     *
+     * @param gridView {@code false} if the {@link SokochanGrid} should be built only when {@link #getSokochanGrid()} is called
+     * @throws IOException                  if the file cannot be loaded
+     * @throws MapLoader.MapLoaderException if the map is invalid
+     */
+    public SokochanEngine(boolean gridView) throws MapLoader.MapLoaderException, IOException {
+        this.gridView = gridView;
+
         MapLoader loader = new MapLoader();
 
         // Loads the default map
@@ -62,26 +91,96 @@ public final class SokochanEngine {
      * @throws sokochan.MapLoader.MapLoaderException in case it is not a valid map
      */
     public SokochanEngine(File file) throws IOException, MapLoader.MapLoaderException {
+        this(file, true);
+    }
+
+    /**
+     * Loads a user defined map file. Headless users can skip building the {@link SokochanGrid},
+     * as all the moves are made on the {@link BoardState}.
+     *
+     * @param file     the .skb file containing the map
+     * @param gridView {@code false} if the {@link SokochanGrid} should be built only when {@link #getSokochanGrid()} is called
+     * @throws IOException                           in case the file is not reachable
+     * @throws sokochan.MapLoader.MapLoaderException in case it is not a valid map
+     */
+    public SokochanEngine(File file, boolean gridView) throws IOException, MapLoader.MapLoaderException {
+        this(file, gridView, false);
+    }
+
+    /**
+     * Loads a user defined map file, optionally mapping it in memory. A mapped file is indexed as its levels are
+     * requested, so a large collection opens at once and a level is reached without reading the ones after it.
+     * Malformed levels of a mapped file are only found when reached, see {@link #getLevel(int)}.
+     *
+     * @param file         the .skb file containing the map
+     * @param gridView     {@code false} if the {@link SokochanGrid} should be built only when {@link #getSokochanGrid()} is called
+     * @param memoryMapped {@code true} to map the file in memory instead of scanning it
+     * @throws IOException                           in case the file is not reachable
+     * @throws sokochan.MapLoader.MapLoaderException in case it is not a valid map
+     */
+    public SokochanEngine(File file, boolean gridView, boolean memoryMapped) throws IOException, MapLoader.MapLoaderException {
+        this.gridView = gridView;
+
         MapLoader loader = new MapLoader();
 
-        loader.loadMap(file);
+        if (memoryMapped)
+            loader.loadMappedMap(file);
+        else
+            loader.loadMap(file);
 
         loadGame(loader);
     }
 
-//    /**
-//     * @return the number of crates stuck in the corner
-//     */
-//    // TODO actually use this thing
-//    public int getCratesInCornerCount() {
-//        return cratesInCornerCount;
-//    }
+    /**
+     * @return the number of crates pushed onto a dead square, i.e. a square from which they can never reach a diamond
+     */
+    public int getCratesOnDeadSquareCount() {
+        return boardState.getCratesOnDeadSquareCount();
+    }
+
+    /**
+     * Tells whether the player can walk to a cell without pushing any crate
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return {@code true} if the cell is reachable
+     */
+    public boolean isReachable(int x, int y) {
+        return boardState.getReachability().isReachable(boardState.getBoard().index(x, y));
+    }
+
+    /**
+     * Tells whether the level can no longer be completed, because a crate is on a dead square or frozen away from a diamond.
+     * The state is kept updated on every push and undo, so calling this method is cheap.
+     *
+     * @return {@code true} if the level cannot be completed without undoing
+     */
+    public boolean isDeadlocked() {
+        return frozenAtMove >= 0 || boardState.getCratesOnDeadSquareCount() > 0;
+    }
 
     /**
      * @return the number of crates placed in the final position
      */
     public int getCratesOnDiamondCount() {
-        return cratesOnDiamondCount;
+        return boardState.getCratesOnDiamondCount();
+    }
+
+    /**
+     * Copies the state of another engine, see {@link #fork()}
+     *
+     * @param engine the engine to fork
+     */
+    private SokochanEngine(SokochanEngine engine) {
+        this.gridView = false;
+        this.levels = engine.levels;
+        this.mapName = engine.mapName;
+        this.mapIdentity = engine.mapIdentity;
+        this.refusingDeadSquarePushes = engine.refusingDeadSquarePushes;
+        this.levelCache = engine.levelCache;
+        this.boardState = engine.boardState;
+
+        restore(engine.snapshot());
     }
 
     /**
@@ -98,11 +197,12 @@ public final class SokochanEngine {
 
         levels = loader.getLevels();
         mapName = loader.getName();
+        mapIdentity = loader.getIdentity();
 
         // If there is a level in progress in the save game loads it
         if (loader.getInProgressLevel() != null) {
             this.levelIndex = loader.getInProgressLevelIndex();
-            loadLevel(loader.getInProgressLevel());
+            loadLevel(loader.getInProgressLevel(), -1);
         } else {
             loadLevel(0);
         }
@@ -117,75 +217,144 @@ public final class SokochanEngine {
     public void loadLevel(int levelIndex) {
         this.levelIndex = levelIndex;
 
-        loadLevel(levels.get(levelIndex));
+        loadLevel(levels.get(levelIndex), levelIndex);
     }
 
     /**
-     * Loads a level given a {@link sokochan.MapLoader.Level} object
+     * Loads a level given a {@link sokochan.MapLoader.Level} object.
+     * The level is parsed once, see {@link LevelCache}. Loading the level being played again, as when resetting it,
+     * keeps the objects of the {@link SokochanGrid} and only moves the crates and the keeper back.
      *
      * @param level a correctly loaded {@link sokochan.MapLoader.Level} to be loaded
+     * @param index the index of the level in the map, -1 for the level in progress of a SaveFile, which is not cached
      */
-    private void loadLevel(MapLoader.Level level) {
+    private void loadLevel(MapLoader.Level level, int index) {
         // Reset Stats
         this.movesCount = 0;
         this.pushesCount = 0;
-        this.cratesCount = 0;
-        //this.cratesInCornerCount = 0;
-        this.cratesOnDiamondCount = 0;
-        this.historyStack = new HistoryStack();
+        this.history = new MoveHistory();
 
-        sokochanGrid = new SokochanGrid(level.getX(), level.getY());
+        LevelCache.Template template = index < 0 ? LevelCache.parse(level) : levelCache.get(mapIdentity, index, level);
+        boolean sameBoard = boardState != null && boardState.getBoard() == template.getBoard();
 
-        MapLoader.Level.MapIterator i = level.iterator();
+        boardState = template.newState();
+        // A full scan only when parsing, every push after that checks the pushed crate only
+        frozenAtMove = template.isFrozen() ? 0 : -1;
 
-        while (i.hasNext()) {
-            char c = i.next();
+        checkpoints = new ArrayList<>();
+        checkpoints.add(new Checkpoint(this));
 
-            Letters letter = Letters.valueOf(c);
+        if (sameBoard && warehouseKeeper != null) {
+            syncSokochanGrid();
+            return;
+        }
 
-            if (letter == null) {
-                // TODO throw a more accurate exception
-                throw new RuntimeException("Invalid letter '" + c + "' provided.");
-            }
+        sokochanGrid = null;
+        warehouseKeeper = null;
 
-            switch (letter) {
-                case WALL:
-                    new Wall(sokochanGrid, i.getPosition());
-                    break;
-                case CRATE:
-                    new Crate(sokochanGrid, i.getPosition());
-                    cratesCount++;
-                    break;
-                case WAREHOUSE_KEEPER:
-                    warehouseKeeper = new WarehouseKeeper(sokochanGrid, i.getPosition());
-                    break;
-                case DIAMOND:
-                    new Diamond(sokochanGrid, i.getPosition());
-                    break;
-                case CRATE_ON_DIAMOND: // Crate on  Diamond
-                    new Diamond(sokochanGrid, i.getPosition());
-                    if (new Crate(sokochanGrid, i.getPosition()).isOnDiamond())
-                        cratesOnDiamondCount++;
-                    cratesCount++;
-                    break;
-                case WAREHOUSE_KEEPER_ON_DIAMOND: // WarehouseKeeper on Diamond
-                    new Diamond(sokochanGrid, i.getPosition());
-                    warehouseKeeper = new WarehouseKeeper(sokochanGrid, i.getPosition());
+        if (gridView)
+            buildSokochanGrid();
+    }
+
+    /**
+     * Builds the {@link SokochanGrid} of objects from the current {@link BoardState}.
+     * From now on every move will be applied to both.
+     */
+    private void buildSokochanGrid() {
+        Board board = boardState.getBoard();
+
+        changedCount = -1;
+        sokochanGrid = new SokochanGrid(board.X_SIZE, board.Y_SIZE);
+
+        for (int y = 0; y < board.Y_SIZE; y++) {
+            for (int x = 0; x < board.X_SIZE; x++) {
+                int cell = board.index(x, y);
+
+                if (board.isWall(cell))
+                    new Wall(sokochanGrid, x, y);
+                else if (board.isDiamond(cell))
+                    new Diamond(sokochanGrid, x, y);
+
+                if (boardState.hasCrate(cell))
+                    new Crate(sokochanGrid, x, y);
+                else if (cell == boardState.getWarehouseKeeper())
+                    warehouseKeeper = new WarehouseKeeper(sokochanGrid, x, y);
             }
+        }
+    }
 
+    /**
+     * Moves the objects of an existing {@link SokochanGrid} to match the current {@link BoardState}.
+     * Walls and diamonds never change, so only the {@link Crate}s that are out of place and the
+     * {@link WarehouseKeeper} are moved, the objects are reused.
+     */
+    private void syncSokochanGrid() {
+        Board board = boardState.getBoard();
+
+        changedCount = -1;
+
+        // Crates not on a crate of the state, and cells of the state with no crate on them
+        Crate[] misplaced = new Crate[boardState.getCratesCount()];
+        int[] targets = new int[boardState.getCratesCount()];
+        int misplacedCount = 0;
+        int targetsCount = 0;
+
+        for (int y = 0; y < board.Y_SIZE; y++) {
+            for (int x = 0; x < board.X_SIZE; x++) {
+                int cell = sokochanGrid.index(x, y);
+                boolean crateObject = sokochanGrid.getGridObject(cell) instanceof Crate;
+                boolean crateState = boardState.hasCrate(board.index(x, y));
+
+                if (crateObject && !crateState)
+                    misplaced[misplacedCount++] = (Crate) sokochanGrid.getGridObject(cell);
+                else if (crateState && !crateObject)
+                    targets[targetsCount++] = cell;
+            }
         }
+
+        for (int i = 0; i < misplacedCount; i++)
+            misplaced[i].moveTo(targets[i]);
+
+        int keeper = boardState.getWarehouseKeeper();
+
+        warehouseKeeper.moveTo(sokochanGrid.index(board.getX(keeper), board.getY(keeper)));
     }
 
     /**
-     * Saves a game to a file
+     * Saves a game to a file, compressed if its name ends with {@value MapLoader#COMPRESSED_EXTENSION}
      *
      * @param file the file where the game will be saved
      * @throws IOException if it is impossible to write the file
      */
     public void saveGame(File file) throws IOException {
+        saveGame(file, snapshot());
+    }
+
+    /**
+     * Saves a snapshot of a game to a file. It can be called from any thread, so a game can be saved in the
+     * background while it goes on. The file is replaced only once it has been written completely.
+     *
+     * @param file     the file where the game will be saved
+     * @param snapshot the game to save, see {@link #snapshot()}
+     * @throws IOException if it is impossible to write the file
+     */
+    public static void saveGame(File file, Snapshot snapshot) throws IOException {
         MapLoader loader = new MapLoader();
 
-        loader.saveMap(file, this);
+        loader.saveMap(file, snapshot);
+    }
+
+    /**
+     * Saves the levels of the map to a binary map, which loads faster than a SaveFile. The progress is not saved.
+     * Binary maps are loaded by the same constructors as SaveFiles.
+     *
+     * @param file the file where the map will be saved
+     * @throws IOException if it is impossible to write the file, or a level is too large
+     */
+    public void saveBinaryMap(File file) throws IOException {
+        MapLoader loader = new MapLoader();
+
+        loader.saveBinaryMap(file, this);
     }
 
     /**
@@ -196,61 +365,406 @@ public final class SokochanEngine {
      */
     @SuppressWarnings("UnusedReturnValue")
     public boolean movePlayer(Direction direction) {
-        boolean pushed = false;
-        boolean moved = false;
+        if (refusingDeadSquarePushes && boardState.isPushOnDeadSquare(direction))
+            return false;
+
+        int status = step(direction);
+
+        if (status == WarehouseKeeper.MOVE_FAILED)
+            return false;
+
+        int move = MoveHistory.encode(direction, status >= WarehouseKeeper.MOVE_PUSHED);
+
+        // A move other than the one to redo leaves the line, the checkpoints after it would be wrong
+        if (history.peek() != move) {
+            dropCheckpointsAfter(movesCount - 1);
+            checkpoint();
+        }
+
+        history.push(move);
+
+        return true;
+    }
+
+    /**
+     * Moves the player on the {@link BoardState} and on the view, and updates the stats. The history is left untouched.
+     *
+     * @param direction the direction where to move the player
+     * @return the status of the move, as returned by {@link BoardState#move(Direction)}
+     */
+    private int step(Direction direction) {
+        int status = boardState.move(direction);
+
+        if (status == WarehouseKeeper.MOVE_FAILED)
+            return status;
+
+        boolean pushed = status >= WarehouseKeeper.MOVE_PUSHED;
+
+        // Keeps the view in sync
+        if (warehouseKeeper != null) {
+            warehouseKeeper.movePushing(direction);
+
+            int offset = boardState.getBoard().getOffset(direction);
+            int keeper = boardState.getWarehouseKeeper();
+
+            markChanged(keeper - offset);
+            markChanged(keeper);
 
-        int status = warehouseKeeper.movePushing(direction);
+            if (pushed)
+                markChanged(keeper + offset);
+        } else {
+            // Whatever grid is built or synced later is checked as a whole
+            changedCount = -1;
+        }
 
-        if (status >= WarehouseKeeper.MOVE_PUSHED) {
-            pushed = true;
-            moved = true;
+        if (pushed)
             pushesCount++;
-            if (status == WarehouseKeeper.MOVE_PUSHED_ON_DIAMOND) {
-                cratesOnDiamondCount++;
-            } else if (status == WarehouseKeeper.MOVE_PUSHED_OFF_DIAMOND) {
-                cratesOnDiamondCount--;
-            }
-        } else if (status == WarehouseKeeper.MOVE_NOT_PUSHED) {
-            moved = true;
+
+        movesCount++;
+
+        if (pushed && frozenAtMove < 0) {
+            int crate = boardState.getWarehouseKeeper() + boardState.getBoard().getOffset(direction);
+
+            if (boardState.isFreezeDeadlock(crate))
+                frozenAtMove = movesCount;
         }
 
-        if (moved) {
-            movesCount++;
-            historyStack.push(new HistoryElement(direction, pushed));
+        // Once the deadlock of this move is known, so that the checkpoint remembers it
+        checkpoint();
+
+        return status;
+    }
+
+    /**
+     * Takes the checkpoint of the current move, if it is due one that has not been taken yet
+     */
+    private void checkpoint() {
+        if (movesCount % CHECKPOINT_INTERVAL == 0 && checkpoints.size() == movesCount / CHECKPOINT_INTERVAL)
+            checkpoints.add(new Checkpoint(this));
+    }
+
+    /**
+     * Takes a snapshot of the game, that can be given back to {@link #restore(Snapshot)} at any time, even after
+     * another level has been loaded. Only the dynamic state is copied, see {@link BoardState#copy()}.
+     *
+     * @return the snapshot of the current state
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Brings the game back to a snapshot, including the stats and the moves history.
+     * If the snapshot was taken on the current level the existing {@link SokochanGrid} is kept and only its movable
+     * objects are moved, otherwise the grid is rebuilt.
+     *
+     * @param snapshot a snapshot taken by this engine or by one sharing its map, see {@link #fork()}
+     * @throws IllegalArgumentException if the snapshot was taken on a different map
+     */
+    public void restore(Snapshot snapshot) {
+        if (snapshot.levels != levels)
+            throw new IllegalArgumentException("The snapshot was taken on a different map");
+
+        boolean sameBoard = snapshot.boardState.getBoard() == boardState.getBoard();
+
+        boardState = snapshot.boardState.copy();
+        levelIndex = snapshot.levelIndex;
+        movesCount = snapshot.movesCount;
+        pushesCount = snapshot.pushesCount;
+        frozenAtMove = snapshot.frozenAtMove;
+        history = snapshot.history.copyPath();
+        checkpoints = new ArrayList<>(snapshot.checkpoints);
+
+        if (sameBoard && warehouseKeeper != null) {
+            syncSokochanGrid();
+        } else {
+            sokochanGrid = null;
+            warehouseKeeper = null;
+
+            if (gridView)
+                buildSokochanGrid();
         }
+    }
 
-        return moved;
+    /**
+     * Creates an independent engine from the current state of this one. The loaded levels and the static
+     * {@link Board} are shared, only the crates, the keeper, the stats and the history are copied.
+     * The fork has no {@link SokochanGrid} until {@link #getSokochanGrid()} is called on it.
+     *
+     * @return a new engine, starting from the current state
+     */
+    public SokochanEngine fork() {
+        return new SokochanEngine(this);
+    }
+
+    /**
+     * Makes a sequence of moves, stopping at the first one that cannot be made.
+     * For long sequences the {@link SokochanGrid} is not moved along, it is brought up to date once at the end.
+     *
+     * @param directions the moves to make
+     * @return how many moves were made, and the stats after them
+     */
+    public BatchResult applyMoves(Direction[] directions) {
+        WarehouseKeeper view = detachView(directions.length);
+        int applied = 0;
+
+        while (applied < directions.length && movePlayer(directions[applied]))
+            applied++;
+
+        attachView(view);
+
+        return new BatchResult(this, applied, directions.length);
+    }
+
+    /**
+     * Makes the moves of a LURD string, see {@link Lurd}. Stops at the first move that cannot be made, or that does
+     * not push a crate when the notation says it does (or the other way round); that move is not made.
+     * For long sequences the {@link SokochanGrid} is not moved along, it is brought up to date once at the end.
+     *
+     * @param lurd the moves, in LURD notation
+     * @return how many moves were made, and the stats after them
+     * @throws IllegalArgumentException if the string is not valid LURD, in that case no move is made
+     */
+    public BatchResult applyMoves(CharSequence lurd) {
+        int[] moves = Lurd.decode(lurd);
+
+        WarehouseKeeper view = detachView(moves.length);
+        int applied = 0;
+
+        for (; applied < moves.length; applied++) {
+            Direction direction = MoveHistory.getDirection(moves[applied]);
+
+            // Checked before moving, so that a mismatch leaves no trace in the history
+            if (MoveHistory.isPush(moves[applied]) != boardState.isPush(direction))
+                break;
+
+            if (!movePlayer(direction))
+                break;
+        }
+
+        attachView(view);
+
+        return new BatchResult(this, applied, moves.length);
+    }
+
+    /**
+     * Makes the moves of a LURD string, see {@link #applyMoves(CharSequence)}
+     *
+     * @param lurd the moves, in LURD notation
+     * @return the number of moves made, less than the moves in the string if one failed
+     * @throws IllegalArgumentException if the string is not valid LURD, in that case no move is made
+     */
+    public int applyLurd(CharSequence lurd) {
+        return applyMoves(lurd).getAppliedCount();
+    }
+
+    /**
+     * Stops moving the {@link SokochanGrid} along with the state, if a sequence of moves is long enough that
+     * bringing the whole grid up to date at the end is cheaper
+     *
+     * @param moves the number of moves about to be made
+     * @return the keeper of the detached view, to be given to {@link #attachView(WarehouseKeeper)}
+     */
+    private WarehouseKeeper detachView(int moves) {
+        WarehouseKeeper view = warehouseKeeper;
+
+        // Moving an object is a few times cheaper than checking a cell of the grid
+        if (view != null && (long) moves * 4 > sokochanGrid.X_SIZE * sokochanGrid.Y_SIZE)
+            warehouseKeeper = null;
+
+        return view;
+    }
+
+    /**
+     * Brings the {@link SokochanGrid} up to date after {@link #detachView(int)}
+     *
+     * @param view the keeper of the view, {@code null} if there is no view
+     */
+    private void attachView(WarehouseKeeper view) {
+        if (view != null && warehouseKeeper == null) {
+            warehouseKeeper = view;
+            syncSokochanGrid();
+        }
     }
 
     /**
      * Restores the state of the grid before the last move
      */
     public void undo() {
-        if (historyStack == null || historyStack.isEmpty())
+        if (history == null)
             return;
 
-        final HistoryElement pop = historyStack.pop();
+        final int move = history.undo();
 
-        if (pop.pushedCrate) { // If a crate has been pushed
-            Crate crate = warehouseKeeper.getCrateInDirection(pop.direction);
-            assert crate != null;
+        if (move == MoveHistory.NONE)
+            return;
 
-            boolean wasOnDiamond = crate.isOnDiamond();
+        final Direction direction = MoveHistory.getDirection(move);
+        final boolean pushed = MoveHistory.isPush(move);
 
-            warehouseKeeper.move(pop.direction.getOppositeDirection());
+        boardState.undo(direction, pushed);
 
-            crate.move(pop.direction.getOppositeDirection());
+        if (warehouseKeeper != null) {
+            undoSokochanGrid(direction, pushed);
 
-            if (wasOnDiamond != crate.isOnDiamond())
-                if (wasOnDiamond) cratesOnDiamondCount--;
-                else cratesOnDiamondCount++;
+            int offset = boardState.getBoard().getOffset(direction);
+            int keeper = boardState.getWarehouseKeeper();
 
-            pushesCount--;
-        } else { // No crate pushed
-            warehouseKeeper.move(pop.direction.getOppositeDirection());
+            markChanged(keeper);
+            markChanged(keeper + offset);
+
+            if (pushed)
+                markChanged(keeper + 2 * offset);
+        } else {
+            // Whatever grid is built or synced later is checked as a whole
+            changedCount = -1;
         }
 
+        if (pushed)
+            pushesCount--;
+
         movesCount--;
+
+        if (movesCount < frozenAtMove)
+            frozenAtMove = -1;
+    }
+
+    /**
+     * Makes again the last undone move. After an undo a different move starts a new branch of the history,
+     * the undone moves are kept and can be chosen again with {@link #switchBranch(int)}.
+     *
+     * @return {@code true} if a move was redone | {@code false} if there is nothing to redo
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    public boolean redo() {
+        if (history == null)
+            return false;
+
+        final int move = history.redo();
+
+        if (move == MoveHistory.NONE)
+            return false;
+
+        step(MoveHistory.getDirection(move));
+
+        return true;
+    }
+
+    /**
+     * Chooses which of the branches of the history {@link #redo()} follows from the current move
+     *
+     * @param index the branch, from 0 to {@link #getRedoBranchesCount()} - 1, in the order they were made
+     * @throws IndexOutOfBoundsException if there is no such branch
+     */
+    public void switchBranch(int index) {
+        history.switchBranch(index);
+
+        dropCheckpointsAfter(movesCount);
+    }
+
+    /**
+     * Jumps to any move of the current line of the history, see {@link MoveHistory#getLineLength()}.
+     * The game is restored from the nearest checkpoint, so at most {@link #CHECKPOINT_INTERVAL} moves are replayed
+     * on the {@link BoardState}, and the {@link SokochanGrid} is updated once, at the end.
+     *
+     * @param move the number of moves from the start of the level
+     * @throws IndexOutOfBoundsException if the line has not so many moves
+     */
+    public void seek(int move) {
+        if (move < 0 || move > history.getLineLength())
+            throw new IndexOutOfBoundsException("Move " + move + " of " + history.getLineLength());
+
+        // The view is synced once all the moves have been replayed
+        WarehouseKeeper view = detachView(Integer.MAX_VALUE);
+
+        // The nearest checkpoint before the move, they are only made when the line is played
+        int index = Math.min(move / CHECKPOINT_INTERVAL, checkpoints.size() - 1);
+        Checkpoint checkpoint = checkpoints.get(index);
+        int from = index * CHECKPOINT_INTERVAL;
+
+        // Undoing is cheaper if the move is closer than the checkpoint
+        if (move < movesCount && movesCount - move <= move - from) {
+            while (movesCount > move)
+                undo();
+        } else if (move < movesCount || movesCount < from) {
+            history.seek(from);
+            boardState = checkpoint.boardState.copy();
+            movesCount = from;
+            pushesCount = checkpoint.pushesCount;
+            frozenAtMove = checkpoint.frozenAtMove;
+        }
+
+        while (movesCount < move)
+            redo();
+
+        attachView(view);
+    }
+
+    /**
+     * Forgets the checkpoints after a move, once the line of the history that follows it has changed
+     *
+     * @param move the number of moves from the start of the level
+     */
+    private void dropCheckpointsAfter(int move) {
+        int size = move / CHECKPOINT_INTERVAL + 1;
+
+        if (checkpoints.size() > size)
+            checkpoints.subList(size, checkpoints.size()).clear();
+    }
+
+    /**
+     * Remembers a cell of the {@link SokochanGrid} changed by a move, see {@link #pollChangedCells()}.
+     * Past {@value #CHANGED_CELLS_LIMIT} cells they are forgotten, and the whole grid has to be checked.
+     *
+     * @param cell the cell index on the {@link Board}
+     */
+    private void markChanged(int cell) {
+        if (changedCount < 0)
+            return;
+
+        if (changedCount == CHANGED_CELLS_LIMIT) {
+            changedCount = -1;
+            return;
+        }
+
+        Board board = boardState.getBoard();
+
+        changedCells[changedCount++] = sokochanGrid.index(board.getX(cell), board.getY(cell));
+    }
+
+    /**
+     * Gives the cells of the {@link SokochanGrid} that changed since the last call, so that a view can redraw only
+     * those: after a move or an undo the cells left and entered by the keeper and by the pushed crate.
+     * When the grid has been built or brought up to date as a whole, as after loading a level, a seek or a long
+     * sequence of moves, the changed cells are not known.
+     *
+     * @return the changed cell indexes of the grid, possibly repeated, {@code null} if the whole grid may have changed
+     */
+    public int[] pollChangedCells() {
+        int[] cells = changedCount < 0 ? null : Arrays.copyOf(changedCells, changedCount);
+
+        changedCount = 0;
+
+        return cells;
+    }
+
+    /**
+     * Reverts a move on the {@link SokochanGrid} view
+     *
+     * @param direction where the keeper moved
+     * @param pushed    whether a crate was pushed
+     */
+    private void undoSokochanGrid(Direction direction, boolean pushed) {
+        if (pushed) { // If a crate has been pushed
+            Crate crate = warehouseKeeper.getCrateInDirection(direction);
+            assert crate != null;
+
+            warehouseKeeper.move(direction.getOppositeDirection());
+
+            crate.move(direction.getOppositeDirection());
+        } else { // No crate pushed
+            warehouseKeeper.move(direction.getOppositeDirection());
+        }
     }
 
     /**
@@ -258,14 +772,85 @@ public final class SokochanEngine {
      */
     //<editor-fold desc="Getters" defaultstate="collapsed">
     public SokochanGrid getSokochanGrid() {
+        if (sokochanGrid == null && boardState != null)
+            buildSokochanGrid();
+
         return sokochanGrid;
     }
 
+    /**
+     * Gives a 64 bit hash of the state of the game: the position of the crates and the area the keeper can walk in.
+     * It is updated incrementally by {@link #movePlayer(Direction)} and {@link #undo()}, so it can be used as a key
+     * to detect duplicated states.
+     *
+     * @return the hash of the current state
+     */
+    public long getStateHash() {
+        return boardState.getHash();
+    }
+
+    /**
+     * @param cell a cell index of the {@link Board}
+     * @return {@code true} if a crate on the cell can never be placed on a diamond
+     */
+    public boolean isDeadSquare(int cell) {
+        return boardState.getBoard().isDeadSquare(cell);
+    }
+
+    /**
+     * @param x column in the grid
+     * @param y row in the grid
+     * @return {@code true} if a crate on the cell can never be placed on a diamond
+     */
+    public boolean isDeadSquare(int x, int y) {
+        return isDeadSquare(boardState.getBoard().index(x, y));
+    }
+
+    /**
+     * @return the cache the levels are parsed into, {@link LevelCache#getShared()} by default
+     */
+    public LevelCache getLevelCache() {
+        return levelCache;
+    }
+
+    /**
+     * Gives the engine its own cache of parsed levels, e.g. to size it for a batch job or to keep its counters apart
+     *
+     * @param levelCache the cache the levels will be parsed into
+     */
+    public void setLevelCache(LevelCache levelCache) {
+        this.levelCache = levelCache;
+    }
+
+    /**
+     * @return whether {@link #movePlayer(Direction)} refuses to push crates onto dead squares
+     */
+    public boolean isRefusingDeadSquarePushes() {
+        return refusingDeadSquarePushes;
+    }
+
+    /**
+     * When set, {@link #movePlayer(Direction)} fails instead of pushing a crate where it could never reach a diamond.
+     * Off by default. Crates already on dead squares are always counted by {@link #getCratesOnDeadSquareCount()}.
+     *
+     * @param refusingDeadSquarePushes {@code true} to refuse the pushes onto dead squares
+     */
+    public void setRefusingDeadSquarePushes(boolean refusingDeadSquarePushes) {
+        this.refusingDeadSquarePushes = refusingDeadSquarePushes;
+    }
+
+    /**
+     * @return the compact state of the game
+     */
+    public BoardState getBoardState() {
+        return boardState;
+    }
+
     /**
      * @return whether the games has been completed or not
      */
     public boolean isComplete() {
-        return cratesOnDiamondCount == cratesCount;
+        return boardState.getCratesOnDiamondCount() == boardState.getCratesCount();
     }
 
     /**
@@ -297,17 +882,39 @@ public final class SokochanEngine {
     }
 
     /**
-     * @return the total number of levels in  the map
+     * Gives a level of the map. The rows of a level loaded from a file are only read when it is first played.
+     *
+     * @param levelIndex the level index. Range: 0-n.
+     * @return the level
+     * @throws IndexOutOfBoundsException if the index is not not in the level array
+     * @throws IllegalStateException     if a mapped file is malformed before the level
+     */
+    public MapLoader.Level getLevel(int levelIndex) {
+        return levels.get(levelIndex);
+    }
+
+    /**
+     * @return the total number of levels in  the map. A memory mapped map counts the levels not indexed yet by
+     * reading through the file, see {@link #hasLevel(int)}
      */
     public int getLevelsCount() {
         return levels.size();
     }
 
+    /**
+     * @param levelIndex the level index. Range: 0-n.
+     * @return {@code true} if the map has the level, reading a memory mapped map only up to it
+     * @throws IllegalStateException if a mapped file is malformed before the level
+     */
+    public boolean hasLevel(int levelIndex) {
+        return MapLoader.hasLevel(levels, levelIndex);
+    }
+
     /**
      * @return the total number of {@link Crate}s in the map
      */
     public int getCratesCount() {
-        return cratesCount;
+        return boardState.getCratesCount();
     }
 
     /**
@@ -328,41 +935,208 @@ public final class SokochanEngine {
      * @return the number of possible undos
      */
     public int getHistoryElementsCount() {
-        return historyStack.size();
+        return history.size();
+    }
+
+    /**
+     * @return the moves made since the level was loaded, in LURD notation, see {@link Lurd}
+     */
+    public String getLurd() {
+        return Lurd.encode(history);
+    }
+
+    /**
+     * @return the number of different moves that can be redone, one per branch of the history
+     */
+    public int getRedoBranchesCount() {
+        return history.getRedoBranchesCount();
+    }
+
+    /**
+     * @return the moves made since the level was loaded, and the undone ones
+     */
+    public MoveHistory getHistory() {
+        return history;
     }
     //</editor-fold>
 
-    //<editor-fold desc="Moves History" defaultstate="collapsed">
+    /**
+     * A copy of the dynamic state of a game, see {@link #snapshot()}. Snapshots are immutable, so the same one can
+     * be restored any number of times and shared between forks of an engine.
+     */
+    public static final class Snapshot {
+        private final List<MapLoader.Level> levels;
+        private final String mapName;
+        private final BoardState boardState;
+        private final int levelIndex;
+        private final int movesCount;
+        private final int pushesCount;
+        private final int frozenAtMove;
+        private final MoveHistory history;
+        private final List<Checkpoint> checkpoints;
+
+        /**
+         * @param engine the engine whose state is copied
+         */
+        private Snapshot(SokochanEngine engine) {
+            this.levels = engine.levels;
+            this.mapName = engine.mapName;
+            this.boardState = engine.boardState.copy();
+            this.levelIndex = engine.levelIndex;
+            this.movesCount = engine.movesCount;
+            this.pushesCount = engine.pushesCount;
+            this.frozenAtMove = engine.frozenAtMove;
+            this.history = engine.history.copyPath();
+            // Checkpoints are never modified, only the ones on the copied path are shared
+            this.checkpoints = new ArrayList<>(engine.checkpoints.subList(0, engine.movesCount / CHECKPOINT_INTERVAL + 1));
+        }
+
+        //<editor-fold desc="Getters" defaultstate="collapsed">
+
+        /**
+         * @return the levels of the map the snapshot was taken on
+         */
+        List<MapLoader.Level> getLevels() {
+            return levels;
+        }
+
+        /**
+         * @return the state of the game, it must not be moved
+         */
+        BoardState getBoardState() {
+            return boardState;
+        }
+
+        /**
+         * @return the name of the map the snapshot was taken on
+         */
+        public String getMapName() {
+            return mapName;
+        }
+
+        /**
+         * @return the level the snapshot was taken on. Range: 0-n.
+         */
+        public int getLevelIndex() {
+            return levelIndex;
+        }
+
+        /**
+         * @return the moves made when the snapshot was taken
+         */
+        public int getMovesCount() {
+            return movesCount;
+        }
+
+        /**
+         * @return the pushes made when the snapshot was taken
+         */
+        public int getPushesCount() {
+            return pushesCount;
+        }
+
+        /**
+         * @return the hash of the state, see {@link SokochanEngine#getStateHash()}
+         */
+        public long getStateHash() {
+            return boardState.getHash();
+        }
+        //</editor-fold>
+    }
 
     /**
-     * A container class that wraps an history entry
+     * The state of the game after a multiple of {@link #CHECKPOINT_INTERVAL} moves, see {@link #seek(int)}
      */
-    private class HistoryElement {
-        private final Direction direction;
-        private final boolean pushedCrate;
+    private static final class Checkpoint {
+        private final BoardState boardState;
+        private final int pushesCount;
+        private final int frozenAtMove;
 
         /**
-         * @param direction   the direction where the played has been moved
-         * @param pushedCrate whether a {@link Crate} has been pushed or not
+         * @param engine the engine whose state is copied
          */
-        private HistoryElement(Direction direction, boolean pushedCrate) {
-            this.direction = direction;
-            this.pushedCrate = pushedCrate;
+        private Checkpoint(SokochanEngine engine) {
+            this.boardState = engine.boardState.copy();
+            this.pushesCount = engine.pushesCount;
+            this.frozenAtMove = engine.frozenAtMove;
         }
     }
 
     /**
-     * This class extends a {@link Stack} of {@link HistoryElement}, with a fixed size
-     * This allows a fixed number of un-dos
+     * The outcome of a sequence of moves, see {@link #applyMoves(Direction[])}
      */
-    private class HistoryStack extends Stack<HistoryElement> {
-        @Override
-        public HistoryElement push(HistoryElement item) {
-            if (this.size() > MAX_UNDO) {
-                removeRange(0, size() - MAX_UNDO - 1);
-            }
-            return super.push(item);
+    public static final class BatchResult {
+        private final int appliedCount;
+        private final int requestedCount;
+        private final int movesCount;
+        private final int pushesCount;
+        private final boolean complete;
+        private final boolean deadlocked;
+
+        /**
+         * @param engine         the engine after the moves
+         * @param appliedCount   the number of moves made
+         * @param requestedCount the number of moves in the sequence
+         */
+        private BatchResult(SokochanEngine engine, int appliedCount, int requestedCount) {
+            this.appliedCount = appliedCount;
+            this.requestedCount = requestedCount;
+            this.movesCount = engine.movesCount;
+            this.pushesCount = engine.pushesCount;
+            this.complete = engine.isComplete();
+            this.deadlocked = engine.isDeadlocked();
         }
+
+        //<editor-fold desc="Getters" defaultstate="collapsed">
+
+        /**
+         * @return the number of moves of the sequence that were made
+         */
+        public int getAppliedCount() {
+            return appliedCount;
+        }
+
+        /**
+         * @return the number of moves in the sequence
+         */
+        public int getRequestedCount() {
+            return requestedCount;
+        }
+
+        /**
+         * @return {@code true} if all the moves were made, otherwise the move at {@link #getAppliedCount()} failed
+         */
+        public boolean isFullyApplied() {
+            return appliedCount == requestedCount;
+        }
+
+        /**
+         * @return the total moves made in the level after the sequence, see {@link SokochanEngine#getMovesCount()}
+         */
+        public int getMovesCount() {
+            return movesCount;
+        }
+
+        /**
+         * @return the total pushes made in the level after the sequence, see {@link SokochanEngine#getPushesCount()}
+         */
+        public int getPushesCount() {
+            return pushesCount;
+        }
+
+        /**
+         * @return whether the level is complete after the sequence
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return whether the level is deadlocked after the sequence, see {@link SokochanEngine#isDeadlocked()}
+         */
+        public boolean isDeadlocked() {
+            return deadlocked;
+        }
+        //</editor-fold>
     }
-    //</editor-fold>
 }
@@ -15,6 +15,9 @@ import java.util.Iterator;
  * for such purpose it contains an inner class called {@link GridIterator}.
  * Note: in the {@link SokochanGrid} are placed only {@link Tile}s,
  * {@link sokochan.GridObjects.Crate}s and {@link sokochan.GridObjects.WarehouseKeeper} are paced inside the {@link Tile}.
+ * <p>
+ * Tiles are stored row by row in a single array, and can also be addressed by a cell index, see {@link #index(int, int)}.
+ * The methods taking a cell index allocate nothing, so they are the ones used when moving objects.
  * Created by Vittorio on 05-Oct-16.
  */
 public final class SokochanGrid implements Iterable<TileGridObject> {
@@ -28,7 +31,9 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
      */
     public final int Y_SIZE;
 
-    private final TileGridObject[][] tileGridObjects;
+    private final TileGridObject[] tileGridObjects;
+    // The change of the cell index when moving in each direction
+    private final int[] offsets = new int[Direction.VALUES.length];
 
     /**
      * Constructor for the grid. Creates a grid of {@code null}s
@@ -39,10 +44,85 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
     public SokochanGrid(int x, int y) {
         X_SIZE = x;
         Y_SIZE = y;
-        tileGridObjects = new TileGridObject[X_SIZE][Y_SIZE];
+        tileGridObjects = new TileGridObject[X_SIZE * Y_SIZE];
+
+        for (Direction direction : Direction.VALUES)
+            offsets[direction.ordinal()] = direction.getDeltaY() * X_SIZE + direction.getDeltaX();
+
         populateWithTiles();
     }
 
+    /**
+     * Gives the cell index of a position. The position is not checked, see {@link #contains(int, int)}.
+     *
+     * @param x position
+     * @param y position
+     * @return the cell index
+     */
+    public int index(int x, int y) {
+        return y * X_SIZE + x;
+    }
+
+    /**
+     * @param x position
+     * @param y position
+     * @return {@code true} if the position is inside the grid
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && x < X_SIZE && y >= 0 && y < Y_SIZE;
+    }
+
+    /**
+     * @param cell a cell index
+     * @return the x coordinate of the cell
+     */
+    public int getX(int cell) {
+        return cell % X_SIZE;
+    }
+
+    /**
+     * @param cell a cell index
+     * @return the y coordinate of the cell
+     */
+    public int getY(int cell) {
+        return cell / X_SIZE;
+    }
+
+    /**
+     * @param direction a direction
+     * @return the change of the cell index when moving in the direction
+     */
+    public int getOffset(Direction direction) {
+        return offsets[direction.ordinal()];
+    }
+
+    /**
+     * Gives the cell next to another
+     *
+     * @param cell      a cell index
+     * @param direction where to move
+     * @return the cell index of the neighbour, or -1 if it would be out of bound
+     */
+    public int getNeighbour(int cell, Direction direction) {
+        if (cell < 0 || !contains(getX(cell) + direction.getDeltaX(), getY(cell) + direction.getDeltaY()))
+            return -1;
+
+        return cell + offsets[direction.ordinal()];
+    }
+
+    /**
+     * Gives the tile at a given cell
+     *
+     * @param cell a cell index
+     * @return The tile contained in the cell or {@code null} if out of bound
+     */
+    public TileGridObject getTile(int cell) {
+        if (cell < 0 || cell >= tileGridObjects.length) {
+            return null;
+        }
+        return tileGridObjects[cell];
+    }
+
     /**
      * * Gives the tile at a given position
      *
@@ -61,10 +141,10 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
      * @return The tile contained in a position or {@code null} if out of bound
      */
     public TileGridObject getTile(int x, int y) {
-        if (x < 0 || x >= X_SIZE || y < 0 || y >= Y_SIZE) {
+        if (!contains(x, y)) {
             return null;
         }
-        return tileGridObjects[x][y];
+        return tileGridObjects[index(x, y)];
     }
 
     /**
@@ -76,10 +156,10 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
      * @throws NullPointerException if there there is not {@link TileGridObject} at the give position
      */
     public MovableGridObject getGridObject(int x, int y) {
-        if (x < 0 || x >= X_SIZE || y < 0 || y >= Y_SIZE) {
+        if (!contains(x, y)) {
             return null;
         }
-        return tileGridObjects[x][y].getPlacedObject();
+        return tileGridObjects[index(x, y)].getPlacedObject();
     }
 
     /**
@@ -93,6 +173,19 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
         return getGridObject(position.x, position.y);
     }
 
+    /**
+     * Gives the object placed on a {@link TileGridObject} at a given cell
+     *
+     * @param cell a cell index
+     * @return the object placed on the tile of the cell, {@code null} if empty or out of bound
+     */
+    public MovableGridObject getGridObject(int cell) {
+        if (cell < 0 || cell >= tileGridObjects.length) {
+            return null;
+        }
+        return tileGridObjects[cell].getPlacedObject();
+    }
+
     /**
      * Removes an {@link MovableGridObject} on a {@link sokochan.GridObjects.GridObject} at the given position.
      *
@@ -101,8 +194,18 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
      * @throws NullPointerException if there there is no {@link TileGridObject} at the give position
      */
     public void removeGridObject(Point position) {
-        if (!(position.x < 0 || position.x >= X_SIZE || position.y < 0 || position.y >= Y_SIZE))
-            tileGridObjects[position.x][position.y].setPlacedObject(null);
+        if (contains(position.x, position.y))
+            removeGridObject(index(position.x, position.y));
+    }
+
+    /**
+     * Removes an {@link MovableGridObject} on the {@link TileGridObject} of a cell
+     *
+     * @param cell a cell index, nothing happens if out of bound
+     */
+    public void removeGridObject(int cell) {
+        if (cell >= 0 && cell < tileGridObjects.length)
+            tileGridObjects[cell].setPlacedObject(null);
     }
 
     /**
@@ -112,17 +215,29 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
      * @param tile     the tile to place
      */
     public void setGridTile(Point position, TileGridObject tile) {
-        tileGridObjects[position.x][position.y] = tile;
+        if (!contains(position.x, position.y))
+            throw new ArrayIndexOutOfBoundsException("Position out of the grid: " + position);
+
+        setGridTile(index(position.x, position.y), tile);
+    }
+
+    /**
+     * Sets a {@link TileGridObject} at a given cell in the {@link SokochanGrid}
+     *
+     * @param cell the cell index
+     * @param tile the tile to place
+     */
+    public void setGridTile(int cell, TileGridObject tile) {
+        tileGridObjects[cell] = tile;
     }
 
     /**
      * Populates the whole grid with empty {@link Tile}
      */
     private void populateWithTiles() {
-        GridIterator iterator = iterator();
-        while (iterator.hasNext()) {
-            iterator.next();
-            new Tile(this, iterator.getPosition());
+        for (int y = 0; y < Y_SIZE; y++) {
+            for (int x = 0; x < X_SIZE; x++)
+                new Tile(this, x, y);
         }
     }
 
@@ -133,22 +248,20 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
     }
 
     /**
-     * An iterator class that will iterate every {@link TileGridObject} in the {@link SokochanGrid}
-     * getPosition can be used to retrieve the current {@link Point} in the {@link SokochanGrid}
+     * An iterator class that will iterate every {@link TileGridObject} in the {@link SokochanGrid}, row by row
+     * getCell can be used to retrieve the current cell index in the {@link SokochanGrid}
      */
     private class GridIterator implements Iterator<TileGridObject> {
-        private int x = -1;
-        private int y = 0;
+        private int cell = -1;
 
         @Override
         public boolean hasNext() {
-            return !(x == X_SIZE - 1 && y == Y_SIZE - 1);
+            return cell < tileGridObjects.length - 1;
         }
 
         @Override
         public TileGridObject next() {
-            increment();
-            return tileGridObjects[x][y];
+            return tileGridObjects[++cell];
         }
 
         /**
@@ -157,19 +270,14 @@ public final class SokochanGrid implements Iterable<TileGridObject> {
          * @return the {@link Point} representing the current coordinates
          */
         public Point getPosition() {
-            return new Point(x, y);
+            return new Point(getX(cell), getY(cell));
         }
 
         /**
-         * Increments the position in the grid by one, moving to the next row if the column is over
+         * @return the cell index of the current tile
          */
-        private void increment() {
-            if (x < X_SIZE - 1) {
-                x++;
-            } else {
-                x = 0;
-                y++;
-            }
+        public int getCell() {
+            return cell;
         }
     }
     //</editor-fold>
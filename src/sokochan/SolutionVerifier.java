@@ -0,0 +1,379 @@
+package sokochan;
+
+import sokochan.GridObjects.WarehouseKeeper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+/**
+ * Checks solutions in LURD notation (see {@link Lurd}) against the levels of a map, on all the cores.
+ * <p>
+ * Every level is parsed once: the {@link Board}s are shared by all the threads, and each solution is played on its
+ * own copy of the initial {@link BoardState}, with no {@link SokochanEngine} or {@link SokochanGrid} involved.
+ * <p>
+ * A solutions file has a solution per line: the number of the level, counting from 1, followed by the moves.
+ * Empty lines and lines starting with {@code #} are skipped, a level can have any number of solutions.
+ */
+public final class SolutionVerifier {
+    private final String mapName;
+    // The initial state of every level, never moved
+    private final BoardState[] levels;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Loads and parses all the levels of a map
+     *
+     * @param file the .skb file containing the map
+     * @throws IOException                  if the file cannot be read
+     * @throws MapLoader.MapLoaderException if it is not a valid map
+     */
+    public SolutionVerifier(File file) throws IOException, MapLoader.MapLoaderException {
+        MapLoader loader = new MapLoader();
+
+        loader.loadMap(file);
+
+        List<MapLoader.Level> levels = loader.getLevels();
+
+        this.mapName = loader.getName();
+        this.levels = new BoardState[levels.size()];
+
+        for (int i = 0; i < levels.size(); i++)
+            this.levels[i] = BoardState.parse(levels.get(i));
+    }
+
+    /**
+     * Reads a solutions file
+     *
+     * @param file the solutions, one per line
+     * @return the solutions, in the order of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Submission> readSolutions(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath());
+        List<Submission> submissions = new ArrayList<>();
+
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] parts = line.split("\\s+", 2);
+            int level;
+
+            try {
+                level = Integer.parseInt(parts[0]) - 1;
+            } catch (NumberFormatException e) {
+                level = -1;
+            }
+
+            submissions.add(new Submission(i + 1, level, parts.length > 1 ? parts[1] : ""));
+        }
+
+        return submissions;
+    }
+
+    /**
+     * Plays a solution on its level
+     *
+     * @param submission the solution
+     * @return whether it solves the level, and how many moves and pushes were made
+     */
+    public Result verify(Submission submission) {
+        if (submission.level < 0 || submission.level >= levels.length)
+            return new Result(submission, Status.UNKNOWN_LEVEL, 0, 0);
+
+        int[] moves;
+
+        try {
+            moves = Lurd.decode(submission.lurd);
+        } catch (IllegalArgumentException e) {
+            return new Result(submission, Status.INVALID_NOTATION, 0, 0);
+        }
+
+        BoardState state = levels[submission.level].copy();
+        int pushes = 0;
+
+        for (int i = 0; i < moves.length; i++) {
+            int status = state.move(MoveHistory.getDirection(moves[i]));
+            boolean pushed = status >= WarehouseKeeper.MOVE_PUSHED;
+
+            if (status == WarehouseKeeper.MOVE_FAILED || pushed != MoveHistory.isPush(moves[i]))
+                return new Result(submission, Status.ILLEGAL_MOVE, i, pushes);
+
+            if (pushed)
+                pushes++;
+        }
+
+        boolean solved = state.getCratesOnDiamondCount() == state.getCratesCount();
+
+        return new Result(submission, solved ? Status.SOLVED : Status.NOT_SOLVED, moves.length, pushes);
+    }
+
+    /**
+     * Plays all the solutions, in parallel on {@link #getThreads()} threads
+     *
+     * @param submissions the solutions
+     * @return the results, in the same order of the solutions, and the throughput
+     */
+    public Report verifyAll(List<Submission> submissions) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+
+        try {
+            List<Result> results = pool.invoke(ForkJoinTask.adapt(() ->
+                    submissions.parallelStream().map(this::verify).collect(Collectors.toList())));
+
+            return new Report(results, System.nanoTime() - start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //<editor-fold desc="Getters and Setters" defaultstate="collapsed">
+
+    /**
+     * @return the name of the map, as specified on the file
+     */
+    public String getMapName() {
+        return mapName;
+    }
+
+    /**
+     * @return the number of levels in the map
+     */
+    public int getLevelsCount() {
+        return levels.length;
+    }
+
+    /**
+     * @return the number of threads {@link #verifyAll(List)} runs on, all the cores by default
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the number of threads {@link #verifyAll(List)} runs on
+     * @throws IllegalArgumentException if less than one
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed");
+
+        this.threads = threads;
+    }
+    //</editor-fold>
+
+    /**
+     * How a solution was judged
+     */
+    public enum Status {
+        /**
+         * All the moves were made, and all the crates are on diamonds
+         */
+        SOLVED,
+        /**
+         * All the moves were made, but some crates are not on diamonds
+         */
+        NOT_SOLVED,
+        /**
+         * A move could not be made, or it does not push a crate when the notation says it does (or the other way round)
+         */
+        ILLEGAL_MOVE,
+        /**
+         * The moves are not valid LURD
+         */
+        INVALID_NOTATION,
+        /**
+         * There is no level with the given number in the map
+         */
+        UNKNOWN_LEVEL
+    }
+
+    /**
+     * A solution to be verified
+     */
+    public static final class Submission {
+        private final int line;
+        private final int level;
+        private final String lurd;
+
+        /**
+         * @param line  the line of the solutions file, 0 if not read from a file
+         * @param level the index of the level. Range: 0-n.
+         * @param lurd  the moves, in LURD notation
+         */
+        public Submission(int line, int level, String lurd) {
+            this.line = line;
+            this.level = level;
+            this.lurd = lurd;
+        }
+
+        /**
+         * @return the line of the solutions file, 0 if not read from a file
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return the index of the level. Range: 0-n.
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * @return the moves, in LURD notation
+         */
+        public String getLurd() {
+            return lurd;
+        }
+    }
+
+    /**
+     * The outcome of a single solution
+     */
+    public static final class Result {
+        private final Submission submission;
+        private final Status status;
+        private final int movesCount;
+        private final int pushesCount;
+
+        /**
+         * @param submission  the solution
+         * @param status      how it was judged
+         * @param movesCount  the moves made, up to the illegal one if any
+         * @param pushesCount the pushes made
+         */
+        private Result(Submission submission, Status status, int movesCount, int pushesCount) {
+            this.submission = submission;
+            this.status = status;
+            this.movesCount = movesCount;
+            this.pushesCount = pushesCount;
+        }
+
+        /**
+         * @return the solution
+         */
+        public Submission getSubmission() {
+            return submission;
+        }
+
+        /**
+         * @return how the solution was judged
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return {@code true} if the solution solves its level
+         */
+        public boolean isSolved() {
+            return status == Status.SOLVED;
+        }
+
+        /**
+         * @return the moves made, for an {@link Status#ILLEGAL_MOVE} the index of the illegal one
+         */
+        public int getMovesCount() {
+            return movesCount;
+        }
+
+        /**
+         * @return the pushes made
+         */
+        public int getPushesCount() {
+            return pushesCount;
+        }
+    }
+
+    /**
+     * The outcome of a batch of solutions
+     */
+    public static final class Report {
+        private final List<Result> results;
+        private final long nanoseconds;
+        private final long movesCount;
+        private final int solvedCount;
+
+        /**
+         * @param results     the outcome of every solution
+         * @param nanoseconds the time taken
+         */
+        private Report(List<Result> results, long nanoseconds) {
+            this.results = Collections.unmodifiableList(results);
+            this.nanoseconds = nanoseconds;
+
+            long moves = 0;
+            int solved = 0;
+
+            for (Result result : results) {
+                moves += result.movesCount;
+
+                if (result.isSolved())
+                    solved++;
+            }
+
+            this.movesCount = moves;
+            this.solvedCount = solved;
+        }
+
+        /**
+         * @return the outcome of every solution, in the order they were given
+         */
+        public List<Result> getResults() {
+            return results;
+        }
+
+        /**
+         * @return the number of solutions that solve their level
+         */
+        public int getSolvedCount() {
+            return solvedCount;
+        }
+
+        /**
+         * @return the moves made by all the solutions
+         */
+        public long getMovesCount() {
+            return movesCount;
+        }
+
+        /**
+         * @return the time taken, in milliseconds
+         */
+        public long getTime() {
+            return nanoseconds / 1000000;
+        }
+
+        /**
+         * @return the solutions verified per second
+         */
+        public double getSolutionsPerSecond() {
+            return results.size() * 1e9 / Math.max(nanoseconds, 1);
+        }
+
+        /**
+         * @return the moves played per second
+         */
+        public double getMovesPerSecond() {
+            return movesCount * 1e9 / Math.max(nanoseconds, 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d solved, %d moves in %d ms, %.0f solutions/s, %.0f moves/s",
+                    solvedCount, results.size(), movesCount, getTime(), getSolutionsPerSecond(), getMovesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package sokochan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reads the standard XSB (or SOK) text format of the Sokoban collections, translating the levels into the rows of
+ * a SaveFile, see {@link Letters}.
+ * <p>
+ * A board row is made of {@code # $ @ . * +} and floor ({@code space - _}), with at least one wall; rows may have
+ * different lengths, and in SOK files a cell can be preceded by a number of repetitions and rows can be split by
+ * {@code |}. All the other lines are titles and comments: the name of a level is its {@code Title:}, if any, or the
+ * last line before its board that is not a {@code Key: value}.
+ * <p>
+ * The file is split into the blocks of the levels in one pass, the blocks are then translated in parallel.
+ * Short rows are padded and the floor outside the walls becomes wall, so every row starts and ends with a wall as
+ * in a SaveFile.
+ */
+final class XsbParser {
+    // Any "Key: value" line, Title: names the level above it
+    private static final Pattern KEY_VALUE = Pattern.compile("^[A-Za-z][A-Za-z ]*:.*");
+    private static final String TITLE = "title:";
+    // The widest row, as in a binary map: repetitions are never expanded beyond it
+    static final int MAX_WIDTH = 0xFFFF;
+    // The letters of the SaveFile, indexed by the XSB characters
+    private static final char[] LETTERS = new char[128];
+
+    static {
+        LETTERS['#'] = Letters.WALL.getCode();
+        LETTERS[' '] = Letters.TILE.getCode();
+        LETTERS['-'] = Letters.TILE.getCode();
+        LETTERS['_'] = Letters.TILE.getCode();
+        LETTERS['$'] = Letters.CRATE.getCode();
+        LETTERS['@'] = Letters.WAREHOUSE_KEEPER.getCode();
+        LETTERS['.'] = Letters.DIAMOND.getCode();
+        LETTERS['*'] = Letters.CRATE_ON_DIAMOND.getCode();
+        LETTERS['+'] = Letters.WAREHOUSE_KEEPER_ON_DIAMOND.getCode();
+    }
+
+    /**
+     * Static methods only
+     */
+    private XsbParser() {
+    }
+
+    /**
+     * Splits a collection into its levels and translates them, in parallel
+     *
+     * @param text the whole collection
+     * @return the levels, in the order of the file
+     * @throws IllegalArgumentException if a level is not valid, or there are no levels
+     */
+    static List<Block> parse(String text) {
+        List<Block> blocks = split(text);
+
+        if (blocks.isEmpty())
+            throw new IllegalArgumentException("No levels found");
+
+        List<Block> levels = blocks.parallelStream().map(Block::translate).collect(Collectors.toList());
+
+        // Levels with no name are numbered, as most programs do
+        IntStream.range(0, levels.size())
+                .filter(i -> levels.get(i).name == null)
+                .forEach(i -> levels.get(i).name = "Level " + (i + 1));
+
+        return levels;
+    }
+
+    /**
+     * Finds the boards of the levels and their names, with no translation.
+     * Only the lines that are not rows are made into strings, the rows are left in the text.
+     *
+     * @param text the whole collection
+     * @return the levels, with the position of their rows in the text
+     */
+    private static List<Block> split(String text) {
+        List<Block> blocks = new ArrayList<>();
+        Block block = null;
+        String name = null;
+
+        for (int start = 0, end; start < text.length(); start = end + 1) {
+            end = text.indexOf('\n', start);
+
+            if (end < 0)
+                end = text.length();
+
+            // Windows line endings
+            int stop = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+
+            if (isRow(text, start, stop)) {
+                if (block == null) {
+                    block = new Block(blocks.size(), name, text, start);
+                    blocks.add(block);
+                    name = null;
+                }
+
+                block.end = stop;
+                continue;
+            }
+
+            block = null;
+
+            String trimmed = text.substring(start, stop).trim();
+
+            if (trimmed.isEmpty())
+                continue;
+
+            if (KEY_VALUE.matcher(trimmed).matches()) {
+                // The title of the level above
+                if (trimmed.toLowerCase().startsWith(TITLE) && !blocks.isEmpty() && name == null)
+                    blocks.get(blocks.size() - 1).title = trimmed.substring(TITLE.length()).trim();
+            } else {
+                if (trimmed.startsWith(";"))
+                    trimmed = trimmed.substring(1).trim();
+
+                if (!trimmed.isEmpty())
+                    name = trimmed;
+            }
+        }
+
+        return blocks;
+    }
+
+    /**
+     * @param text  the whole collection
+     * @param start the first character of the line
+     * @param end   the end of the line
+     * @return {@code true} if the line is a board row
+     */
+    private static boolean isRow(String text, int start, int end) {
+        boolean wall = false;
+
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+
+            if (c == '#')
+                wall = true;
+            else if (!(c < LETTERS.length && LETTERS[c] != 0 || c >= '0' && c <= '9' || c == '|'))
+                return false;
+        }
+
+        return wall;
+    }
+
+    /**
+     * A level of the collection
+     */
+    static final class Block {
+        private final int index;
+        // The rows in the text of the collection, until translated
+        private final String text;
+        private final int start;
+        private int end;
+        private List<String> rows;
+        private String name;
+        private String title;
+
+        /**
+         * @param index the index of the level in the file
+         * @param name  the line before the board, {@code null} if none
+         * @param text  the whole collection
+         * @param start the first character of the first row
+         */
+        private Block(int index, String name, String text, int start) {
+            this.index = index;
+            this.name = name;
+            this.text = text;
+            this.start = start;
+        }
+
+        /**
+         * Translates the rows of the level into the rows of a SaveFile
+         *
+         * @return this block, with the translated rows
+         * @throws IllegalArgumentException if the level is not valid
+         */
+        private Block translate() {
+            if (title != null && !title.isEmpty())
+                name = title;
+
+            List<char[]> expanded = new ArrayList<>();
+            char[] row = new char[16];
+            int length = 0;
+            int repetitions = 0;
+            int width = 0;
+
+            for (int i = start; i <= end; i++) {
+                char c = i < end ? text.charAt(i) : '\n';
+
+                if (c == '\n' || c == '\r' || c == '|') {
+                    // Windows line endings, or the end of a row
+                    if (c == '\r')
+                        continue;
+
+                    // Trailing floor is outside the level
+                    while (length > 0 && row[length - 1] == Letters.TILE.getCode())
+                        length--;
+
+                    expanded.add(Arrays.copyOf(row, length));
+                    width = Math.max(width, length);
+                    length = 0;
+                    repetitions = 0;
+                } else if (c >= '0' && c <= '9') {
+                    repetitions = repetitions * 10 + c - '0';
+
+                    // Checked at every digit, so that the count never overflows
+                    if (repetitions > MAX_WIDTH)
+                        throw error("more than " + MAX_WIDTH + " repetitions");
+                } else {
+                    int n = Math.max(repetitions, 1);
+
+                    if (n > MAX_WIDTH - length)
+                        throw error("a row is wider than " + MAX_WIDTH);
+
+                    if (length + n > row.length)
+                        row = Arrays.copyOf(row, Math.max(row.length * 2, length + n));
+
+                    Arrays.fill(row, length, length + n, LETTERS[c]);
+                    length += n;
+                    repetitions = 0;
+                }
+            }
+
+            if (width == 0)
+                throw error("empty board");
+
+            char[][] cells = new char[expanded.size()][];
+
+            for (int y = 0; y < cells.length; y++) {
+                cells[y] = Arrays.copyOf(expanded.get(y), width);
+                Arrays.fill(cells[y], expanded.get(y).length, width, Letters.TILE.getCode());
+            }
+
+            fillOutside(cells);
+
+            int keepers = 0;
+
+            rows = new ArrayList<>(cells.length);
+
+            for (char[] cellsRow : cells) {
+                for (char c : cellsRow) {
+                    if (c == Letters.WAREHOUSE_KEEPER.getCode() || c == Letters.WAREHOUSE_KEEPER_ON_DIAMOND.getCode())
+                        keepers++;
+                }
+
+                rows.add(new String(cellsRow));
+            }
+
+            if (keepers != 1)
+                throw error(keepers + " warehouse keepers");
+
+            return this;
+        }
+
+        /**
+         * Turns into walls the floor that can be reached from the edge of the board without crossing a wall
+         *
+         * @param cells the board
+         * @throws IllegalArgumentException if anything but floor is outside the walls
+         */
+        private void fillOutside(char[][] cells) {
+            int height = cells.length;
+            int width = cells[0].length;
+            int[] stack = new int[width * height];
+            int size = 0;
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if ((x == 0 || y == 0 || x == width - 1 || y == height - 1) && cells[y][x] != Letters.WALL.getCode())
+                        size = visit(cells, x, y, stack, size);
+                }
+            }
+
+            while (size > 0) {
+                int cell = stack[--size];
+                int x = cell % width;
+                int y = cell / width;
+
+                if (x > 0)
+                    size = visit(cells, x - 1, y, stack, size);
+                if (x < width - 1)
+                    size = visit(cells, x + 1, y, stack, size);
+                if (y > 0)
+                    size = visit(cells, x, y - 1, stack, size);
+                if (y < height - 1)
+                    size = visit(cells, x, y + 1, stack, size);
+            }
+        }
+
+        /**
+         * Walls a cell outside the level, if it is not walled yet
+         *
+         * @return the new size of the stack
+         */
+        private int visit(char[][] cells, int x, int y, int[] stack, int size) {
+            char c = cells[y][x];
+
+            if (c == Letters.WALL.getCode())
+                return size;
+
+            if (c != Letters.TILE.getCode())
+                throw error("the walls are open around '" + c + "' at " + x + "," + y);
+
+            cells[y][x] = Letters.WALL.getCode();
+            stack[size] = y * cells[0].length + x;
+
+            return size + 1;
+        }
+
+        /**
+         * @param reason what is wrong with the level
+         * @return an exception naming the level
+         */
+        private IllegalArgumentException error(String reason) {
+            return new IllegalArgumentException("Level " + (index + 1) + (name != null ? " (" + name + ")" : "")
+                    + ": " + reason);
+        }
+
+        /**
+         * @return the name of the level
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return the rows of the level, as in a SaveFile
+         */
+        List<String> getRows() {
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package sokochan.solver;
+
+import sokochan.Board;
+import sokochan.Direction;
+import sokochan.FreezeDetector;
+import sokochan.Reachability;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * A* search over pushes. Every node is a position reached right after a push, and its successors are all the
+ * pushes the keeper can reach without pushing anything else.
+ */
+final class AStarSearch {
+    // Object header, fields and crates array of a node
+    private static final int NODE_OVERHEAD = 96;
+
+    private final SearchSpace space;
+    private final Metric metric;
+    private final Heuristic heuristic;
+    private final long nodeLimit;
+    private final SolverStatistics statistics;
+    // Lowest cost each state has been reached with
+    private final TranspositionTable costs;
+    private long nodesCount;
+
+    /**
+     * @param space      the level to search
+     * @param metric     what to minimise
+     * @param heuristic  lower bound of the pushes left
+     * @param nodeLimit  maximum number of nodes to expand
+     * @param statistics where to count nodes
+     * @param table      where to store the cost of the visited states
+     */
+    AStarSearch(SearchSpace space, Metric metric, Heuristic heuristic, long nodeLimit, SolverStatistics statistics,
+                TranspositionTable table) {
+        this.space = space;
+        this.metric = metric;
+        this.heuristic = heuristic;
+        this.nodeLimit = nodeLimit;
+        this.statistics = statistics;
+        this.costs = table;
+    }
+
+    /**
+     * @return the solution, or a failed one if the level is unsolvable or the limit has been reached
+     */
+    Solution search() {
+        Board board = space.getBoard();
+        Reachability fill = new Reachability(board);
+        Reachability successorFill = new Reachability(board);
+        FreezeDetector freeze = new FreezeDetector(board);
+
+        PriorityQueue<Node> open = new PriorityQueue<>();
+
+        long[] initialCrates = space.getInitialCrates();
+        int h = heuristic.reset(initialCrates);
+
+        if (h == Heuristic.DEADLOCK)
+            return finish(Solution.Status.UNSOLVABLE, null);
+
+        long cratesHash = space.hashCrates(initialCrates);
+        int warehouseKeeper = space.getInitialWarehouseKeeper();
+        Node root = new Node(null, initialCrates, warehouseKeeper, cratesHash,
+                stateHash(board, cratesHash, warehouseKeeper, initialCrates, fill), -1, null,
+                space.getInitialCratesOnDiamond(), 0, h);
+
+        open.add(root);
+        costs.storeIfBetter(root.hash, 0);
+        nodesCount++;
+
+        while (!open.isEmpty()) {
+            Node node = open.poll();
+
+            // A cheaper path to this state has been found after this node was queued
+            int known = costs.get(node.hash);
+
+            if (known != TranspositionTable.MISSING && known < node.cost)
+                continue;
+
+            if (node.cratesOnDiamond == space.getCratesCount())
+                return finish(Solution.Status.SOLVED, node);
+
+            if (statistics.getExpandedNodes() >= nodeLimit)
+                return finish(Solution.Status.LIMIT_REACHED, null);
+
+            statistics.expanded();
+            fill.fill(node.crates, node.warehouseKeeper);
+            heuristic.reset(node.crates);
+
+            for (int i = 0; i < node.crates.length; i++) {
+                long word = node.crates[i];
+
+                while (word != 0) {
+                    int crate = (i << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+
+                    for (Direction direction : SearchSpace.DIRECTIONS) {
+                        int offset = board.getOffset(direction);
+                        int target = crate + offset;
+
+                        if (!fill.isReachable(crate - offset) || board.isWall(target)
+                                || SearchSpace.hasCrate(node.crates, target) || board.isDeadSquare(target))
+                            continue;
+
+                        long[] crates = node.crates.clone();
+                        SearchSpace.moveCrate(crates, crate, target);
+
+                        if (freeze.isDeadlocked(crates, target))
+                            continue;
+
+                        // Estimated from the matching of the node, then the node is restored
+                        int estimate = heuristic.update(crate, target);
+                        heuristic.update(target, crate);
+
+                        if (estimate == Heuristic.DEADLOCK)
+                            continue;
+
+                        int cost = node.cost + (metric == Metric.MOVES ? fill.getDistance(crate - offset) + 1 : 1);
+                        long successorCratesHash = node.cratesHash ^ board.getCrateKey(crate) ^ board.getCrateKey(target);
+                        long hash = stateHash(board, successorCratesHash, crate, crates, successorFill);
+
+                        statistics.generated();
+
+                        if (!costs.storeIfBetter(hash, cost))
+                            continue;
+
+                        int cratesOnDiamond = node.cratesOnDiamond
+                                - (board.isDiamond(crate) ? 1 : 0) + (board.isDiamond(target) ? 1 : 0);
+
+                        nodesCount++;
+                        open.add(new Node(node, crates, crate, successorCratesHash, hash, crate, direction,
+                                cratesOnDiamond, cost, estimate));
+                    }
+                }
+            }
+        }
+
+        return finish(Solution.Status.UNSOLVABLE, null);
+    }
+
+    /**
+     * Gives the key of a state. When minimising pushes the keeper is normalised to its reachable area,
+     * when minimising moves its exact position matters.
+     *
+     * @param board           the board
+     * @param cratesHash      the hash of the crates
+     * @param warehouseKeeper the cell of the keeper
+     * @param crates          the bitset of the crates
+     * @param fill            the fill to use to normalise the keeper
+     * @return the hash of the state
+     */
+    private long stateHash(Board board, long cratesHash, int warehouseKeeper, long[] crates, Reachability fill) {
+        if (metric == Metric.MOVES)
+            return cratesHash ^ board.getWarehouseKeeperKey(warehouseKeeper);
+
+        return cratesHash ^ board.getWarehouseKeeperKey(fill.fill(crates, warehouseKeeper));
+    }
+
+    /**
+     * Builds the result of the search
+     *
+     * @param status how the search ended
+     * @param goal   the solved node, or {@code null}
+     * @return the solution
+     */
+    private Solution finish(Solution.Status status, Node goal) {
+        statistics.setStoredStates(nodesCount, NODE_OVERHEAD + 8 * space.getInitialCrates().length);
+        statistics.setTable(costs);
+
+        if (goal == null)
+            return new Solution(status, new ArrayList<>(), 0, statistics);
+
+        int pushes = 0;
+
+        for (Node n = goal; n.parent != null; n = n.parent)
+            pushes++;
+
+        int[] pushedCrates = new int[pushes];
+        Direction[] directions = new Direction[pushes];
+
+        int i = pushes;
+        for (Node n = goal; n.parent != null; n = n.parent) {
+            i--;
+            pushedCrates[i] = n.pushedCrate;
+            directions[i] = n.direction;
+        }
+
+        return new Solution(status, space.toMoves(pushedCrates, directions, pushes), pushes, statistics);
+    }
+
+    /**
+     * A position reached by a push
+     */
+    private static final class Node implements Comparable<Node> {
+        private final Node parent;
+        private final long[] crates;
+        private final int warehouseKeeper;
+        private final long cratesHash;
+        private final long hash;
+        // The push that led here
+        private final int pushedCrate;
+        private final Direction direction;
+        private final int cratesOnDiamond;
+        private final int cost;
+        private final int estimate;
+
+        private Node(Node parent, long[] crates, int warehouseKeeper, long cratesHash, long hash, int pushedCrate,
+                     Direction direction, int cratesOnDiamond, int cost, int estimate) {
+            this.parent = parent;
+            this.crates = crates;
+            this.warehouseKeeper = warehouseKeeper;
+            this.cratesHash = cratesHash;
+            this.hash = hash;
+            this.pushedCrate = pushedCrate;
+            this.direction = direction;
+            this.cratesOnDiamond = cratesOnDiamond;
+            this.cost = cost;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            int f = cost + estimate;
+            int otherF = o.cost + o.estimate;
+
+            if (f != otherF)
+                return Integer.compare(f, otherF);
+
+            // On ties prefer the nodes closer to the goal
+            return Integer.compare(estimate, o.estimate);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package sokochan.solver;
+
+/**
+ * A lower bound of the number of pushes still needed to solve a position.
+ * <p>
+ * A heuristic follows the search: it is {@link #reset(long[]) reset} on a position, then told about every push
+ * made or undone, so that it can update its estimate without looking at the whole position again.
+ * An instance keeps the state of one search path, threads need their own {@link #copy()}.
+ */
+interface Heuristic {
+    /**
+     * Returned when the crates can no longer be all placed on diamonds
+     */
+    int DEADLOCK = Integer.MAX_VALUE;
+
+    /**
+     * Starts following a position
+     *
+     * @param crates the bitset of the crates
+     * @return a lower bound of the pushes needed, or {@link #DEADLOCK}
+     */
+    int reset(long[] crates);
+
+    /**
+     * Updates the estimate after a crate of the followed position has been moved, also to undo a push
+     *
+     * @param from the cell of the crate
+     * @param to   where the crate has been moved
+     * @return a lower bound of the pushes needed, or {@link #DEADLOCK}
+     */
+    int update(int from, int to);
+
+    /**
+     * @return a new instance for the same level, not following any position yet
+     */
+    Heuristic copy();
+}
@@ -0,0 +1,225 @@
+package sokochan.solver;
+
+import sokochan.Board;
+import sokochan.Direction;
+import sokochan.FreezeDetector;
+import sokochan.Reachability;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Iterative deepening A* over pushes. Each iteration is a depth first search that cuts every path whose estimated
+ * cost goes over a threshold; the next iteration raises the threshold to the smallest cost that has been cut.
+ * <p>
+ * Only the current path is kept, plus a table of the states visited in the current iteration, so that
+ * transpositions are not searched twice.
+ */
+final class IdaStarSearch {
+    private final SearchSpace space;
+    private final Metric metric;
+    private final Heuristic heuristic;
+    private final long nodeLimit;
+    private final SolverStatistics statistics;
+    private final Board board;
+    private final TranspositionTable visited;
+
+    // The current path
+    private final long[] crates;
+    private int warehouseKeeper;
+    private long cratesHash;
+    private int cratesOnDiamond;
+    private int[] pushedCrates = new int[64];
+    private Direction[] directions = new Direction[64];
+
+    // Successors of every depth, as crate * 4 + direction ordinal, and their cost
+    private final ArrayList<int[]> successors = new ArrayList<>();
+    private final ArrayList<int[]> successorCosts = new ArrayList<>();
+    private final Reachability fill;
+    private final FreezeDetector freeze;
+
+    private int threshold;
+    private int nextThreshold;
+    private boolean limitReached;
+    private int solutionLength;
+
+    /**
+     * @param space      the level to search
+     * @param metric     what to minimise
+     * @param heuristic  lower bound of the pushes left
+     * @param nodeLimit  maximum number of nodes to expand
+     * @param statistics where to count nodes
+     * @param table      where to store the states visited in an iteration
+     */
+    IdaStarSearch(SearchSpace space, Metric metric, Heuristic heuristic, long nodeLimit, SolverStatistics statistics,
+                  TranspositionTable table) {
+        this.space = space;
+        this.metric = metric;
+        this.heuristic = heuristic;
+        this.nodeLimit = nodeLimit;
+        this.statistics = statistics;
+        this.visited = table;
+        this.board = space.getBoard();
+        this.crates = space.getInitialCrates();
+        this.fill = new Reachability(board);
+        this.freeze = new FreezeDetector(board);
+    }
+
+    /**
+     * @return the solution, or a failed one if the level is unsolvable or the limit has been reached
+     */
+    Solution search() {
+        warehouseKeeper = space.getInitialWarehouseKeeper();
+        cratesHash = space.hashCrates(crates);
+        cratesOnDiamond = space.getInitialCratesOnDiamond();
+
+        int estimate = heuristic.reset(crates);
+        threshold = estimate;
+
+        while (estimate != Heuristic.DEADLOCK) {
+            visited.clear();
+            nextThreshold = Integer.MAX_VALUE;
+
+            if (search(0, 0, estimate))
+                return finish(Solution.Status.SOLVED);
+
+            if (limitReached)
+                return finish(Solution.Status.LIMIT_REACHED);
+
+            if (nextThreshold == Integer.MAX_VALUE)
+                break;
+
+            threshold = nextThreshold;
+        }
+
+        return finish(Solution.Status.UNSOLVABLE);
+    }
+
+    /**
+     * Depth first search from the current position
+     *
+     * @param depth    number of pushes made so far
+     * @param cost     cost of the path so far
+     * @param estimate lower bound of the pushes left
+     * @return {@code true} if solved, the path is left in {@link #pushedCrates} and {@link #directions}
+     */
+    private boolean search(int depth, int cost, int estimate) {
+        int f = cost + estimate;
+
+        if (f > threshold) {
+            nextThreshold = Math.min(nextThreshold, f);
+            return false;
+        }
+
+        if (cratesOnDiamond == space.getCratesCount()) {
+            solutionLength = depth;
+            return true;
+        }
+
+        if (statistics.getExpandedNodes() >= nodeLimit) {
+            limitReached = true;
+            return false;
+        }
+
+        int normalized = fill.fill(crates, warehouseKeeper);
+        long hash = cratesHash ^ board.getWarehouseKeeperKey(metric == Metric.MOVES ? warehouseKeeper : normalized);
+
+        if (!visited.storeIfBetter(hash, cost))
+            return false;
+
+        statistics.expanded();
+
+        int count = collectSuccessors(depth);
+        int[] moves = successors.get(depth);
+        int[] costs = successorCosts.get(depth);
+        int position = warehouseKeeper;
+
+        for (int i = 0; i < count; i++) {
+            int crate = moves[i] >> 2;
+            Direction direction = SearchSpace.DIRECTIONS[moves[i] & 3];
+            int target = crate + board.getOffset(direction);
+
+            push(crate, target);
+
+            int successorEstimate = heuristic.update(crate, target);
+
+            if (successorEstimate != Heuristic.DEADLOCK) {
+                statistics.generated();
+                record(depth, crate, direction);
+
+                if (search(depth + 1, cost + costs[i], successorEstimate))
+                    return true;
+            }
+
+            push(target, crate);
+            heuristic.update(target, crate);
+            warehouseKeeper = position;
+
+            if (limitReached)
+                return false;
+        }
+
+        return false;
+    }
+
+    /**
+     * Lists the pushes available from the current position, using the fill of the current position
+     *
+     * @param depth the depth whose buffers to fill
+     * @return the number of pushes
+     */
+    private int collectSuccessors(int depth) {
+        if (successors.size() == depth) {
+            successors.add(new int[4 * space.getCratesCount()]);
+            successorCosts.add(new int[4 * space.getCratesCount()]);
+        }
+
+        return space.collectPushes(crates, fill, freeze, metric, successors.get(depth), successorCosts.get(depth));
+    }
+
+    /**
+     * Moves a crate on the current path and the keeper behind it
+     *
+     * @param from the cell of the crate
+     * @param to   where to move it
+     */
+    private void push(int from, int to) {
+        SearchSpace.moveCrate(crates, from, to);
+        cratesHash ^= board.getCrateKey(from) ^ board.getCrateKey(to);
+        cratesOnDiamond += (board.isDiamond(to) ? 1 : 0) - (board.isDiamond(from) ? 1 : 0);
+        warehouseKeeper = from;
+    }
+
+    /**
+     * Stores a push of the current path
+     *
+     * @param depth     the index of the push in the path
+     * @param crate     the cell of the pushed crate
+     * @param direction the direction of the push
+     */
+    private void record(int depth, int crate, Direction direction) {
+        if (depth == pushedCrates.length) {
+            pushedCrates = Arrays.copyOf(pushedCrates, depth * 2);
+            directions = Arrays.copyOf(directions, depth * 2);
+        }
+
+        pushedCrates[depth] = crate;
+        directions[depth] = direction;
+    }
+
+    /**
+     * Builds the result of the search
+     *
+     * @param status how the search ended
+     * @return the solution
+     */
+    private Solution finish(Solution.Status status) {
+        statistics.setStoredStates(visited.getSize(), 0);
+        statistics.setTable(visited);
+
+        if (status != Solution.Status.SOLVED)
+            return new Solution(status, new ArrayList<>(), 0, statistics);
+
+        return new Solution(status, space.toMoves(pushedCrates, directions, solutionLength), solutionLength, statistics);
+    }
+}
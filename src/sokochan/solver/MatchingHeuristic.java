@@ -0,0 +1,197 @@
+package sokochan.solver;
+
+import java.util.Arrays;
+
+/**
+ * The minimum total of pushes needed to take every crate to its own diamond, ignoring the other crates: a minimum
+ * cost perfect matching between crates and diamonds, with the distances of {@link PushDistances} as costs.
+ * Unlike a sum of the distances to the closest diamond no diamond is counted twice, so the bound is much tighter.
+ * <p>
+ * The matching is found with the Hungarian algorithm, keeping the dual potentials of rows (crates) and columns
+ * (diamonds). Extra rows that cost nothing make the problem square when there are more diamonds than crates.
+ * After a push only the row of the pushed crate changes: it is unmatched and a single augmenting path is searched
+ * from it, in O(n<sup>2</sup>), reusing the assignment and the potentials of all the other crates instead of solving
+ * again in O(n<sup>3</sup>).
+ */
+final class MatchingHeuristic implements Heuristic {
+    // Cost of matching a crate with a diamond it cannot reach, higher than any real matching
+    private static final long UNREACHABLE = PushDistances.UNREACHABLE;
+    private static final long INFINITY = Long.MAX_VALUE / 4;
+
+    private final PushDistances distances;
+    private final int diamondsCount;
+
+    // Rows and columns are 1 based, 0 is the virtual column the augmenting paths start from
+    private int size;
+    private int cratesCount;
+    // The cell of the crate of every row
+    private int[] crates;
+    private long[] rowPotentials;
+    private long[] columnPotentials;
+    // The row matched with every column, 0 if none
+    private int[] columnRows;
+    // Work arrays of the augmenting path search
+    private long[] slack;
+    private int[] previousColumn;
+    private boolean[] used;
+
+    /**
+     * @param distances the push distances of the level
+     */
+    MatchingHeuristic(PushDistances distances) {
+        this.distances = distances;
+        this.diamondsCount = distances.getDiamonds().length;
+    }
+
+    @Override
+    public int reset(long[] crates) {
+        int count = 0;
+
+        for (long word : crates)
+            count += Long.bitCount(word);
+
+        if (this.crates == null || count != cratesCount)
+            allocate(count);
+
+        int row = 1;
+
+        for (int i = 0; i < crates.length; i++) {
+            for (long word = crates[i]; word != 0; word &= word - 1)
+                this.crates[row++] = (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        Arrays.fill(rowPotentials, 0);
+        Arrays.fill(columnPotentials, 0);
+        Arrays.fill(columnRows, 0);
+
+        for (row = 1; row <= size; row++)
+            augment(row);
+
+        return estimate();
+    }
+
+    @Override
+    public int update(int from, int to) {
+        int row = 1;
+
+        while (crates[row] != from)
+            row++;
+
+        crates[row] = to;
+
+        for (int column = 1; column <= size; column++) {
+            if (columnRows[column] == row) {
+                columnRows[column] = 0;
+                break;
+            }
+        }
+
+        augment(row);
+
+        return estimate();
+    }
+
+    @Override
+    public Heuristic copy() {
+        return new MatchingHeuristic(distances);
+    }
+
+    /**
+     * @param count the number of crates
+     */
+    private void allocate(int count) {
+        cratesCount = count;
+        size = Math.max(count, diamondsCount);
+        crates = new int[size + 1];
+        rowPotentials = new long[size + 1];
+        columnPotentials = new long[size + 1];
+        columnRows = new int[size + 1];
+        slack = new long[size + 1];
+        previousColumn = new int[size + 1];
+        used = new boolean[size + 1];
+    }
+
+    /**
+     * @param row    the row, a crate or an extra row
+     * @param column the column, a diamond or an extra column
+     * @return the cost of matching them
+     */
+    private long cost(int row, int column) {
+        if (row > cratesCount)
+            return 0;
+
+        if (column > diamondsCount)
+            return UNREACHABLE;
+
+        return distances.getDistance(column - 1, crates[row]);
+    }
+
+    /**
+     * Matches a free row, along the augmenting path of lowest reduced cost.
+     * The potential of the row does not need to be valid, it is set by the first step of the search.
+     *
+     * @param row the free row
+     */
+    private void augment(int row) {
+        columnRows[0] = row;
+        Arrays.fill(slack, INFINITY);
+        Arrays.fill(used, false);
+
+        int column = 0;
+
+        do {
+            used[column] = true;
+
+            int current = columnRows[column];
+            long delta = INFINITY;
+            int next = 0;
+
+            for (int j = 1; j <= size; j++) {
+                if (used[j])
+                    continue;
+
+                long reduced = cost(current, j) - rowPotentials[current] - columnPotentials[j];
+
+                if (reduced < slack[j]) {
+                    slack[j] = reduced;
+                    previousColumn[j] = column;
+                }
+
+                if (slack[j] < delta) {
+                    delta = slack[j];
+                    next = j;
+                }
+            }
+
+            for (int j = 0; j <= size; j++) {
+                if (used[j]) {
+                    rowPotentials[columnRows[j]] += delta;
+                    columnPotentials[j] -= delta;
+                } else {
+                    slack[j] -= delta;
+                }
+            }
+
+            column = next;
+        } while (columnRows[column] != 0);
+
+        // Flip the matching along the path
+        do {
+            int previous = previousColumn[column];
+            columnRows[column] = columnRows[previous];
+            column = previous;
+        } while (column != 0);
+    }
+
+    /**
+     * @return the cost of the current matching, or {@link #DEADLOCK} if it needs a crate to reach an unreachable diamond
+     */
+    private int estimate() {
+        long total = 0;
+
+        for (int column = 1; column <= size; column++)
+            total += cost(columnRows[column], column);
+
+        return total >= UNREACHABLE ? DEADLOCK : (int) total;
+    }
+}
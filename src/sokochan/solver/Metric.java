@@ -0,0 +1,15 @@
+package sokochan.solver;
+
+/**
+ * What a {@link Solver} minimises
+ */
+public enum Metric {
+    /**
+     * The number of times a crate is pushed
+     */
+    PUSHES,
+    /**
+     * The number of steps made by the warehouse keeper, pushes included
+     */
+    MOVES
+}
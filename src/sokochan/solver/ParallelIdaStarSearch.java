@@ -0,0 +1,347 @@
+package sokochan.solver;
+
+import sokochan.Board;
+import sokochan.Direction;
+import sokochan.FreezeDetector;
+import sokochan.Reachability;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The same search of {@link IdaStarSearch}, run by a {@link ForkJoinPool}. Every iteration starts from a single
+ * task; a task searches depth first, and forks its successors into new tasks whenever the pool runs out of queued
+ * work, so that idle threads can steal them. All the threads share the {@link TranspositionTable} of visited states.
+ * <p>
+ * Any solution found within the threshold of an iteration is optimal, like in the sequential search.
+ */
+final class ParallelIdaStarSearch {
+    // How many nodes a task expands before adding them to the shared counter
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private final SearchSpace space;
+    private final Metric metric;
+    private final Heuristic heuristic;
+    private final long nodeLimit;
+    private final SolverStatistics statistics;
+    private final int threads;
+    private final Board board;
+
+    private final TranspositionTable visited;
+    private final AtomicLong expandedNodes = new AtomicLong();
+    private final AtomicReference<Task> solution = new AtomicReference<>();
+    private final AtomicInteger nextThreshold = new AtomicInteger();
+    private final ThreadLocal<Reachability> fills;
+    private final ThreadLocal<FreezeDetector> freezeDetectors;
+    private volatile boolean limitReached;
+    private int threshold;
+
+    /**
+     * @param space      the level to search
+     * @param metric     what to minimise
+     * @param heuristic  lower bound of the pushes left, every task uses its own copy
+     * @param nodeLimit  maximum number of nodes to expand
+     * @param statistics where to count nodes
+     * @param threads    the number of threads of the pool
+     * @param table      where to store the states visited in an iteration, shared by all the threads
+     */
+    ParallelIdaStarSearch(SearchSpace space, Metric metric, Heuristic heuristic, long nodeLimit,
+                          SolverStatistics statistics, int threads, TranspositionTable table) {
+        this.space = space;
+        this.metric = metric;
+        this.heuristic = heuristic;
+        this.nodeLimit = nodeLimit;
+        this.statistics = statistics;
+        this.threads = threads;
+        this.visited = table;
+        this.board = space.getBoard();
+        this.fills = ThreadLocal.withInitial(() -> new Reachability(board));
+        this.freezeDetectors = ThreadLocal.withInitial(() -> new FreezeDetector(board));
+    }
+
+    /**
+     * @return the solution, or a failed one if the level is unsolvable or the limit has been reached
+     */
+    Solution search() {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            long[] crates = space.getInitialCrates();
+            int estimate = heuristic.reset(crates);
+            threshold = estimate;
+
+            while (estimate != Heuristic.DEADLOCK) {
+                visited.clear();
+                nextThreshold.set(Integer.MAX_VALUE);
+
+                Task root = new Task(crates.clone(), space.getInitialWarehouseKeeper(), space.hashCrates(crates),
+                        space.getInitialCratesOnDiamond(), new int[0], new Direction[0], 0, 0, estimate);
+
+                pool.invoke(root);
+
+                if (solution.get() != null)
+                    return finish(Solution.Status.SOLVED);
+
+                if (limitReached)
+                    return finish(Solution.Status.LIMIT_REACHED);
+
+                if (nextThreshold.get() == Integer.MAX_VALUE)
+                    break;
+
+                threshold = nextThreshold.get();
+            }
+
+            return finish(Solution.Status.UNSOLVABLE);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the result of the search
+     *
+     * @param status how the search ended
+     * @return the solution
+     */
+    private Solution finish(Solution.Status status) {
+        statistics.setStoredStates(visited.getSize(), 0);
+        statistics.setTable(visited);
+
+        if (status != Solution.Status.SOLVED)
+            return new Solution(status, new ArrayList<>(), 0, statistics);
+
+        Task task = solution.get();
+        List<Direction> moves = space.toMoves(task.pushedCrates, task.directions, task.depth);
+
+        return new Solution(status, moves, task.depth, statistics);
+    }
+
+    /**
+     * @return {@code true} if the search should stop
+     */
+    private boolean isStopped() {
+        return limitReached || solution.get() != null;
+    }
+
+    /**
+     * A depth first search from a position, with its own copy of the position and of the path leading to it
+     */
+    private final class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] crates;
+        private int warehouseKeeper;
+        private long cratesHash;
+        private int cratesOnDiamond;
+        private int[] pushedCrates;
+        private Direction[] directions;
+        private final int rootDepth;
+        private final int rootCost;
+        private final int rootEstimate;
+
+        // Filled only when the task finds the solution
+        private int depth;
+
+        // Successors of every depth below the root of the task
+        private final List<int[]> successors = new ArrayList<>();
+        private final List<int[]> successorCosts = new ArrayList<>();
+        private long expanded;
+        private long generated;
+        // Follows the position of the task, created by the thread running it
+        private Heuristic taskHeuristic;
+
+        private Task(long[] crates, int warehouseKeeper, long cratesHash, int cratesOnDiamond, int[] pushedCrates,
+                     Direction[] directions, int depth, int cost, int estimate) {
+            this.crates = crates;
+            this.warehouseKeeper = warehouseKeeper;
+            this.cratesHash = cratesHash;
+            this.cratesOnDiamond = cratesOnDiamond;
+            this.pushedCrates = pushedCrates;
+            this.directions = directions;
+            this.rootDepth = depth;
+            this.rootCost = cost;
+            this.rootEstimate = estimate;
+        }
+
+        @Override
+        protected void compute() {
+            taskHeuristic = heuristic.copy();
+            taskHeuristic.reset(crates);
+
+            search(rootDepth, rootCost, rootEstimate);
+            flush();
+        }
+
+        /**
+         * Adds the local counters to the shared ones
+         */
+        private void flush() {
+            statistics.add(expanded, generated);
+
+            if (expandedNodes.addAndGet(expanded) >= nodeLimit)
+                limitReached = true;
+
+            expanded = 0;
+            generated = 0;
+        }
+
+        /**
+         * Depth first search from the current position of the task
+         *
+         * @param depth    number of pushes made so far
+         * @param cost     cost of the path so far
+         * @param estimate lower bound of the pushes left
+         * @return {@code true} if solved
+         */
+        private boolean search(int depth, int cost, int estimate) {
+            int f = cost + estimate;
+
+            if (f > threshold) {
+                nextThreshold.accumulateAndGet(f, Math::min);
+                return false;
+            }
+
+            if (cratesOnDiamond == space.getCratesCount()) {
+                this.depth = depth;
+                solution.compareAndSet(null, this);
+                return true;
+            }
+
+            if (isStopped())
+                return false;
+
+            Reachability fill = fills.get();
+            int normalized = fill.fill(crates, warehouseKeeper);
+            long hash = cratesHash ^ board.getWarehouseKeeperKey(metric == Metric.MOVES ? warehouseKeeper : normalized);
+
+            if (!visited.storeIfBetter(hash, cost))
+                return false;
+
+            if (++expanded == FLUSH_INTERVAL)
+                flush();
+
+            int level = depth - rootDepth;
+
+            if (successors.size() == level) {
+                successors.add(new int[4 * space.getCratesCount()]);
+                successorCosts.add(new int[4 * space.getCratesCount()]);
+            }
+
+            int[] moves = successors.get(level);
+            int[] costs = successorCosts.get(level);
+            int count = space.collectPushes(crates, fill, freezeDetectors.get(), metric, moves, costs);
+
+            // Other threads are idle: hand the successors over to the pool
+            if (getSurplusQueuedTaskCount() < 1 && count > 1) {
+                fork(depth, cost, moves, costs, count);
+                return false;
+            }
+
+            int position = warehouseKeeper;
+
+            for (int i = 0; i < count; i++) {
+                int crate = moves[i] >> 2;
+                Direction direction = SearchSpace.DIRECTIONS[moves[i] & 3];
+                int target = crate + board.getOffset(direction);
+
+                push(crate, target);
+
+                int successorEstimate = taskHeuristic.update(crate, target);
+
+                if (successorEstimate != Heuristic.DEADLOCK) {
+                    generated++;
+                    record(depth, crate, direction);
+
+                    if (search(depth + 1, cost + costs[i], successorEstimate))
+                        return true;
+                }
+
+                push(target, crate);
+                taskHeuristic.update(target, crate);
+                warehouseKeeper = position;
+
+                if (isStopped())
+                    return false;
+            }
+
+            return false;
+        }
+
+        /**
+         * Searches every successor in a new task, and waits for all of them
+         *
+         * @param depth the depth of the current position
+         * @param cost  the cost of the current position
+         * @param moves the successors
+         * @param costs the cost of each successor
+         * @param count the number of successors
+         */
+        private void fork(int depth, int cost, int[] moves, int[] costs, int count) {
+            List<Task> tasks = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                int crate = moves[i] >> 2;
+                Direction direction = SearchSpace.DIRECTIONS[moves[i] & 3];
+                int target = crate + board.getOffset(direction);
+                int successorEstimate = taskHeuristic.update(crate, target);
+                taskHeuristic.update(target, crate);
+
+                if (successorEstimate == Heuristic.DEADLOCK)
+                    continue;
+
+                long[] successor = crates.clone();
+                SearchSpace.moveCrate(successor, crate, target);
+
+                generated++;
+
+                int[] successorPushedCrates = Arrays.copyOf(pushedCrates, depth + 1);
+                Direction[] successorDirections = Arrays.copyOf(directions, depth + 1);
+                successorPushedCrates[depth] = crate;
+                successorDirections[depth] = direction;
+
+                tasks.add(new Task(successor, crate,
+                        cratesHash ^ board.getCrateKey(crate) ^ board.getCrateKey(target),
+                        cratesOnDiamond + (board.isDiamond(target) ? 1 : 0) - (board.isDiamond(crate) ? 1 : 0),
+                        successorPushedCrates, successorDirections, depth + 1, cost + costs[i], successorEstimate));
+            }
+
+            invokeAll(tasks);
+        }
+
+        /**
+         * Moves a crate on the current path and the keeper behind it
+         *
+         * @param from the cell of the crate
+         * @param to   where to move it
+         */
+        private void push(int from, int to) {
+            SearchSpace.moveCrate(crates, from, to);
+            cratesHash ^= board.getCrateKey(from) ^ board.getCrateKey(to);
+            cratesOnDiamond += (board.isDiamond(to) ? 1 : 0) - (board.isDiamond(from) ? 1 : 0);
+            warehouseKeeper = from;
+        }
+
+        /**
+         * Stores a push of the current path
+         *
+         * @param depth     the index of the push in the path
+         * @param crate     the cell of the pushed crate
+         * @param direction the direction of the push
+         */
+        private void record(int depth, int crate, Direction direction) {
+            if (depth >= pushedCrates.length) {
+                pushedCrates = Arrays.copyOf(pushedCrates, Math.max(16, depth * 2));
+                directions = Arrays.copyOf(directions, Math.max(16, depth * 2));
+            }
+
+            pushedCrates[depth] = crate;
+            directions[depth] = direction;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package sokochan.solver;
+
+import sokochan.Board;
+import sokochan.Direction;
+
+import java.util.Arrays;
+
+/**
+ * For every diamond of a {@link Board}, the minimum number of pushes needed to take a crate from any cell to it,
+ * ignoring the other crates. Computed once per level, by pulling a crate away from each diamond.
+ */
+final class PushDistances {
+    /**
+     * Distance of the cells from which a crate cannot reach a diamond
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+    private final int[] diamonds;
+    private final int[][] distances;
+
+    /**
+     * @param board the board to compute the distances for
+     */
+    PushDistances(Board board) {
+        int cellsCount = board.getCellsCount();
+
+        diamonds = new int[board.getDiamondsCount()];
+
+        int count = 0;
+
+        for (int cell = 0; cell < cellsCount; cell++) {
+            if (board.isDiamond(cell))
+                diamonds[count++] = cell;
+        }
+
+        distances = new int[diamonds.length][];
+
+        int[] queue = new int[cellsCount];
+
+        for (int i = 0; i < diamonds.length; i++)
+            distances[i] = pull(board, diamonds[i], queue);
+    }
+
+    /**
+     * Breadth first search of the cells a crate can be pulled to from a diamond.
+     * A crate is pulled from a cell to its neighbour if both the neighbour and the cell after it are not walls.
+     *
+     * @param board   the board
+     * @param diamond the cell of the diamond
+     * @param queue   a work array, as large as the board
+     * @return the push distance of every cell from the diamond
+     */
+    private static int[] pull(Board board, int diamond, int[] queue) {
+        int[] distance = new int[board.getCellsCount()];
+        Arrays.fill(distance, UNREACHABLE);
+
+        int head = 0;
+        int tail = 0;
+
+        distance[diamond] = 0;
+        queue[tail++] = diamond;
+
+        while (head < tail) {
+            int cell = queue[head++];
+
+            for (Direction direction : Direction.values()) {
+                int offset = board.getOffset(direction);
+                int crate = cell + offset;
+
+                if (distance[crate] != UNREACHABLE || board.isWall(crate) || board.isWall(crate + offset))
+                    continue;
+
+                distance[crate] = distance[cell] + 1;
+                queue[tail++] = crate;
+            }
+        }
+
+        return distance;
+    }
+
+    /**
+     * @return the cells of the diamonds, in index order
+     */
+    int[] getDiamonds() {
+        return diamonds;
+    }
+
+    /**
+     * @param diamond index of the diamond in {@link #getDiamonds()}
+     * @param cell    the cell of the crate
+     * @return the number of pushes needed to take the crate to the diamond, or {@link #UNREACHABLE}
+     */
+    int getDistance(int diamond, int cell) {
+        return distances[diamond][cell];
+    }
+}
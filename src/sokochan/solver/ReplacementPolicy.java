@@ -0,0 +1,20 @@
+package sokochan.solver;
+
+/**
+ * What a {@link TranspositionTable} does when a new state falls in a bucket that is already full
+ */
+public enum ReplacementPolicy {
+    /**
+     * The new state always takes the place of one of the states in the bucket
+     */
+    ALWAYS,
+    /**
+     * The new state replaces the state with the highest cost, if that is higher than its own.
+     * States close to the start of the search cut bigger subtrees, so they are kept.
+     */
+    HIGHEST_COST,
+    /**
+     * The new state is not stored
+     */
+    NEVER
+}
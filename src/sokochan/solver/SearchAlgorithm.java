@@ -0,0 +1,15 @@
+package sokochan.solver;
+
+/**
+ * The search algorithms available to the {@link Solver}
+ */
+public enum SearchAlgorithm {
+    /**
+     * Best first search. Fast, but keeps every visited state in memory.
+     */
+    A_STAR,
+    /**
+     * Iterative deepening A*. Depth first, so it only keeps the current path and a table of visited states.
+     */
+    IDA_STAR
+}
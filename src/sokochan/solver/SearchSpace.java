@@ -0,0 +1,210 @@
+package sokochan.solver;
+
+import sokochan.Board;
+import sokochan.BoardState;
+import sokochan.Direction;
+import sokochan.FreezeDetector;
+import sokochan.Reachability;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What every search needs to know about a level: the {@link Board}, the initial position of crates and keeper,
+ * the push distances, and how to turn a sequence of pushes back into keeper moves.
+ * <p>
+ * States are represented by a bitset of crates and the cell of the keeper, as in {@link BoardState}.
+ */
+final class SearchSpace {
+    /**
+     * All the directions, in ordinal order
+     */
+    static final Direction[] DIRECTIONS = Direction.values();
+
+    private final Board board;
+    private final PushDistances distances;
+    private final long[] initialCrates;
+    private final int initialWarehouseKeeper;
+    private final int cratesCount;
+    private final int initialCratesOnDiamond;
+
+    /**
+     * @param state the position to search from, it is copied
+     */
+    SearchSpace(BoardState state) {
+        board = state.getBoard();
+        distances = new PushDistances(board);
+        initialCrates = state.getCrates();
+        initialWarehouseKeeper = state.getWarehouseKeeper();
+        cratesCount = state.getCratesCount();
+        initialCratesOnDiamond = state.getCratesOnDiamondCount();
+    }
+
+    /**
+     * @param crates the bitset of the crates
+     * @param cell   the cell index
+     * @return {@code true} if there is a crate on the cell
+     */
+    static boolean hasCrate(long[] crates, int cell) {
+        return (crates[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Moves a crate in a bitset
+     *
+     * @param crates the bitset of the crates
+     * @param from   the cell of the crate
+     * @param to     the free cell where to put it
+     */
+    static void moveCrate(long[] crates, int from, int to) {
+        crates[from >>> 6] &= ~(1L << from);
+        crates[to >>> 6] |= 1L << to;
+    }
+
+    /**
+     * @param crates the bitset of the crates
+     * @return the Zobrist hash of the crates, as in {@link BoardState#getCratesHash()}
+     */
+    long hashCrates(long[] crates) {
+        long hash = 0;
+
+        for (int i = 0; i < crates.length; i++) {
+            long word = crates[i];
+
+            while (word != 0) {
+                hash ^= board.getCrateKey((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Lists the pushes the keeper can make without pushing anything else first.
+     * Pushes onto cells from which the crate can no longer reach a diamond, or that freeze it away from a diamond,
+     * are left out.
+     *
+     * @param crates the bitset of the crates, restored before returning
+     * @param fill   a fill of the cells reachable by the keeper
+     * @param freeze the detector of freeze deadlocks for the current thread
+     * @param metric what the search minimises, gives the cost of the pushes
+     * @param pushes where to store the pushes, as the cell of the crate * 4 + the ordinal of the direction
+     * @param costs  where to store the cost of each push
+     * @return the number of pushes
+     */
+    int collectPushes(long[] crates, Reachability fill, FreezeDetector freeze, Metric metric, int[] pushes, int[] costs) {
+        int count = 0;
+
+        for (int i = 0; i < crates.length; i++) {
+            long word = crates[i];
+
+            while (word != 0) {
+                int crate = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+
+                for (Direction direction : DIRECTIONS) {
+                    int offset = board.getOffset(direction);
+                    int target = crate + offset;
+
+                    if (!fill.isReachable(crate - offset) || board.isWall(target) || hasCrate(crates, target)
+                            || board.isDeadSquare(target))
+                        continue;
+
+                    moveCrate(crates, crate, target);
+                    boolean frozen = freeze.isDeadlocked(crates, target);
+                    moveCrate(crates, target, crate);
+
+                    if (frozen)
+                        continue;
+
+                    pushes[count] = crate << 2 | direction.ordinal();
+                    costs[count] = metric == Metric.MOVES ? fill.getDistance(crate - offset) + 1 : 1;
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Turns a sequence of pushes into the moves of the keeper, walking along the shortest path before each push
+     *
+     * @param pushedCrates the cell of the crate before each push
+     * @param directions   the direction of each push
+     * @param count        the number of pushes
+     * @return the moves of the keeper
+     */
+    List<Direction> toMoves(int[] pushedCrates, Direction[] directions, int count) {
+        List<Direction> moves = new ArrayList<>();
+        long[] crates = initialCrates.clone();
+        int warehouseKeeper = initialWarehouseKeeper;
+        Reachability fill = new Reachability(board);
+
+        for (int i = 0; i < count; i++) {
+            int offset = board.getOffset(directions[i]);
+            int crate = pushedCrates[i];
+
+            fill.fill(crates, warehouseKeeper);
+            walk(fill, crate - offset, moves);
+
+            moves.add(directions[i]);
+            moveCrate(crates, crate, crate + offset);
+            warehouseKeeper = crate;
+        }
+
+        return moves;
+    }
+
+    /**
+     * Appends the shortest walk to a cell reached by a fill
+     *
+     * @param fill   a fill started from the keeper
+     * @param target the cell to walk to
+     * @param moves  where to append the moves
+     */
+    private void walk(Reachability fill, int target, List<Direction> moves) {
+        int start = moves.size();
+        int cell = target;
+
+        // Walk backwards, always to a cell one step closer to the keeper
+        while (fill.getDistance(cell) > 0) {
+            for (Direction direction : DIRECTIONS) {
+                int previous = cell - board.getOffset(direction);
+
+                if (fill.isReachable(previous) && fill.getDistance(previous) == fill.getDistance(cell) - 1) {
+                    moves.add(start, direction);
+                    cell = previous;
+                    break;
+                }
+            }
+        }
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+    Board getBoard() {
+        return board;
+    }
+
+    PushDistances getDistances() {
+        return distances;
+    }
+
+    long[] getInitialCrates() {
+        return initialCrates.clone();
+    }
+
+    int getInitialWarehouseKeeper() {
+        return initialWarehouseKeeper;
+    }
+
+    int getCratesCount() {
+        return cratesCount;
+    }
+
+    int getInitialCratesOnDiamond() {
+        return initialCratesOnDiamond;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,89 @@
+package sokochan.solver;
+
+import sokochan.Direction;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a {@link Solver}: the moves to solve the level, if found, and the statistics of the search
+ */
+public final class Solution {
+    private final Status status;
+    private final List<Direction> moves;
+    private final int pushesCount;
+    private final SolverStatistics statistics;
+
+    /**
+     * @param status      how the search ended
+     * @param moves       the moves of the keeper, empty if not solved
+     * @param pushesCount how many of the moves push a crate
+     * @param statistics  the statistics of the search
+     */
+    Solution(Status status, List<Direction> moves, int pushesCount, SolverStatistics statistics) {
+        this.status = status;
+        this.moves = Collections.unmodifiableList(moves);
+        this.pushesCount = pushesCount;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @return how the search ended
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return {@code true} if a solution has been found
+     */
+    public boolean isSolved() {
+        return status == Status.SOLVED;
+    }
+
+    /**
+     * @return the sequence of moves that solves the level, to be given to {@link sokochan.SokochanEngine#movePlayer(Direction)}
+     */
+    public List<Direction> getMoves() {
+        return moves;
+    }
+
+    /**
+     * @return the number of moves of the solution
+     */
+    public int getMovesCount() {
+        return moves.size();
+    }
+
+    /**
+     * @return the number of pushes of the solution
+     */
+    public int getPushesCount() {
+        return pushesCount;
+    }
+
+    /**
+     * @return the statistics of the search
+     */
+    public SolverStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * How a search ended
+     */
+    public enum Status {
+        /**
+         * A solution has been found
+         */
+        SOLVED,
+        /**
+         * The whole search space has been explored, there is no solution
+         */
+        UNSOLVABLE,
+        /**
+         * The search has been stopped after expanding the maximum number of nodes
+         */
+        LIMIT_REACHED
+    }
+}
@@ -0,0 +1,184 @@
+package sokochan.solver;
+
+import sokochan.BoardState;
+import sokochan.MapLoader;
+
+import java.util.ArrayList;
+
+/**
+ * Finds the solution of a level, optimal for the chosen {@link Metric}.
+ * <p>
+ * The search runs on a copy of the compact state of the level, so neither the {@link sokochan.SokochanGrid}
+ * nor the {@link sokochan.SokochanEngine} are touched. A solver can be run several times, even with different
+ * settings.
+ */
+public final class Solver {
+    /**
+     * Maximum number of expanded nodes, unless changed with {@link #setNodeLimit(long)}
+     */
+    public static final long DEFAULT_NODE_LIMIT = 5000000;
+    /**
+     * Size of the transposition table in megabytes, unless changed with {@link #setTableSize(int)}
+     */
+    public static final int DEFAULT_TABLE_SIZE = 16;
+
+    private final SearchSpace space;
+    private Metric metric = Metric.PUSHES;
+    private SearchAlgorithm algorithm = SearchAlgorithm.A_STAR;
+    private long nodeLimit = DEFAULT_NODE_LIMIT;
+    private int threads = 1;
+    private int tableSize = DEFAULT_TABLE_SIZE;
+    private ReplacementPolicy replacementPolicy = ReplacementPolicy.HIGHEST_COST;
+
+    /**
+     * Creates a solver for a level from its initial position
+     *
+     * @param level the level to solve
+     */
+    public Solver(MapLoader.Level level) {
+        this(BoardState.parse(level));
+    }
+
+    /**
+     * Creates a solver for the given position, e.g. the current state of a {@link sokochan.SokochanEngine}
+     *
+     * @param state the position to solve, it is copied
+     */
+    public Solver(BoardState state) {
+        space = new SearchSpace(state);
+    }
+
+    /**
+     * Searches for a solution
+     *
+     * @return the solution, check {@link Solution#isSolved()} before using its moves
+     */
+    public Solution solve() {
+        SolverStatistics statistics = new SolverStatistics();
+        Heuristic heuristic = new MatchingHeuristic(space.getDistances());
+        TranspositionTable table = new TranspositionTable(tableSize, replacementPolicy);
+
+        long start = System.nanoTime();
+
+        Solution solution;
+
+        if (space.getInitialWarehouseKeeper() < 0) // Nobody to push the crates
+            solution = new Solution(Solution.Status.UNSOLVABLE, new ArrayList<>(), 0, statistics);
+        else if (algorithm == SearchAlgorithm.IDA_STAR && threads > 1)
+            solution = new ParallelIdaStarSearch(space, metric, heuristic, nodeLimit, statistics, threads, table).search();
+        else if (algorithm == SearchAlgorithm.IDA_STAR)
+            solution = new IdaStarSearch(space, metric, heuristic, nodeLimit, statistics, table).search();
+        else
+            solution = new AStarSearch(space, metric, heuristic, nodeLimit, statistics, table).search();
+
+        statistics.setElapsedTime(System.nanoTime() - start);
+
+        return solution;
+    }
+
+    //<editor-fold desc="Getters and Setters" defaultstate="collapsed">
+
+    /**
+     * @return what the solver minimises
+     */
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * @param metric what the solver minimises, pushes by default
+     */
+    public void setMetric(Metric metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * @return the search algorithm used
+     */
+    public SearchAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @param algorithm the search algorithm to use, A* by default
+     */
+    public void setAlgorithm(SearchAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @return the maximum number of nodes expanded before giving up
+     */
+    public long getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * @param nodeLimit the maximum number of nodes expanded before giving up
+     * @throws IllegalArgumentException if not positive
+     */
+    public void setNodeLimit(long nodeLimit) {
+        if (nodeLimit < 1)
+            throw new IllegalArgumentException("The node limit must be positive.");
+
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * @return the number of threads used by the search
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads of the search. With more than one thread {@link SearchAlgorithm#IDA_STAR}
+     * runs on a work-stealing {@link java.util.concurrent.ForkJoinPool}; {@link SearchAlgorithm#A_STAR} is
+     * always single threaded.
+     *
+     * @param threads the number of threads, 1 by default
+     * @throws IllegalArgumentException if not positive
+     */
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is needed.");
+
+        this.threads = threads;
+    }
+
+    /**
+     * @return the size of the transposition table, in megabytes
+     */
+    public int getTableSize() {
+        return tableSize;
+    }
+
+    /**
+     * Sets the size of the {@link TranspositionTable} of the visited states, allocated off-heap at every search
+     *
+     * @param tableSize the size in megabytes, {@value #DEFAULT_TABLE_SIZE} by default
+     * @throws IllegalArgumentException if not between 1 and {@link TranspositionTable#MAX_SIZE}
+     */
+    public void setTableSize(int tableSize) {
+        if (tableSize < 1 || tableSize > TranspositionTable.MAX_SIZE)
+            throw new IllegalArgumentException("The size of the table must be between 1 and "
+                    + TranspositionTable.MAX_SIZE + " MB.");
+
+        this.tableSize = tableSize;
+    }
+
+    /**
+     * @return what the transposition table does when full
+     */
+    public ReplacementPolicy getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    /**
+     * @param replacementPolicy what the transposition table does when full, {@link ReplacementPolicy#HIGHEST_COST} by default
+     */
+    public void setReplacementPolicy(ReplacementPolicy replacementPolicy) {
+        this.replacementPolicy = replacementPolicy;
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,146 @@
+package sokochan.solver;
+
+/**
+ * Counters collected by a {@link Solver} while searching
+ */
+public final class SolverStatistics {
+    private long expandedNodes;
+    private long generatedNodes;
+    private long storedStates;
+    private long bytesPerState;
+    private long elapsedTime;
+    private long tableHits;
+    private long tableMisses;
+    private long tableCollisions;
+    private long tableMemory;
+
+    /**
+     * Counts a state whose successors have been generated
+     */
+    void expanded() {
+        expandedNodes++;
+    }
+
+    /**
+     * Counts a successor state
+     */
+    void generated() {
+        generatedNodes++;
+    }
+
+    /**
+     * Adds the counters of one of the threads of a parallel search
+     *
+     * @param expanded  the number of states expanded
+     * @param generated the number of successor states
+     */
+    synchronized void add(long expanded, long generated) {
+        expandedNodes += expanded;
+        generatedNodes += generated;
+    }
+
+    /**
+     * @param storedStates  the number of states held in memory at the end of the search
+     * @param bytesPerState an estimate of the memory used by each of them
+     */
+    void setStoredStates(long storedStates, long bytesPerState) {
+        this.storedStates = storedStates;
+        this.bytesPerState = bytesPerState;
+    }
+
+    /**
+     * Copies the counters of the transposition table used by the search
+     *
+     * @param table the table
+     */
+    void setTable(TranspositionTable table) {
+        tableHits = table.getHits();
+        tableMisses = table.getMisses();
+        tableCollisions = table.getCollisions();
+        tableMemory = table.getMemory();
+    }
+
+    /**
+     * @param elapsedTime duration of the search in nanoseconds
+     */
+    void setElapsedTime(long elapsedTime) {
+        this.elapsedTime = elapsedTime;
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the number of states whose successors have been generated
+     */
+    public long getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return the number of successor states generated
+     */
+    public long getGeneratedNodes() {
+        return generatedNodes;
+    }
+
+    /**
+     * @return the number of states held in memory by the search
+     */
+    public long getStoredStates() {
+        return storedStates;
+    }
+
+    /**
+     * @return an estimate of the memory used by the stored states, in bytes, the transposition table included
+     */
+    public long getEstimatedMemory() {
+        return storedStates * bytesPerState + tableMemory;
+    }
+
+    /**
+     * @return the number of lookups in the transposition table that found the state
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * @return the number of lookups in the transposition table that did not find the state
+     */
+    public long getTableMisses() {
+        return tableMisses;
+    }
+
+    /**
+     * @return the number of new states that found their bucket of the transposition table full
+     */
+    public long getTableCollisions() {
+        return tableCollisions;
+    }
+
+    /**
+     * @return the duration of the search in nanoseconds
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * @return the number of expanded nodes per second
+     */
+    public double getNodesPerSecond() {
+        if (elapsedTime == 0)
+            return 0;
+
+        return expandedNodes * 1e9 / elapsedTime;
+    }
+    //</editor-fold>
+
+    @Override
+    public String toString() {
+        return String.format("%d expanded, %d generated, %.0f nodes/s, %d states stored (~%d KiB), " +
+                        "table %d hits %d misses %d collisions, %d ms",
+                expandedNodes, generatedNodes, getNodesPerSecond(), storedStates, getEstimatedMemory() / 1024,
+                tableHits, tableMisses, tableCollisions, elapsedTime / 1000000);
+    }
+}
@@ -0,0 +1,282 @@
+package sokochan.solver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A table of the lowest cost each state has been reached with, keyed by the hash of the state, e.g.
+ * {@link sokochan.BoardState#getHash()}.
+ * <p>
+ * The entries are stored off-heap, in a direct {@link ByteBuffer} of fixed size, so a large table neither fills the
+ * heap nor slows down the garbage collector. The table is split in buckets of {@value #BUCKET_SIZE} entries, as big
+ * as a cache line; a state can only be stored in the bucket given by its hash, and when the bucket is full the
+ * {@link ReplacementPolicy} decides what to drop. Losing a state only means it may be searched again.
+ * <p>
+ * Every entry is 16 bytes: the hash, the cost, and the generation it was stored in. {@link #clear()} just starts a
+ * new generation, so the entries of the previous ones are seen as empty.
+ * <p>
+ * The table can be shared by several threads: every bucket is guarded by one of {@value #STRIPES} locks.
+ */
+public final class TranspositionTable {
+    /**
+     * Returned by {@link #get(long)} for states not in the table
+     */
+    public static final int MISSING = -1;
+    /**
+     * Largest size of a table, in megabytes
+     */
+    public static final int MAX_SIZE = 1024;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int BUCKET_SIZE = 4;
+    private static final int BUCKET_BYTES = ENTRY_BYTES * BUCKET_SIZE;
+    private static final int STRIPES = 64;
+
+    private final ByteBuffer entries;
+    private final int bucketMask;
+    private final ReplacementPolicy policy;
+    private final Object[] locks = new Object[STRIPES];
+    // Counters of every stripe, guarded by its lock
+    private final long[] hits = new long[STRIPES];
+    private final long[] misses = new long[STRIPES];
+    private final long[] collisions = new long[STRIPES];
+    private final long[] replacements = new long[STRIPES];
+    private final long[] sizes = new long[STRIPES];
+    private volatile int generation = 1;
+
+    /**
+     * @param megabytes the size of the table, the number of entries is rounded down to a power of two
+     * @param policy    what to do when a bucket is full
+     * @throws IllegalArgumentException if the size is not between 1 and {@link #MAX_SIZE}
+     */
+    public TranspositionTable(int megabytes, ReplacementPolicy policy) {
+        if (megabytes < 1 || megabytes > MAX_SIZE)
+            throw new IllegalArgumentException("The size of the table must be between 1 and " + MAX_SIZE + " MB.");
+
+        int buckets = Integer.highestOneBit((megabytes << 20) / BUCKET_BYTES);
+
+        this.entries = ByteBuffer.allocateDirect(buckets * BUCKET_BYTES).order(ByteOrder.nativeOrder());
+        this.bucketMask = buckets - 1;
+        this.policy = policy;
+
+        for (int i = 0; i < STRIPES; i++)
+            locks[i] = new Object();
+    }
+
+    /**
+     * @param hash the hash of a state
+     * @return the lowest cost stored for the state, or {@link #MISSING}
+     */
+    public int get(long hash) {
+        final int bucket = bucket(hash);
+        final int stripe = bucket & (STRIPES - 1);
+
+        synchronized (locks[stripe]) {
+            final int current = generation;
+
+            for (int entry = bucket * BUCKET_BYTES, end = entry + BUCKET_BYTES; entry < end; entry += ENTRY_BYTES) {
+                if (entries.getInt(entry + 12) == current && entries.getLong(entry) == hash) {
+                    hits[stripe]++;
+                    return entries.getInt(entry + 8);
+                }
+            }
+
+            misses[stripe]++;
+            return MISSING;
+        }
+    }
+
+    /**
+     * Stores the cost a state has been reached with, unless it has already been reached at a lower or equal cost.
+     * As a single atomic operation, it lets threads sharing the table claim the states they are going to search.
+     *
+     * @param hash the hash of the state
+     * @param cost the cost of the path to the state, not negative
+     * @return {@code true} if the state is new or its cost has improved, i.e. if it should be searched
+     */
+    public boolean storeIfBetter(long hash, int cost) {
+        final int bucket = bucket(hash);
+        final int stripe = bucket & (STRIPES - 1);
+
+        synchronized (locks[stripe]) {
+            final int current = generation;
+            final int start = bucket * BUCKET_BYTES;
+            int empty = -1;
+
+            for (int entry = start; entry < start + BUCKET_BYTES; entry += ENTRY_BYTES) {
+                if (entries.getInt(entry + 12) != current) {
+                    if (empty < 0)
+                        empty = entry;
+                } else if (entries.getLong(entry) == hash) {
+                    hits[stripe]++;
+
+                    if (entries.getInt(entry + 8) <= cost)
+                        return false;
+
+                    entries.putInt(entry + 8, cost);
+                    return true;
+                }
+            }
+
+            misses[stripe]++;
+
+            if (empty >= 0) {
+                write(empty, hash, cost, current);
+                sizes[stripe]++;
+                return true;
+            }
+
+            collisions[stripe]++;
+
+            int victim = victim(start, hash, cost);
+
+            if (victim >= 0) {
+                write(victim, hash, cost, current);
+                replacements[stripe]++;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Empties the table, in constant time
+     */
+    public void clear() {
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (locks[i]) {
+                sizes[i] = 0;
+            }
+        }
+
+        generation++;
+    }
+
+    /**
+     * @param hash the hash of a state
+     * @return the bucket of the state
+     */
+    private int bucket(long hash) {
+        // The low bits of the Zobrist keys are as random as the high ones, mixing is still cheap insurance
+        return (int) (hash ^ (hash >>> 32)) & bucketMask;
+    }
+
+    /**
+     * Chooses the entry of a full bucket to replace
+     *
+     * @param start the offset of the bucket
+     * @param hash  the hash of the new state
+     * @param cost  the cost of the new state
+     * @return the offset of the entry to replace, or -1 if the new state should not be stored
+     */
+    private int victim(int start, long hash, int cost) {
+        switch (policy) {
+            case ALWAYS:
+                // Bits not used to choose the bucket
+                return start + (int) (hash >>> 62) * ENTRY_BYTES;
+            case HIGHEST_COST:
+                int victim = -1;
+                int highest = cost;
+
+                for (int entry = start; entry < start + BUCKET_BYTES; entry += ENTRY_BYTES) {
+                    if (entries.getInt(entry + 8) > highest) {
+                        highest = entries.getInt(entry + 8);
+                        victim = entry;
+                    }
+                }
+
+                return victim;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Writes an entry
+     *
+     * @param entry      the offset of the entry
+     * @param hash       the hash of the state
+     * @param cost       the cost of the state
+     * @param generation the current generation
+     */
+    private void write(int entry, long hash, int cost, int generation) {
+        entries.putLong(entry, hash);
+        entries.putInt(entry + 8, cost);
+        entries.putInt(entry + 12, generation);
+    }
+
+    /**
+     * @param counters a counter of every stripe
+     * @return the sum of the counters
+     */
+    private long sum(long[] counters) {
+        long sum = 0;
+
+        for (int i = 0; i < STRIPES; i++) {
+            synchronized (locks[i]) {
+                sum += counters[i];
+            }
+        }
+
+        return sum;
+    }
+
+    //<editor-fold desc="Getters" defaultstate="collapsed">
+
+    /**
+     * @return the number of states that can be stored
+     */
+    public long getCapacity() {
+        return (long) (bucketMask + 1) * BUCKET_SIZE;
+    }
+
+    /**
+     * @return the memory used by the entries, in bytes
+     */
+    public long getMemory() {
+        return entries.capacity();
+    }
+
+    /**
+     * @return the policy used when a bucket is full
+     */
+    public ReplacementPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of states stored since the last {@link #clear()}
+     */
+    public long getSize() {
+        return sum(sizes);
+    }
+
+    /**
+     * @return the number of lookups that found the state
+     */
+    public long getHits() {
+        return sum(hits);
+    }
+
+    /**
+     * @return the number of lookups that did not find the state
+     */
+    public long getMisses() {
+        return sum(misses);
+    }
+
+    /**
+     * @return the number of new states that found their bucket full
+     */
+    public long getCollisions() {
+        return sum(collisions);
+    }
+
+    /**
+     * @return the number of states dropped to make room for new ones
+     */
+    public long getReplacements() {
+        return sum(replacements);
+    }
+    //</editor-fold>
+}
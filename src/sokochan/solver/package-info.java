@@ -0,0 +1,5 @@
+/**
+ * A solver for Sokochan levels, working on the compact {@link sokochan.Board} and {@link sokochan.BoardState}
+ * rather than on the {@link sokochan.SokochanGrid} of objects
+ */
+package sokochan.solver;
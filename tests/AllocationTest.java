@@ -0,0 +1,53 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Direction;
+import sokochan.SokochanEngine;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that moving, pushing and undoing allocate nothing, also when the {@link sokochan.SokochanGrid} is kept in sync
+ */
+@SuppressWarnings("JavaDoc")
+public class AllocationTest {
+    private static final int CYCLES = 20000;
+
+    @Test
+    public void moveAndUndo() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test8.skb"));
+
+        // Warm up, and let the history reach its full size
+        cycles(engine, CYCLES);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+
+        cycles(engine, CYCLES);
+
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals("Back to the start", 0, engine.getPushesCount());
+        assertTrue("Allocated " + allocated + " bytes", allocated < CYCLES);
+    }
+
+    /**
+     * A push, moves around the crate, a move against the wall, all undone at the end
+     */
+    private void cycles(SokochanEngine engine, int count) {
+        Direction[] moves = {Direction.WEST, Direction.NORTH, Direction.NORTH, Direction.NORTH, Direction.EAST};
+
+        for (int i = 0; i < count; i++) {
+            for (Direction direction : moves)
+                engine.movePlayer(direction);
+
+            for (int j = 0; j < moves.length; j++)
+                engine.undo();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Board;
+import sokochan.BoardState;
+import sokochan.Direction;
+import sokochan.GridObjects.Crate;
+import sokochan.GridObjects.WarehouseKeeper;
+import sokochan.Reachability;
+import sokochan.SokochanEngine;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link BoardState} tests
+ */
+@SuppressWarnings("JavaDoc")
+public class BoardStateTest {
+    private BoardState loadState(String path) throws Exception {
+        return new SokochanEngine(new File(path), false).getBoardState();
+    }
+
+    @Test
+    public void parse() throws Exception {
+        BoardState state = loadState("tests/testlevels/test1.skb");
+        Board board = state.getBoard();
+
+        assertEquals("Width", 20, board.X_SIZE);
+        assertEquals("Height", 7, board.Y_SIZE);
+        assertEquals("Keeper position", board.index(10, 1), state.getWarehouseKeeper());
+        assertTrue("Crate", state.hasCrate(board.index(9, 1)));
+        assertTrue("Wall", board.isWall(board.index(0, 0)));
+        assertTrue("Diamond", board.isDiamond(board.index(8, 1)));
+        assertEquals("Crates", 4, state.getCratesCount());
+        assertEquals("Crates on diamond", 3, state.getCratesOnDiamondCount());
+    }
+
+    @Test
+    public void paddingIsWall() throws Exception {
+        Board board = loadState("tests/testlevels/test1.skb").getBoard();
+
+        assertTrue("Left of the level", board.isWall(board.index(-1, 3)));
+        assertTrue("Above the level", board.isWall(board.index(5, -1)));
+        assertTrue("Below the level", board.isWall(board.index(5, board.Y_SIZE)));
+        assertEquals("Coordinates round trip", 7, board.getX(board.index(7, 4)));
+        assertEquals("Coordinates round trip", 4, board.getY(board.index(7, 4)));
+    }
+
+    @Test
+    public void move() throws Exception {
+        BoardState state = loadState("tests/testlevels/test1.skb");
+
+        assertEquals("Push on diamond", WarehouseKeeper.MOVE_PUSHED_ON_DIAMOND, state.move(Direction.WEST));
+        assertEquals("Push off diamond", WarehouseKeeper.MOVE_PUSHED_OFF_DIAMOND, state.move(Direction.WEST));
+        assertEquals("Crates on diamond", 3, state.getCratesOnDiamondCount());
+        assertEquals("Two crates in a row", WarehouseKeeper.MOVE_FAILED, state.move(Direction.SOUTH));
+        assertEquals("Moving into a wall", WarehouseKeeper.MOVE_FAILED, state.move(Direction.NORTH));
+        assertEquals("Simple move", WarehouseKeeper.MOVE_NOT_PUSHED, state.move(Direction.EAST));
+    }
+
+    @Test
+    public void undo() throws Exception {
+        BoardState state = loadState("tests/testlevels/test1.skb");
+        Board board = state.getBoard();
+
+        state.move(Direction.WEST);
+        state.undo(Direction.WEST, true);
+
+        assertEquals("Keeper restored", board.index(10, 1), state.getWarehouseKeeper());
+        assertTrue("Crate restored", state.hasCrate(board.index(9, 1)));
+        assertFalse("Crate removed", state.hasCrate(board.index(8, 1)));
+        assertEquals("Crates on diamond restored", 3, state.getCratesOnDiamondCount());
+    }
+
+    @Test
+    public void lazyGridView() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"), false);
+
+        engine.movePlayer(Direction.WEST);
+        engine.movePlayer(Direction.WEST);
+        engine.undo();
+
+        assertEquals("Headless moves", 1, engine.getMovesCount());
+        assertEquals("The grid is built from the state", WarehouseKeeper.class,
+                engine.getSokochanGrid().getGridObject(9, 1).getClass());
+
+        engine.undo();
+
+        assertEquals("The grid is kept in sync", Crate.class, engine.getSokochanGrid().getGridObject(9, 1).getClass());
+        assertEquals("The grid is kept in sync", WarehouseKeeper.class, engine.getSokochanGrid().getGridObject(10, 1).getClass());
+    }
+
+    @Test
+    public void deadSquares() throws Exception {
+        Board board = loadState("tests/testlevels/test8.skb").getBoard();
+
+        assertTrue("Corner", board.isDeadSquare(board.index(1, 1)));
+        assertTrue("Along a wall without diamonds", board.isDeadSquare(board.index(10, 1)));
+        assertFalse("Next to a diamond", board.isDeadSquare(board.index(8, 2)));
+        assertFalse("Diamond", board.isDeadSquare(board.index(7, 2)));
+        assertFalse("Middle of the room", board.isDeadSquare(board.index(10, 3)));
+        assertFalse("Walls are not dead squares", board.isDeadSquare(board.index(0, 0)));
+    }
+
+    @Test
+    public void cratesOnDeadSquare() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test8.skb"), false);
+
+        // Push the top crate out of its row, then up against the wall, where it is stuck
+        Direction[] moves = {Direction.NORTH, Direction.NORTH, Direction.WEST, Direction.WEST, Direction.SOUTH,
+                Direction.EAST, Direction.NORTH, Direction.EAST, Direction.EAST, Direction.SOUTH, Direction.SOUTH,
+                Direction.WEST};
+
+        for (Direction direction : moves)
+            assertTrue(engine.movePlayer(direction));
+
+        assertEquals("Not stuck yet", 0, engine.getCratesOnDeadSquareCount());
+
+        engine.movePlayer(Direction.NORTH);
+
+        assertEquals("Crate against the wall", 1, engine.getCratesOnDeadSquareCount());
+
+        engine.undo();
+
+        assertEquals("Undone", 0, engine.getCratesOnDeadSquareCount());
+
+        engine.setRefusingDeadSquarePushes(true);
+
+        assertFalse("Push refused", engine.movePlayer(Direction.NORTH));
+        assertEquals("Nothing moved", 0, engine.getCratesOnDeadSquareCount());
+    }
+
+    @Test
+    public void freezeDeadlock() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test12.skb"), false);
+
+        assertFalse("Nothing frozen yet", engine.isDeadlocked());
+
+        // Close a square of four crates, none of them on a diamond
+        engine.movePlayer(Direction.WEST);
+
+        assertTrue("Square of crates", engine.isDeadlocked());
+        assertEquals("No dead squares involved", 0, engine.getCratesOnDeadSquareCount());
+
+        engine.undo();
+
+        assertFalse("Undone", engine.isDeadlocked());
+        assertFalse("Full scan", engine.getBoardState().hasFreezeDeadlock());
+    }
+
+    @Test
+    public void reachability() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test12.skb"), false);
+        BoardState state = engine.getBoardState();
+        Board board = state.getBoard();
+        Reachability reachability = state.getReachability();
+
+        assertTrue("Keeper", engine.isReachable(6, 3));
+        assertTrue("Around the crates", engine.isReachable(1, 1));
+        assertFalse("Crate", engine.isReachable(3, 2));
+        assertFalse("Wall", engine.isReachable(0, 0));
+        assertEquals("Every free cell", 8 * 6 - 4, reachability.getReachedCount());
+        assertEquals("Top-left-most", board.index(1, 1), state.getNormalizedWarehouseKeeper());
+        assertEquals("Walking", 7, reachability.getDistance(board.index(1, 1)));
+
+        long hash = state.getHash();
+
+        engine.movePlayer(Direction.SOUTH);
+
+        assertSame("Filled again", reachability, state.getReachability());
+        assertEquals("Same area", hash, state.getHash());
+        assertEquals("From the new position", 8, reachability.getDistance(board.index(1, 1)));
+    }
+}
@@ -0,0 +1,141 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Direction;
+import sokochan.GridObjects.Crate;
+import sokochan.GridObjects.Diamond;
+import sokochan.GridObjects.TileGridObject;
+import sokochan.LevelCache;
+import sokochan.SokochanEngine;
+import sokochan.SokochanGrid;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LevelCache}
+ */
+@SuppressWarnings("JavaDoc")
+public class LevelCacheTest {
+    @Test
+    public void hitsAndEvictions() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("src/maps/SampleGame.skb"), false);
+        LevelCache cache = new LevelCache(2);
+
+        engine.setLevelCache(cache);
+
+        engine.loadLevel(0);
+        engine.loadLevel(1);
+        engine.loadLevel(0);
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+
+        // Level 1 is the least recently used
+        engine.loadLevel(2);
+        engine.loadLevel(0);
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+
+        engine.loadLevel(1);
+
+        assertEquals(4, cache.getMisses());
+        assertEquals(2 / 6.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void resetKeepsGrid() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+        engine.setLevelCache(new LevelCache(LevelCache.DEFAULT_CAPACITY));
+        engine.loadLevel(0);
+
+        long initial = engine.getStateHash();
+        SokochanGrid grid = engine.getSokochanGrid();
+
+        for (Direction direction : Direction.values())
+            engine.movePlayer(direction);
+
+        engine.movePlayer(Direction.WEST);
+        engine.movePlayer(Direction.WEST);
+
+        assertNotEquals(initial, engine.getStateHash());
+
+        engine.loadLevel(0);
+
+        assertSame("The objects are moved back, not built again", grid, engine.getSokochanGrid());
+        assertEquals(initial, engine.getStateHash());
+        assertEquals(0, engine.getMovesCount());
+        assertEquals(0, engine.getPushesCount());
+        assertEquals(engine.getCratesOnDiamondCount(), countCratesOnDiamonds(engine));
+        assertEquals(1, engine.getLevelCache().getHits());
+    }
+
+    @Test
+    public void sharedTemplates() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"), false);
+        engine.setLevelCache(new LevelCache(LevelCache.DEFAULT_CAPACITY));
+        engine.loadLevel(0);
+
+        SokochanEngine fork = engine.fork();
+
+        engine.movePlayer(Direction.WEST);
+        fork.loadLevel(0);
+
+        assertEquals("The forks share the cache", 1, engine.getLevelCache().getHits());
+        assertNotEquals("Moving a level does not move its template", engine.getStateHash(), fork.getStateHash());
+    }
+
+    @Test
+    public void keyedByMapAndIndex() throws Exception {
+        File file = File.createTempFile("cached-", ".skb");
+        file.deleteOnExit();
+        Files.copy(new File("src/maps/SampleGame.skb").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        LevelCache cache = new LevelCache(LevelCache.DEFAULT_CAPACITY);
+        SokochanEngine engine = new SokochanEngine(file, false);
+        engine.setLevelCache(cache);
+        engine.loadLevel(1);
+
+        // Another engine on the same map, with its own levels
+        SokochanEngine other = new SokochanEngine(file, false);
+        other.setLevelCache(cache);
+        other.loadLevel(1);
+
+        assertEquals("Same map, same index", 1, cache.getHits());
+        assertFalse("The rows were not read again", other.getLevel(1).isLoaded());
+        assertEquals(engine.getStateHash(), other.getStateHash());
+
+        // The map is rewritten, with level 1 in place of level 0
+        List<String> lines = Files.readAllLines(file.toPath());
+        Files.write(file.toPath(), lines.subList(0, 1));
+        Files.write(file.toPath(), lines.subList(lines.indexOf("LevelName: " + engine.getLevel(1).getName()), lines.size()),
+                StandardOpenOption.APPEND);
+        file.setLastModified(file.lastModified() + 2000);
+
+        SokochanEngine rewritten = new SokochanEngine(file, false);
+        rewritten.setLevelCache(cache);
+        rewritten.loadLevel(0);
+
+        assertEquals("A rewritten map is another map", 1, cache.getHits());
+        assertEquals(engine.getStateHash(), rewritten.getStateHash());
+    }
+
+    private int countCratesOnDiamonds(SokochanEngine engine) {
+        int count = 0;
+
+        for (TileGridObject tile : engine.getSokochanGrid()) {
+            if (tile instanceof Diamond && tile.getPlacedObject() instanceof Crate)
+                count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,88 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Direction;
+import sokochan.Lurd;
+import sokochan.MoveHistory;
+import sokochan.SokochanEngine;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("JavaDoc")
+public class LurdTest {
+    @Test
+    public void decode() throws Exception {
+        int[] moves = Lurd.decode("lU 3r\nD");
+
+        assertArrayEquals(new int[]{
+                MoveHistory.encode(Direction.WEST, false),
+                MoveHistory.encode(Direction.NORTH, true),
+                MoveHistory.encode(Direction.EAST, false),
+                MoveHistory.encode(Direction.EAST, false),
+                MoveHistory.encode(Direction.EAST, false),
+                MoveHistory.encode(Direction.SOUTH, true)}, moves);
+
+        assertEquals(0, Lurd.decode("").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLetter() throws Exception {
+        Lurd.decode("lurdx");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingMove() throws Exception {
+        Lurd.decode("lurd3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overflowingRepetitions() throws Exception {
+        Lurd.decode("99999999999r");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hugeRepetitions() throws Exception {
+        Lurd.decode("999999999r");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyMoves() throws Exception {
+        // Each count is allowed, together they are too many moves
+        Lurd.decode((Lurd.MAX_MOVES / 2 + 1) + "r " + (Lurd.MAX_MOVES / 2 + 1) + "l");
+    }
+
+    @Test
+    public void engineRoundTrip() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+        Random random = new Random(7);
+        Direction[] directions = Direction.values();
+
+        for (int i = 0; i < 500; i++)
+            engine.movePlayer(directions[random.nextInt(directions.length)]);
+
+        String lurd = engine.getLurd();
+
+        assertEquals(engine.getMovesCount(), lurd.length());
+
+        SokochanEngine replay = new SokochanEngine(new File("tests/testlevels/test1.skb"), false);
+
+        assertEquals(lurd.length(), replay.applyLurd(lurd));
+        assertEquals(engine.getStateHash(), replay.getStateHash());
+        assertEquals(engine.getPushesCount(), replay.getPushesCount());
+        assertEquals(lurd, replay.getLurd());
+    }
+
+    @Test
+    public void applyIllegal() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test2.skb"));
+
+        assertEquals("The second move does not push", 1, engine.applyLurd("Ll"));
+        assertEquals(1, engine.getMovesCount());
+
+        assertEquals("Moving into the wall", 0, engine.applyLurd("u"));
+        assertEquals("L", engine.getLurd());
+    }
+}
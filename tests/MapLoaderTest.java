@@ -0,0 +1,469 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.BoardState;
+import sokochan.Direction;
+import sokochan.LevelCache;
+import sokochan.MapLoader;
+import sokochan.SokochanEngine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the lazy loading of the levels by {@link MapLoader}
+ */
+@SuppressWarnings("JavaDoc")
+public class MapLoaderTest {
+    @Test
+    public void lazyLevels() throws Exception {
+        // The levels of a map opened before are not read again, their templates are cached
+        LevelCache.getShared().clear();
+
+        SokochanEngine engine = new SokochanEngine(new File("src/maps/SampleGame.skb"), false);
+
+        assertTrue("The first level is played", engine.getCurrentLevel().isLoaded());
+
+        MapLoader.Level level = engine.getLevel(engine.getLevelsCount() - 1);
+
+        assertFalse("The other levels are only indexed", level.isLoaded());
+
+        int x = level.getX();
+        int y = level.getY();
+
+        engine.loadLevel(engine.getLevelsCount() - 1);
+
+        assertTrue(level.isLoaded());
+        assertEquals("Same width from the index", x, level.getX());
+        assertEquals("Same height from the index", y, level.getY());
+        assertEquals(y, level.getContent().size());
+    }
+
+    @Test
+    public void windowsLineEndings() throws Exception {
+        File file = File.createTempFile("crlf-", ".skb");
+        file.deleteOnExit();
+
+        Files.write(file.toPath(), ("MapSetName: Windows\r\n" +
+                "LevelName: First\r\n" +
+                "wwwww\r\n" +
+                "wsc dw \r\n" +
+                "\r\n" +
+                "wwwww\r\n" +
+                "LevelName: Second\r\n" +
+                "wwwwww\r\n" +
+                "w scdw\r\n" +
+                "wwwwww").getBytes());
+
+        SokochanEngine engine = new SokochanEngine(file, false);
+
+        assertEquals("Windows", engine.getMapName());
+        assertEquals(2, engine.getLevelsCount());
+        assertEquals(Arrays.asList("wwwww", "wsc dw", "wwwww"), engine.getLevel(0).getContent());
+
+        engine.loadLevel(1);
+
+        assertEquals("Second", engine.getCurrentLevel().getName());
+        assertEquals(Arrays.asList("wwwwww", "w scdw", "wwwwww"), engine.getCurrentLevel().getContent());
+    }
+
+    @Test
+    public void savedGame() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        engine.movePlayer(Direction.WEST);
+
+        File file = File.createTempFile("save-", ".skb");
+        file.deleteOnExit();
+
+        engine.saveGame(file);
+
+        SokochanEngine loaded = new SokochanEngine(file);
+
+        assertEquals("The level in progress is read lazily too", engine.getStateHash(), loaded.getStateHash());
+    }
+
+    @Test
+    public void mappedLevels() throws Exception {
+        File file = new File("src/maps/SampleGame.skb");
+        SokochanEngine indexed = new SokochanEngine(file, false);
+        SokochanEngine mapped = new SokochanEngine(file, false, true);
+
+        assertEquals(indexed.getMapName(), mapped.getMapName());
+        assertEquals(indexed.getLevelsCount(), mapped.getLevelsCount());
+
+        for (int i = 0; i < indexed.getLevelsCount(); i++) {
+            assertEquals(indexed.getLevel(i).getName(), mapped.getLevel(i).getName());
+            assertEquals(indexed.getLevel(i).getContent(), mapped.getLevel(i).getContent());
+        }
+
+        assertEquals(indexed.getStateHash(), mapped.getStateHash());
+    }
+
+    @Test
+    public void mappedIndexOnDemand() throws Exception {
+        File file = File.createTempFile("mapped-", ".skb");
+        file.deleteOnExit();
+
+        Files.write(file.toPath(), ("MapSetName: Mapped\n" +
+                "LevelName: First\n" +
+                "wwwww\n" +
+                "wsc dw\n" +
+                "wwwww\n" +
+                "LevelName: Second\n" +
+                "wwwwww\n" +
+                "w scdw\n" +
+                "wwwwww\n" +
+                "LevelName: Broken\n" +
+                "w?w\n").getBytes());
+
+        SokochanEngine engine = new SokochanEngine(file, false, true);
+
+        engine.loadLevel(1);
+
+        assertEquals("Second", engine.getCurrentLevel().getName());
+
+        // Counted by their keys, without being indexed
+        assertEquals(3, engine.getLevelsCount());
+
+        try {
+            engine.getLevel(2);
+            fail("The malformed level is found once reached");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void mappedCountWithoutIndexing() throws Exception {
+        SokochanEngine indexed = new SokochanEngine(new File("src/maps/SampleGame.skb"), false);
+        SokochanEngine mapped = new SokochanEngine(new File("src/maps/SampleGame.skb"), false, true);
+
+        assertTrue(mapped.hasLevel(1));
+        assertEquals(indexed.getLevelsCount(), mapped.getLevelsCount());
+        assertTrue(mapped.hasLevel(indexed.getLevelsCount() - 1));
+        assertFalse(mapped.hasLevel(indexed.getLevelsCount()));
+        assertFalse(mapped.hasLevel(-1));
+        assertEquals(indexed.getLevelsCount(), mapped.getLevelsCount());
+    }
+
+    @Test
+    public void mappedSavedGame() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        engine.movePlayer(Direction.WEST);
+
+        File file = File.createTempFile("save-", ".skb");
+        file.deleteOnExit();
+
+        engine.saveGame(file);
+
+        SokochanEngine loaded = new SokochanEngine(file, false, true);
+
+        assertEquals(engine.getLevelsCount(), loaded.getLevelsCount());
+        assertEquals("The level in progress is read from the end of the file", engine.getStateHash(), loaded.getStateHash());
+    }
+
+    @Test
+    public void mappedConcurrentAccess() throws Exception {
+        File file = new File("src/maps/SampleGame.skb");
+        SokochanEngine indexed = new SokochanEngine(file, false);
+        SokochanEngine mapped = new SokochanEngine(file, false, true);
+
+        int count = indexed.getLevelsCount();
+
+        // Every thread reaches the levels in a different order, indexing the file as it goes
+        IntStream.range(0, count * 8).parallel().forEach(i -> {
+            int level = count - 1 - i % count;
+
+            assertEquals(indexed.getLevel(level).getContent(), mapped.getLevel(level).getContent());
+        });
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void changedMap() throws Exception {
+        File file = File.createTempFile("changed-", ".skb");
+        file.deleteOnExit();
+        Files.copy(new File("src/maps/SampleGame.skb").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        SokochanEngine engine = new SokochanEngine(file, false);
+
+        // Another map of the same size replaces it, the levels not read yet would be read from it
+        File other = File.createTempFile("changed-", ".skb");
+        other.deleteOnExit();
+        Files.write(other.toPath(), new String(Files.readAllBytes(file.toPath())).replace('c', ' ').getBytes());
+        Files.move(other.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        engine.getLevel(engine.getLevelsCount() - 1).getContent();
+    }
+
+    @Test
+    public void saveOverOpenedMap() throws Exception {
+        File file = File.createTempFile("saved-", ".skb");
+        file.deleteOnExit();
+        Files.copy(new File("src/maps/SampleGame.skb").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        SokochanEngine engine = new SokochanEngine(file, false);
+        int lastIndex = engine.getLevelsCount() - 1;
+        List<String> last = new SokochanEngine(file, false).getLevel(lastIndex).getContent();
+
+        // Saving copies the rows of the levels not played, which then read them from the new file
+        engine.saveGame(file);
+        engine.saveGame(file);
+
+        assertFalse(engine.getLevel(lastIndex).isLoaded());
+
+        engine.loadLevel(lastIndex);
+
+        assertEquals(last, engine.getCurrentLevel().getContent());
+        assertEquals(last, new SokochanEngine(file, false).getLevel(lastIndex).getContent());
+    }
+
+    @Test
+    public void saveCopiesRows() throws Exception {
+        File file = File.createTempFile("copied-", ".skb");
+        File copy = File.createTempFile("copy-", ".skb");
+        file.deleteOnExit();
+        copy.deleteOnExit();
+
+        Files.write(file.toPath(), ("MapSetName: Copied\r\n" +
+                "LevelName: First\r\n" +
+                "wwwwww\r\n" +
+                "wsc dw \r\n" +
+                "\r\n" +
+                "wwwwww\r\n" +
+                "LevelName: Second\r\n" +
+                "  wwwwww\r\n" +
+                "w scdw\r\n" +
+                "wwwwww").getBytes());
+
+        SokochanEngine engine = new SokochanEngine(file, false);
+
+        engine.saveGame(copy);
+
+        // The rows are copied without being kept, and still read from the map that was opened
+        assertFalse(engine.getLevel(1).isLoaded());
+        assertTrue(copy.delete());
+
+        SokochanEngine expected = new SokochanEngine(file, false);
+
+        assertEquals(Arrays.asList("wwwwww", "w scdw", "wwwwww"), engine.getLevel(1).getContent());
+
+        engine.saveGame(copy);
+        SokochanEngine copied = new SokochanEngine(copy, false);
+
+        for (int i = 0; i < expected.getLevelsCount(); i++)
+            assertEquals(expected.getLevel(i).getContent(), copied.getLevel(i).getContent());
+    }
+
+    @Test
+    public void saveCompressedOverOpenedMap() throws Exception {
+        File file = File.createTempFile("saved-", ".skb" + MapLoader.COMPRESSED_EXTENSION);
+        file.deleteOnExit();
+
+        SokochanEngine text = new SokochanEngine(new File("src/maps/SampleGame.skb"), false);
+        text.saveGame(file);
+
+        SokochanEngine engine = new SokochanEngine(file, false);
+        int lastIndex = engine.getLevelsCount() - 1;
+
+        engine.saveGame(file);
+        engine.loadLevel(lastIndex);
+
+        assertEquals(text.getLevel(lastIndex).getContent(), engine.getCurrentLevel().getContent());
+    }
+
+    @Test
+    public void binaryMap() throws Exception {
+        SokochanEngine text = new SokochanEngine(new File("src/maps/SampleGame.skb"), false);
+
+        File file = File.createTempFile("binary-", ".skbb");
+        file.deleteOnExit();
+
+        text.saveBinaryMap(file);
+
+        for (boolean memoryMapped : new boolean[]{false, true}) {
+            SokochanEngine binary = new SokochanEngine(file, false, memoryMapped);
+
+            assertEquals(text.getMapName(), binary.getMapName());
+            assertEquals(text.getLevelsCount(), binary.getLevelsCount());
+
+            for (int i = 0; i < text.getLevelsCount(); i++) {
+                MapLoader.Level level = binary.getLevel(i);
+
+                assertEquals(text.getLevel(i).getName(), level.getName());
+                assertEquals(text.getLevel(i).getX(), level.getX());
+                assertEquals(text.getLevel(i).getY(), level.getY());
+                assertEquals("Parsed straight from the packed cells",
+                        BoardState.parse(text.getLevel(i)).getHash(), BoardState.parse(level).getHash());
+                // Letters are case insensitive, a binary map keeps them in lower case
+                for (int y = 0; y < level.getY(); y++)
+                    assertEquals(text.getLevel(i).getContent().get(y).toLowerCase(), level.getContent().get(y));
+            }
+
+            assertEquals(text.getStateHash(), binary.getStateHash());
+        }
+    }
+
+    @Test(expected = MapLoader.MapLoaderException.class)
+    public void truncatedBinaryMap() throws Exception {
+        File file = File.createTempFile("binary-", ".skbb");
+        file.deleteOnExit();
+
+        new SokochanEngine(new File("src/maps/SampleGame.skb"), false).saveBinaryMap(file);
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+
+        new SokochanEngine(file, false);
+    }
+
+    @Test
+    public void compressedMaps() throws Exception {
+        SokochanEngine text = new SokochanEngine(new File("src/maps/SampleGame.skb"), false);
+        text.loadLevel(2);
+        text.movePlayer(Direction.WEST);
+
+        File gzip = File.createTempFile("compressed-", ".skb" + MapLoader.COMPRESSED_EXTENSION);
+        File binary = File.createTempFile("compressed-", ".skbb" + MapLoader.COMPRESSED_EXTENSION);
+        File zlib = File.createTempFile("compressed-", ".skb");
+        gzip.deleteOnExit();
+        binary.deleteOnExit();
+        zlib.deleteOnExit();
+
+        text.saveGame(gzip);
+        text.saveBinaryMap(binary);
+
+        byte[] bytes = Files.readAllBytes(gzip.toPath());
+        assertEquals("Saved with GZIP", 0x1f, bytes[0] & 0xFF);
+        assertEquals(0x8b, bytes[1] & 0xFF);
+
+        // The same SaveFile, compressed with zlib and named as a plain one: the first bytes tell them apart
+        try (OutputStream out = new DeflaterOutputStream(Files.newOutputStream(zlib.toPath()))) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                byte[] buffer = new byte[8192];
+                int read;
+
+                while ((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            }
+        }
+
+        for (File file : new File[]{gzip, zlib}) {
+            for (boolean memoryMapped : new boolean[]{false, true}) {
+                SokochanEngine compressed = new SokochanEngine(file, false, memoryMapped);
+
+                assertEquals(text.getMapName(), compressed.getMapName());
+                assertEquals(text.getLevelsCount(), compressed.getLevelsCount());
+                assertEquals(2, compressed.getLevelIndex());
+                assertEquals(text.getStateHash(), compressed.getStateHash());
+
+                MapLoader.Level last = compressed.getLevel(compressed.getLevelsCount() - 1);
+
+                assertFalse("Inflated again when played", last.isLoaded());
+                assertEquals(text.getLevel(text.getLevelsCount() - 1).getContent(), last.getContent());
+            }
+        }
+
+        SokochanEngine compressed = new SokochanEngine(binary, false);
+
+        assertEquals(text.getLevelsCount(), compressed.getLevelsCount());
+        assertEquals(BoardState.parse(text.getLevel(3)).getHash(), BoardState.parse(compressed.getLevel(3)).getHash());
+    }
+
+    @Test
+    public void xsbCollection() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/collection.xsb"), false);
+
+        assertEquals("collection", engine.getMapName());
+        assertEquals(3, engine.getLevelsCount());
+        assertEquals("Microban-like", engine.getLevel(0).getName());
+        assertEquals("Second level", engine.getLevel(1).getName());
+        assertEquals("Level 3", engine.getLevel(2).getName());
+
+        // Ragged rows are padded, and the floor outside the walls is walled
+        assertEquals(Arrays.asList(
+                "wwwwwwwwwwwwwwwwwww",
+                "wwwww   wwwwwwwwwww",
+                "wwwwwc  wwwwwwwwwww",
+                "wwwww  cwwwwwwwwwww",
+                "www  c c wwwwwwwwww",
+                "www w ww wwwwwwwwww",
+                "w   w ww wwwww  ddw"
+        ), engine.getLevel(0).getContent().subList(0, 7));
+        assertEquals(Arrays.asList("wwwwwwww", "wdcs www", "wwwwwwww"), engine.getLevel(2).getContent());
+
+        assertEquals(6, engine.getCratesCount());
+        assertEquals(engine.getLevel(0).getY(), engine.getSokochanGrid().Y_SIZE);
+
+        engine.loadLevel(1);
+        engine.movePlayer(Direction.EAST);
+        engine.movePlayer(Direction.EAST);
+        engine.movePlayer(Direction.WEST);
+
+        assertEquals(1, engine.getPushesCount());
+    }
+
+    @Test
+    public void textFiles() throws Exception {
+        File saveFile = File.createTempFile("save-", ".txt");
+        File collection = File.createTempFile("collection-", ".txt");
+        saveFile.deleteOnExit();
+        collection.deleteOnExit();
+
+        Files.copy(new File("tests/testlevels/test1.skb").toPath(), saveFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(new File("tests/testlevels/collection.xsb").toPath(), collection.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        // A text file is told apart by its content, not by its extension
+        SokochanEngine expected = new SokochanEngine(new File("tests/testlevels/test1.skb"), false);
+        SokochanEngine engine = new SokochanEngine(saveFile, false);
+
+        assertEquals(expected.getMapName(), engine.getMapName());
+        assertEquals(expected.getLevelsCount(), engine.getLevelsCount());
+
+        assertEquals(3, new SokochanEngine(collection, false).getLevelsCount());
+    }
+
+    @Test(expected = MapLoader.MapLoaderException.class)
+    public void xsbOpenLevel() throws Exception {
+        File file = File.createTempFile("open-", ".xsb");
+        file.deleteOnExit();
+
+        Files.write(file.toPath(), "#####\n#@$.\n#####\n".getBytes());
+
+        new SokochanEngine(file, false);
+    }
+
+    @Test(expected = MapLoader.MapLoaderException.class)
+    public void xsbHugeRepetitions() throws Exception {
+        File file = File.createTempFile("huge-", ".xsb");
+        file.deleteOnExit();
+
+        // Would overflow, or expand to gigabytes
+        Files.write(file.toPath(), "#####\n#@$.99999999999#\n#####\n".getBytes());
+
+        new SokochanEngine(file, false);
+    }
+
+    @Test(expected = MapLoader.MapLoaderException.class)
+    public void xsbTooWide() throws Exception {
+        File file = File.createTempFile("wide-", ".xsb");
+        file.deleteOnExit();
+
+        // Each count is allowed, together they are too wide
+        Files.write(file.toPath(), "#####\n#@$.60000-60000-#\n#####\n".getBytes());
+
+        new SokochanEngine(file, false);
+    }
+}
@@ -0,0 +1,125 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Direction;
+import sokochan.MoveHistory;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("JavaDoc")
+public class MoveHistoryTest {
+    private static final int NORTH = MoveHistory.encode(Direction.NORTH, false);
+    private static final int EAST = MoveHistory.encode(Direction.EAST, false);
+    private static final int SOUTH_PUSH = MoveHistory.encode(Direction.SOUTH, true);
+    private static final int WEST_PUSH = MoveHistory.encode(Direction.WEST, true);
+
+    @Test
+    public void encode() throws Exception {
+        for (Direction direction : Direction.values()) {
+            assertEquals(direction, MoveHistory.getDirection(MoveHistory.encode(direction, true)));
+            assertTrue(MoveHistory.isPush(MoveHistory.encode(direction, true)));
+            assertFalse(MoveHistory.isPush(MoveHistory.encode(direction, false)));
+        }
+    }
+
+    @Test
+    public void unlimited() throws Exception {
+        MoveHistory history = new MoveHistory();
+        final int moves = 100000;
+
+        for (int i = 0; i < moves; i++)
+            history.push(i % 8);
+
+        assertEquals(moves, history.size());
+        assertTrue("3 bits per move", history.getMemory() < moves);
+
+        for (int i = moves - 1; i >= 0; i--)
+            assertEquals(i % 8, history.undo());
+
+        assertEquals(MoveHistory.NONE, history.undo());
+
+        for (int i = 0; i < moves; i++)
+            assertEquals(i % 8, history.redo());
+
+        assertEquals(MoveHistory.NONE, history.redo());
+    }
+
+    @Test
+    public void branches() throws Exception {
+        MoveHistory history = new MoveHistory();
+
+        history.push(NORTH);
+        history.push(EAST);
+        history.push(SOUTH_PUSH);
+
+        history.undo();
+        history.undo();
+
+        assertEquals("The main line can be redone", 1, history.getRedoBranchesCount());
+
+        // Same move as the one to redo, no new branch
+        history.push(EAST);
+        assertEquals(1, history.getRedoBranchesCount());
+
+        history.undo();
+        history.push(WEST_PUSH);
+
+        assertEquals("Now at the end of the new branch", 0, history.getRedoBranchesCount());
+        assertEquals(WEST_PUSH, history.get(1));
+
+        history.undo();
+
+        assertEquals("Both branches start here", 2, history.getRedoBranchesCount());
+        assertEquals("Peeking follows the last branch", WEST_PUSH, history.peek());
+        assertEquals("Redo goes back to the last branch", WEST_PUSH, history.redo());
+
+        history.undo();
+        history.switchBranch(0);
+
+        assertEquals(EAST, history.peek());
+
+        assertEquals(EAST, history.redo());
+        assertEquals(SOUTH_PUSH, history.redo());
+        assertEquals(MoveHistory.NONE, history.peek());
+        assertEquals(MoveHistory.NONE, history.redo());
+
+        MoveHistory path = history.copyPath();
+
+        assertEquals(3, path.size());
+        assertEquals(NORTH, path.get(0));
+        assertEquals(EAST, path.get(1));
+        assertEquals(SOUTH_PUSH, path.get(2));
+        assertEquals("No branches in a copy", 0, path.getRedoBranchesCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void switchMissingBranch() throws Exception {
+        MoveHistory history = new MoveHistory();
+
+        history.push(NORTH);
+        history.undo();
+
+        history.switchBranch(1);
+    }
+
+    @Test
+    public void undoneCount() throws Exception {
+        MoveHistory history = new MoveHistory();
+
+        for (int i = 0; i < 10; i++)
+            history.push(NORTH);
+
+        history.undo();
+        history.redo();
+        history.seek(4);
+        history.seek(10);
+
+        assertEquals("Redoing does not count", 7, history.getUndoneCount());
+
+        // Nothing to undo
+        history.seek(0);
+        history.undo();
+
+        assertEquals(17, history.getUndoneCount());
+    }
+}
@@ -0,0 +1,273 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Direction;
+import sokochan.SaveJournal;
+import sokochan.SokochanEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SaveJournal}
+ */
+@SuppressWarnings("JavaDoc")
+public class SaveJournalTest {
+    @Test
+    public void appendAndRestore() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+
+        assertFalse("No journal yet", journal.restore());
+
+        engine.movePlayer(Direction.WEST);
+        journal.save();
+
+        long length = journal.getLength();
+
+        engine.movePlayer(Direction.WEST);
+        journal.save();
+
+        assertEquals("A move is a few bytes", length + 4, journal.getLength());
+
+        engine.undo();
+        engine.movePlayer(Direction.EAST);
+        engine.movePlayer(Direction.EAST);
+        journal.save();
+
+        assertEquals(Files.size(journal.getFile().toPath()), journal.getLength());
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+
+        assertTrue(new SaveJournal(map, reopened).restore());
+        assertEquals(engine.getStateHash(), reopened.getStateHash());
+        assertEquals(engine.getMovesCount(), reopened.getMovesCount());
+        assertEquals(engine.getPushesCount(), reopened.getPushesCount());
+    }
+
+    @Test
+    public void levelsAndCompaction() throws Exception {
+        File map = copyMap("src/maps/SampleGame.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+        Random random = new Random(7);
+        Direction[] directions = Direction.values();
+
+        engine.loadLevel(1);
+
+        // Many saves of moves and undos, the journal must stay close to the moves it leads to
+        for (int i = 0; i < 4000; i++) {
+            if (random.nextInt(3) == 0)
+                engine.undo();
+            else
+                engine.movePlayer(directions[random.nextInt(directions.length)]);
+
+            journal.save();
+        }
+
+        assertTrue(journal.getLength() < Math.max(4096, engine.getMovesCount() * SaveJournal.COMPACTION_FACTOR + 200));
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+
+        assertTrue(new SaveJournal(map, reopened).restore());
+        assertEquals(1, reopened.getLevelIndex());
+        assertEquals(engine.getStateHash(), reopened.getStateHash());
+        assertEquals(engine.getMovesCount(), reopened.getMovesCount());
+    }
+
+    @Test
+    public void tornRecord() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+
+        engine.movePlayer(Direction.WEST);
+        journal.save();
+
+        long hash = engine.getStateHash();
+
+        // A save cut short, the incomplete line is dropped
+        Files.write(journal.getFile().toPath(), "M ll".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+
+        assertTrue(new SaveJournal(map, reopened).restore());
+        assertEquals(hash, reopened.getStateHash());
+    }
+
+    @Test
+    public void recordAndFlush() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+
+        engine.movePlayer(Direction.WEST);
+        journal.record();
+
+        assertFalse("Recording does not touch the disk", journal.getFile().exists());
+
+        // The game goes on while the records are written elsewhere
+        Thread flush = new Thread(() -> {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        flush.start();
+        engine.movePlayer(Direction.EAST);
+        flush.join();
+
+        journal.save();
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+        SaveJournal restored = new SaveJournal(map, reopened);
+
+        assertTrue(restored.restore());
+        assertEquals(engine.getStateHash(), reopened.getStateHash());
+        assertEquals(engine.getMovesCount(), reopened.getMovesCount());
+
+        // The journal is rewritten compacted by the first flush after restoring it
+        Files.write(journal.getFile().toPath(), "M ll".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+        restored.flush();
+
+        assertEquals(Files.size(restored.getFile().toPath()), restored.getLength());
+        assertEquals(1, restored.getRecordsCount());
+    }
+
+    @Test
+    public void otherMap() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+
+        engine.movePlayer(Direction.WEST);
+        journal.save();
+
+        // Saving the whole game changes the map, the journal no longer applies
+        engine.saveGame(map);
+
+        assertFalse(new SaveJournal(map, new SokochanEngine(map, false)).restore());
+    }
+
+    @Test
+    public void rewrittenMap() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+
+        engine.movePlayer(Direction.WEST);
+        journal.save();
+
+        // Another map of the same size and name, the journal does not apply to it
+        byte[] bytes = Files.readAllBytes(map.toPath());
+        Files.write(map.toPath(), new String(bytes).replace('c', ' ').getBytes());
+        assertTrue(map.setLastModified(map.lastModified() - 10000));
+
+        assertEquals(bytes.length, map.length());
+        assertFalse(new SaveJournal(map, new SokochanEngine(map, false)).restore());
+    }
+
+    @Test
+    public void backgroundSave() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+
+        engine.movePlayer(Direction.WEST);
+
+        // The game is captured, then written while it goes on
+        SokochanEngine.Snapshot snapshot = engine.snapshot();
+        SaveJournal journal = new SaveJournal(map, engine);
+        long savedHash = engine.getStateHash();
+
+        engine.movePlayer(Direction.EAST);
+        engine.movePlayer(Direction.EAST);
+
+        SokochanEngine.saveGame(map, snapshot);
+
+        assertEquals("The save holds the snapshot", savedHash, new SokochanEngine(map, false).getStateHash());
+
+        // Only the moves made after the snapshot are journaled
+        journal.save();
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+
+        assertTrue(new SaveJournal(map, reopened).restore());
+        assertEquals(engine.getStateHash(), reopened.getStateHash());
+    }
+
+    @Test
+    public void seeksAndRedos() throws Exception {
+        File map = copyMap("src/maps/SampleGame.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+        SaveJournal journal = new SaveJournal(map, engine);
+        Random random = new Random(11);
+        Direction[] directions = Direction.values();
+
+        // A long game, each save only looks at the moves since the previous one
+        for (int i = 0; i < 20000; i++) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    engine.undo();
+                    break;
+                case 1:
+                    engine.redo();
+                    break;
+                case 2:
+                    engine.seek(random.nextInt(engine.getHistory().getLineLength() + 1));
+                    break;
+                default:
+                    engine.movePlayer(directions[random.nextInt(directions.length)]);
+            }
+
+            journal.save();
+        }
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+
+        assertTrue(new SaveJournal(map, reopened).restore());
+        assertEquals(engine.getStateHash(), reopened.getStateHash());
+        assertEquals(engine.getMovesCount(), reopened.getMovesCount());
+    }
+
+    @Test
+    public void undoSavedMoves() throws Exception {
+        File map = copyMap("tests/testlevels/test1.skb");
+        SokochanEngine engine = new SokochanEngine(map, false);
+
+        engine.movePlayer(Direction.WEST);
+        engine.saveGame(map);
+
+        SaveJournal journal = new SaveJournal(map, engine);
+
+        // The saved move is undone, the journal waits for it to be made again
+        engine.undo();
+        journal.save();
+
+        engine.movePlayer(Direction.WEST);
+        engine.movePlayer(Direction.EAST);
+        journal.save();
+
+        SokochanEngine reopened = new SokochanEngine(map, false);
+
+        assertTrue(new SaveJournal(map, reopened).restore());
+        assertEquals(engine.getStateHash(), reopened.getStateHash());
+    }
+
+    private static File copyMap(String path) throws Exception {
+        File map = File.createTempFile("journal-", ".skb");
+        map.deleteOnExit();
+        new File(map.getPath() + SaveJournal.EXTENSION).deleteOnExit();
+
+        Files.write(map.toPath(), Files.readAllBytes(new File(path).toPath()));
+
+        return map;
+    }
+}
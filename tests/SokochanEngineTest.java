@@ -2,12 +2,19 @@ package tests;
 
 import org.junit.Test;
 import sokochan.Direction;
+import sokochan.GridObjects.Crate;
+import sokochan.GridObjects.Diamond;
+import sokochan.GridObjects.TileGridObject;
 import sokochan.GridObjects.WarehouseKeeper;
 import sokochan.SokochanEngine;
+import sokochan.SokochanGrid;
 
 import java.awt.*;
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -108,6 +115,47 @@ public class SokochanEngineTest {
         assertNotNull(engine.getSokochanGrid());
     }
 
+    @Test
+    public void pollChangedCells() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+        SokochanGrid grid = engine.getSokochanGrid();
+
+        assertNull("Unknown after loading", engine.pollChangedCells());
+
+        int keeper = findKeeper(grid);
+        // The cell the crate is pushed to, the crate's cell and the keeper's cell, sorted
+        int[] pushed = {keeper - 2, keeper - 1, keeper};
+
+        // Pushes the crate on the west
+        engine.movePlayer(Direction.WEST);
+
+        assertArrayEquals(pushed, sorted(engine.pollChangedCells()));
+        assertEquals("Nothing changed since", 0, engine.pollChangedCells().length);
+
+        engine.undo();
+
+        assertArrayEquals(pushed, sorted(engine.pollChangedCells()));
+
+        engine.loadLevel(0);
+
+        assertNull("Unknown after loading again", engine.pollChangedCells());
+    }
+
+    private static int findKeeper(SokochanGrid grid) {
+        for (int cell = 0; cell < grid.X_SIZE * grid.Y_SIZE; cell++)
+            if (grid.getGridObject(cell) instanceof WarehouseKeeper)
+                return cell;
+
+        throw new AssertionError("No keeper");
+    }
+
+    private static int[] sorted(int[] cells) {
+        int[] copy = cells.clone();
+        Arrays.sort(copy);
+
+        return copy;
+    }
+
     @Test
     public void isComplete() throws Exception {
         SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test2.skb"));
@@ -245,4 +293,337 @@ public class SokochanEngineTest {
         assertEquals("Initial count", 0, engine.getHistoryElementsCount());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void redo() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        WarehouseKeeper keeper = extractWarehouseKeeper(engine);
+
+        engine.movePlayer(Direction.WEST);
+        engine.movePlayer(Direction.WEST);
+        long hash = engine.getStateHash();
+        Point position = keeper.getPosition();
+
+        engine.undo();
+        engine.undo();
+
+        assertTrue(engine.redo());
+        assertTrue(engine.redo());
+        assertFalse("Nothing left to redo", engine.redo());
+
+        assertEquals("Redo restored the state", hash, engine.getStateHash());
+        assertEquals("Redo moved the view", position, keeper.getPosition());
+        assertEquals(2, engine.getMovesCount());
+        assertEquals(2, engine.getPushesCount());
+
+        // A different move starts a new branch, the old one is kept
+        engine.undo();
+        engine.movePlayer(Direction.SOUTH);
+        engine.undo();
+
+        assertEquals(2, engine.getRedoBranchesCount());
+
+        engine.switchBranch(0);
+        engine.redo();
+
+        assertEquals("Back on the first branch", hash, engine.getStateHash());
+    }
+
+    @Test
+    public void seek() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        WarehouseKeeper keeper = extractWarehouseKeeper(engine);
+        Random random = new Random(42);
+        Direction[] directions = Direction.values();
+
+        final int moves = SokochanEngine.CHECKPOINT_INTERVAL * 10 + 7;
+        int[] keepers = new int[moves + 1];
+        int[] pushes = new int[moves + 1];
+        long[] hashes = new long[moves + 1];
+
+        for (int i = 0; i <= moves; i++) {
+            keepers[i] = engine.getBoardState().getWarehouseKeeper();
+            pushes[i] = engine.getPushesCount();
+            hashes[i] = engine.getStateHash();
+
+            if (i < moves)
+                while (!engine.movePlayer(directions[random.nextInt(directions.length)])) ;
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int move = random.nextInt(moves + 1);
+
+            engine.seek(move);
+
+            assertEquals(move, engine.getMovesCount());
+            assertEquals(move, engine.getHistoryElementsCount());
+            assertEquals(pushes[move], engine.getPushesCount());
+            assertEquals(hashes[move], engine.getStateHash());
+            assertEquals(keepers[move], engine.getBoardState().getWarehouseKeeper());
+            assertEquals("The view was synced", engine.getBoardState().getBoard().getX(keepers[move]), keeper.getX());
+            assertEquals(engine.getCratesOnDiamondCount(), countCratesOnDiamonds(engine));
+        }
+
+        // A new move starts a new line, the old checkpoints after it are dropped
+        engine.seek(SokochanEngine.CHECKPOINT_INTERVAL + 1);
+
+        Direction direction = directions[0];
+        while (!engine.movePlayer(direction))
+            direction = directions[random.nextInt(directions.length)];
+
+        for (int i = 0; i < SokochanEngine.CHECKPOINT_INTERVAL * 2; i++)
+            while (!engine.movePlayer(directions[random.nextInt(directions.length)])) ;
+
+        long hash = engine.getStateHash();
+        int end = engine.getMovesCount();
+
+        engine.seek(0);
+        assertEquals(hashes[0], engine.getStateHash());
+
+        engine.seek(end);
+        assertEquals(hash, engine.getStateHash());
+    }
+
+    @Test
+    public void seekToFreeze() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test13.skb"), false);
+
+        // Back and forth, so that the freezing push is the first move of a checkpoint
+        for (int i = 0; i < SokochanEngine.CHECKPOINT_INTERVAL / 2 - 5; i++) {
+            assertTrue(engine.movePlayer(Direction.EAST));
+            assertTrue(engine.movePlayer(Direction.WEST));
+        }
+
+        // Both crates pushed against the wall, side by side
+        for (Direction direction : new Direction[]{Direction.WEST, Direction.WEST, Direction.WEST, Direction.NORTH,
+                Direction.NORTH, Direction.SOUTH, Direction.SOUTH, Direction.WEST, Direction.NORTH})
+            assertTrue(engine.movePlayer(direction));
+
+        assertFalse(engine.isDeadlocked());
+        assertTrue(engine.movePlayer(Direction.NORTH));
+        assertEquals(SokochanEngine.CHECKPOINT_INTERVAL, engine.getMovesCount());
+        assertTrue("Frozen", engine.isDeadlocked());
+
+        engine.seek(0);
+        assertFalse(engine.isDeadlocked());
+
+        engine.seek(SokochanEngine.CHECKPOINT_INTERVAL);
+        assertTrue("Restored from the checkpoint of the freezing push", engine.isDeadlocked());
+    }
+
+    @Test
+    public void keepCheckpoints() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test13.skb"), false);
+
+        // Against the east wall, then around a crate to push it south, next to the dead bottom row
+        for (Direction direction : new Direction[]{Direction.EAST, Direction.NORTH, Direction.NORTH, Direction.WEST,
+                Direction.WEST, Direction.WEST, Direction.WEST, Direction.SOUTH})
+            assertTrue(engine.movePlayer(direction));
+
+        // Back and forth up to the third checkpoint
+        for (int i = 0; i < SokochanEngine.CHECKPOINT_INTERVAL; i++) {
+            assertTrue(engine.movePlayer(Direction.EAST));
+            assertTrue(engine.movePlayer(Direction.WEST));
+        }
+
+        assertEquals(3, countCheckpoints(engine));
+
+        engine.seek(1);
+
+        assertFalse("Into a wall", engine.movePlayer(Direction.EAST));
+        assertEquals(3, countCheckpoints(engine));
+
+        engine.seek(10);
+        engine.setRefusingDeadSquarePushes(true);
+
+        assertFalse("Pushing onto a dead square", engine.movePlayer(Direction.SOUTH));
+        assertEquals(3, countCheckpoints(engine));
+
+        assertTrue("Following the line", engine.movePlayer(Direction.EAST));
+        assertEquals(3, countCheckpoints(engine));
+        assertEquals(1, engine.getRedoBranchesCount());
+
+        assertTrue("Leaving the line", engine.movePlayer(Direction.EAST));
+        assertEquals(1, countCheckpoints(engine));
+    }
+
+    private int countCheckpoints(SokochanEngine engine) throws NoSuchFieldException, IllegalAccessException {
+        Field checkpointsField = SokochanEngine.class.getDeclaredField("checkpoints");
+        checkpointsField.setAccessible(true);
+
+        return ((List<?>) checkpointsField.get(engine)).size();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void seekTooFar() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        engine.movePlayer(Direction.SOUTH);
+        engine.seek(2);
+    }
+
+    @Test
+    public void applyMoves() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+        SokochanEngine expected = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        Random random = new Random(3);
+        Direction[] directions = Direction.values();
+        Direction[] moves = new Direction[1000];
+        int legal = 0;
+
+        for (int i = 0; i < moves.length; i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+
+            if (expected.movePlayer(direction))
+                moves[legal++] = direction;
+        }
+
+        Direction[] sequence = Arrays.copyOf(moves, legal);
+
+        SokochanEngine.BatchResult result = engine.applyMoves(sequence);
+
+        assertTrue(result.isFullyApplied());
+        assertEquals(expected.getStateHash(), engine.getStateHash());
+        assertEquals(expected.getPushesCount(), result.getPushesCount());
+        assertEquals(legal, result.getMovesCount());
+        assertEquals(engine.getCratesOnDiamondCount(), countCratesOnDiamonds(engine));
+        assertEquals(expected.getBoardState().getBoard().getX(expected.getBoardState().getWarehouseKeeper()),
+                extractWarehouseKeeper(engine).getX());
+
+        // A short sequence moves the view along
+        result = engine.applyMoves(new Direction[]{Direction.SOUTH, Direction.NORTH});
+
+        assertEquals(legal + result.getAppliedCount(), engine.getMovesCount());
+        assertEquals(engine.getCratesOnDiamondCount(), countCratesOnDiamonds(engine));
+    }
+
+    @Test
+    public void applyMovesLurd() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test2.skb"));
+
+        SokochanEngine.BatchResult result = engine.applyMoves("rlLu");
+
+        assertEquals(3, result.getAppliedCount());
+        assertEquals(4, result.getRequestedCount());
+        assertFalse(result.isFullyApplied());
+        assertTrue(result.isComplete());
+        assertEquals(1, result.getPushesCount());
+
+        // A move that would push while the notation says it does not is rejected without being made
+        engine = new SokochanEngine(new File("tests/testlevels/test2.skb"));
+        int branches = engine.getRedoBranchesCount();
+
+        result = engine.applyMoves("rll");
+
+        assertEquals(2, result.getAppliedCount());
+        assertEquals(0, engine.getPushesCount());
+        assertEquals(branches, engine.getRedoBranchesCount());
+    }
+
+    @Test
+    public void getStateHash() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        long initial = engine.getStateHash();
+
+        engine.movePlayer(Direction.EAST);
+
+        assertEquals("Walking does not change the state", initial, engine.getStateHash());
+
+        engine.movePlayer(Direction.WEST);
+        engine.movePlayer(Direction.WEST);
+
+        assertNotEquals("Pushing changes the state", initial, engine.getStateHash());
+
+        engine.undo();
+
+        assertEquals("Undo restores the hash", initial, engine.getStateHash());
+
+        assertEquals("Same state from a fresh engine", new SokochanEngine(new File("tests/testlevels/test1.skb")).getStateHash(), initial);
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        WarehouseKeeper keeper = extractWarehouseKeeper(engine);
+
+        engine.movePlayer(Direction.WEST);
+        SokochanEngine.Snapshot snapshot = engine.snapshot();
+        Point position = keeper.getPosition();
+
+        engine.movePlayer(Direction.SOUTH);
+        engine.movePlayer(Direction.WEST);
+        engine.movePlayer(Direction.EAST);
+        engine.movePlayer(Direction.SOUTH);
+        engine.movePlayer(Direction.WEST);
+
+        assertNotEquals("The game moved on", snapshot.getStateHash(), engine.getStateHash());
+
+        engine.restore(snapshot);
+
+        assertEquals("Restored the state", snapshot.getStateHash(), engine.getStateHash());
+        assertEquals("Restored the moves", 1, engine.getMovesCount());
+        assertEquals("Restored the history", 1, engine.getHistoryElementsCount());
+        assertSame("The grid objects are reused", keeper, extractWarehouseKeeper(engine));
+        assertEquals("The view was moved back", position, keeper.getPosition());
+        assertEquals("The view matches the state", engine.getCratesOnDiamondCount(), countCratesOnDiamonds(engine));
+
+        engine.loadLevel(0);
+        engine.restore(snapshot);
+
+        assertEquals("Restored after reloading the level", snapshot.getStateHash(), engine.getStateHash());
+        assertEquals("The rebuilt view matches the state", engine.getCratesOnDiamondCount(), countCratesOnDiamonds(engine));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restoreOtherMap() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        engine.restore(new SokochanEngine(new File("tests/testlevels/test1.skb")).snapshot());
+    }
+
+    @Test
+    public void fork() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test1.skb"));
+
+        engine.movePlayer(Direction.WEST);
+
+        SokochanEngine fork = engine.fork();
+        long hash = engine.getStateHash();
+
+        assertSame("The board is shared", engine.getBoardState().getBoard(), fork.getBoardState().getBoard());
+        assertEquals("Same state", hash, fork.getStateHash());
+        assertEquals("Same moves", 1, fork.getMovesCount());
+
+        fork.movePlayer(Direction.SOUTH);
+        fork.movePlayer(Direction.WEST);
+
+        assertEquals("The original is untouched", hash, engine.getStateHash());
+        assertEquals("The original is untouched", 1, engine.getMovesCount());
+        assertEquals("The view of the fork is built on request", fork.getCratesOnDiamondCount(), countCratesOnDiamonds(fork));
+
+        fork.undo();
+        fork.undo();
+        fork.undo();
+
+        assertEquals("The history was copied", 0, fork.getMovesCount());
+
+        engine.restore(fork.snapshot());
+
+        assertEquals("Snapshots are shared between forks", fork.getStateHash(), engine.getStateHash());
+    }
+
+    private int countCratesOnDiamonds(SokochanEngine engine) {
+        int count = 0;
+
+        for (TileGridObject tile : engine.getSokochanGrid()) {
+            if (tile instanceof Diamond && tile.getPlacedObject() instanceof Crate)
+                count++;
+        }
+
+        return count;
+    }
+}
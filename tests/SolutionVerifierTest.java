@@ -0,0 +1,70 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.SolutionVerifier;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static sokochan.SolutionVerifier.Status.*;
+
+@SuppressWarnings("JavaDoc")
+public class SolutionVerifierTest {
+    @Test
+    public void verifyAll() throws Exception {
+        SolutionVerifier verifier = new SolutionVerifier(new File("tests/testlevels/test2.skb"));
+        verifier.setThreads(2);
+
+        List<SolutionVerifier.Submission> submissions = SolutionVerifier.readSolutions(new File("tests/testlevels/test2.lurd"));
+
+        assertEquals(6, submissions.size());
+        assertEquals("Line numbers count comments", 2, submissions.get(0).getLine());
+
+        SolutionVerifier.Report report = verifier.verifyAll(submissions);
+        List<SolutionVerifier.Result> results = report.getResults();
+
+        assertEquals(SOLVED, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getPushesCount());
+        assertEquals("A push written as a move", ILLEGAL_MOVE, results.get(1).getStatus());
+        assertEquals(SOLVED, results.get(2).getStatus());
+        assertEquals(2, results.get(2).getMovesCount());
+        assertEquals(INVALID_NOTATION, results.get(3).getStatus());
+        assertEquals(UNKNOWN_LEVEL, results.get(4).getStatus());
+        assertEquals(NOT_SOLVED, results.get(5).getStatus());
+
+        assertEquals(2, report.getSolvedCount());
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        SolutionVerifier verifier = new SolutionVerifier(new File("tests/testlevels/test2.skb"));
+        verifier.setThreads(4);
+
+        List<SolutionVerifier.Submission> submissions = new ArrayList<>();
+
+        for (int i = 0; i < 10000; i++)
+            submissions.add(new SolutionVerifier.Submission(0, i % 4, i % 2 == 0 ? "L" : "rl"));
+
+        SolutionVerifier.Report report = verifier.verifyAll(submissions);
+
+        assertEquals(5000, report.getSolvedCount());
+        assertEquals(15000, report.getMovesCount());
+
+        for (int i = 0; i < submissions.size(); i++)
+            assertSame("Results are in order", submissions.get(i), report.getResults().get(i).getSubmission());
+
+        assertEquals(Collections.emptyList(), verifier.verifyAll(Collections.emptyList()).getResults());
+    }
+
+    @Test
+    public void hostileRepetitions() throws Exception {
+        SolutionVerifier verifier = new SolutionVerifier(new File("tests/testlevels/test2.skb"));
+
+        // Rejected as notation, instead of stopping the batch
+        assertEquals(INVALID_NOTATION, verifier.verify(new SolutionVerifier.Submission(0, 0, "999999999r")).getStatus());
+        assertEquals(INVALID_NOTATION, verifier.verify(new SolutionVerifier.Submission(0, 0, "99999999999r")).getStatus());
+    }
+}
@@ -0,0 +1,180 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.Direction;
+import sokochan.SokochanEngine;
+import sokochan.solver.Metric;
+import sokochan.solver.ReplacementPolicy;
+import sokochan.solver.SearchAlgorithm;
+import sokochan.solver.Solution;
+import sokochan.solver.Solver;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link Solver} tests, run on the test levels and on the default map
+ */
+@SuppressWarnings("JavaDoc")
+public class SolverTest {
+    private Solution solve(SokochanEngine engine, SearchAlgorithm algorithm, Metric metric, long limit) {
+        Solver solver = new Solver(engine.getCurrentLevel());
+        solver.setAlgorithm(algorithm);
+        solver.setMetric(metric);
+        solver.setNodeLimit(limit);
+
+        return solver.solve();
+    }
+
+    private void assertSolves(SokochanEngine engine, Solution solution) {
+        assertTrue("Solved", solution.isSolved());
+
+        for (Direction direction : solution.getMoves())
+            assertTrue("Legal move", engine.movePlayer(direction));
+
+        assertTrue("Level complete", engine.isComplete());
+        assertEquals("Pushes", solution.getPushesCount(), engine.getPushesCount());
+    }
+
+    @Test
+    public void pushOptimal() throws Exception {
+        for (SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+            SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test8.skb"), false);
+
+            Solution solution = solve(engine, algorithm, Metric.PUSHES, 1000);
+
+            assertEquals("Pushes of " + algorithm, 3, solution.getPushesCount());
+            assertSolves(engine, solution);
+        }
+    }
+
+    @Test
+    public void moveOptimal() throws Exception {
+        for (SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+            SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test8.skb"), false);
+
+            Solution solution = solve(engine, algorithm, Metric.MOVES, 1000);
+
+            assertEquals("Moves of " + algorithm, 8, solution.getMovesCount());
+            assertSolves(engine, solution);
+        }
+    }
+
+    @Test
+    public void defaultMap() throws Exception {
+        int[] levels = {0, 1, 3};
+        int[] pushes = {14, 19, 10};
+
+        for (int i = 0; i < levels.length; i++) {
+            for (SearchAlgorithm algorithm : SearchAlgorithm.values()) {
+                SokochanEngine engine = new SokochanEngine(false);
+                engine.loadLevel(levels[i]);
+
+                Solution solution = solve(engine, algorithm, Metric.PUSHES, 10000);
+
+                assertEquals("Pushes of level " + levels[i], pushes[i], solution.getPushesCount());
+                assertSolves(engine, solution);
+            }
+        }
+    }
+
+    @Test
+    public void matchingHeuristic() throws Exception {
+        // Out of reach of a heuristic counting the same diamond for several crates
+        SokochanEngine engine = new SokochanEngine(false);
+        engine.loadLevel(2);
+
+        Solution solution = solve(engine, SearchAlgorithm.A_STAR, Metric.PUSHES, 100000);
+
+        assertEquals(51, solution.getPushesCount());
+        assertSolves(engine, solution);
+    }
+
+    @Test
+    public void unsolvable() throws Exception {
+        String[] files = {"tests/testlevels/test9.skb", "tests/testlevels/test10.skb", "tests/testlevels/test11.skb"};
+
+        for (String file : files) {
+            SokochanEngine engine = new SokochanEngine(new File(file), false);
+
+            assertEquals("Unsolvable " + file, Solution.Status.UNSOLVABLE,
+                    solve(engine, SearchAlgorithm.A_STAR, Metric.PUSHES, 1000).getStatus());
+        }
+    }
+
+    @Test
+    public void fromCurrentState() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("tests/testlevels/test8.skb"), false);
+
+        engine.movePlayer(Direction.WEST);
+
+        Solution solution = new Solver(engine.getBoardState()).solve();
+
+        assertEquals("Pushes left", 2, solution.getPushesCount());
+
+        for (Direction direction : solution.getMoves())
+            engine.movePlayer(direction);
+
+        assertTrue("Level complete", engine.isComplete());
+    }
+
+    @Test
+    public void throughput() throws Exception {
+        SokochanEngine engine = new SokochanEngine(new File("src/maps/Hard.skb"), false);
+
+        Solution solution = solve(engine, SearchAlgorithm.IDA_STAR, Metric.MOVES, 2000);
+
+        assertEquals("Stopped by the limit", Solution.Status.LIMIT_REACHED, solution.getStatus());
+        assertEquals("Expanded nodes", 2000, solution.getStatistics().getExpandedNodes());
+        assertTrue("Nodes per second", solution.getStatistics().getNodesPerSecond() > 0);
+        assertTrue("Memory", solution.getStatistics().getEstimatedMemory() > 0);
+        assertTrue("Generated nodes", solution.getStatistics().getGeneratedNodes() >= 2000);
+        assertTrue("Stored states", solution.getStatistics().getStoredStates() > 0);
+        assertTrue("Summary", solution.getStatistics().toString().contains("2000 expanded"));
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        int[] levels = {0, 1, 3};
+        int[] pushes = {14, 19, 10};
+
+        for (int i = 0; i < levels.length; i++) {
+            SokochanEngine engine = new SokochanEngine(false);
+            engine.loadLevel(levels[i]);
+
+            Solver solver = new Solver(engine.getCurrentLevel());
+            solver.setAlgorithm(SearchAlgorithm.IDA_STAR);
+            solver.setThreads(4);
+
+            Solution solution = solver.solve();
+
+            assertEquals("Pushes of level " + levels[i], pushes[i], solution.getPushesCount());
+            assertSolves(engine, solution);
+        }
+    }
+
+    @Test
+    public void smallTable() throws Exception {
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            SokochanEngine engine = new SokochanEngine(false);
+            engine.loadLevel(1);
+
+            Solver solver = new Solver(engine.getCurrentLevel());
+            solver.setAlgorithm(SearchAlgorithm.IDA_STAR);
+            solver.setTableSize(1);
+            solver.setReplacementPolicy(policy);
+
+            Solution solution = solver.solve();
+
+            assertEquals(policy.name(), 19, solution.getPushesCount());
+            assertTrue(policy.name(), solution.getStatistics().getTableHits() > 0);
+            assertSolves(engine, solution);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noThreads() throws Exception {
+        new Solver(new SokochanEngine(false).getCurrentLevel()).setThreads(0);
+    }
+}
@@ -0,0 +1,88 @@
+package tests;
+
+import org.junit.Test;
+import sokochan.solver.ReplacementPolicy;
+import sokochan.solver.TranspositionTable;
+
+import static org.junit.Assert.*;
+
+@SuppressWarnings("JavaDoc")
+public class TranspositionTableTest {
+    @Test
+    public void storeIfBetter() {
+        TranspositionTable table = new TranspositionTable(1, ReplacementPolicy.ALWAYS);
+
+        assertEquals(TranspositionTable.MISSING, table.get(42));
+        assertTrue("New state", table.storeIfBetter(42, 5));
+        assertEquals(5, table.get(42));
+        assertFalse("Same cost", table.storeIfBetter(42, 5));
+        assertFalse("Higher cost", table.storeIfBetter(42, 7));
+        assertTrue("Lower cost", table.storeIfBetter(42, 3));
+        assertEquals(3, table.get(42));
+        assertEquals(1, table.getSize());
+    }
+
+    @Test
+    public void clear() {
+        TranspositionTable table = new TranspositionTable(1, ReplacementPolicy.ALWAYS);
+
+        table.storeIfBetter(0, 1);
+        table.storeIfBetter(-1, 1);
+        table.clear();
+
+        assertEquals(0, table.getSize());
+        assertEquals(TranspositionTable.MISSING, table.get(0));
+        assertTrue(table.storeIfBetter(-1, 2));
+    }
+
+    @Test
+    public void replacementPolicies() {
+        // The two halves of the keys cancel out, so they all fall in the first bucket
+        long[] keys = new long[6];
+
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = (long) (i + 1) << 40 | (long) (i + 1) << 8;
+
+        for (ReplacementPolicy policy : ReplacementPolicy.values()) {
+            TranspositionTable table = new TranspositionTable(1, policy);
+
+            for (int i = 0; i < 4; i++)
+                table.storeIfBetter(keys[i], 10 + i);
+
+            assertEquals(policy.name(), 0, table.getCollisions());
+
+            table.storeIfBetter(keys[4], 1);
+
+            assertEquals(policy.name(), 1, table.getCollisions());
+            assertEquals(policy.name(), policy == ReplacementPolicy.NEVER ? 0 : 1, table.getReplacements());
+            assertEquals(policy.name(), policy != ReplacementPolicy.NEVER, table.get(keys[4]) == 1);
+
+            if (policy == ReplacementPolicy.HIGHEST_COST) {
+                assertEquals("Highest cost dropped", TranspositionTable.MISSING, table.get(keys[3]));
+
+                table.storeIfBetter(keys[5], 20);
+
+                assertEquals("Costlier than all the others", TranspositionTable.MISSING, table.get(keys[5]));
+            }
+        }
+    }
+
+    @Test
+    public void counters() {
+        TranspositionTable table = new TranspositionTable(1, ReplacementPolicy.NEVER);
+
+        table.get(1);
+        table.storeIfBetter(1, 0);
+        table.get(1);
+
+        assertEquals(2, table.getMisses());
+        assertEquals(1, table.getHits());
+        assertEquals(1 << 20, table.getMemory());
+        assertEquals((1 << 20) / 16, table.getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSize() {
+        new TranspositionTable(0, ReplacementPolicy.ALWAYS);
+    }
+}